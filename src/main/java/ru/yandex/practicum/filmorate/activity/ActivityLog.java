@@ -0,0 +1,419 @@
+package ru.yandex.practicum.filmorate.activity;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.ActivityEvent;
+import ru.yandex.practicum.filmorate.model.ActivityType;
+import ru.yandex.practicum.filmorate.service.FriendsChangedEvent;
+import ru.yandex.practicum.filmorate.service.LikesChangedEvent;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of likes and friend changes kept out of the database. A record is a fixed size frame
+ * {@code crc32c | type | time millis | user id | target id} in a memory-mapped segment file named after the offset of
+ * its first record, so an offset points to a segment and a position without any index. Appends are queued and
+ * written in batches by a single writer thread, readers see records up to {@link #getEndOffset()}. A full segment is
+ * removed once its last record is older than {@code retention-hours}.
+ */
+@Slf4j
+@Component
+public class ActivityLog {
+    static final int FRAME_SIZE = 21;
+
+    private static final int MAX_BATCH = 4096;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final long RETENTION_CHECK_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Path directory;
+
+    private final int segmentRecords;
+
+    private final long retentionMs;
+
+    private final long forceIntervalNanos;
+
+    private final Clock clock;
+
+    private final BlockingQueue<ActivityEvent> queue;
+
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong appended = new AtomicLong();
+
+    private final ReentrantLock writtenLock = new ReentrantLock();
+
+    private final Condition written = writtenLock.newCondition();
+
+    private volatile long endOffset;
+
+    private volatile boolean running;
+
+    private FileChannel lockChannel;
+
+    private FileLock fileLock;
+
+    private Thread writer;
+
+    @Autowired
+    public ActivityLog(@Value("${filmorate.activity-log.dir:./db/activity}") String directory,
+                       @Value("${filmorate.activity-log.segment-size:67108864}") int segmentSize,
+                       @Value("${filmorate.activity-log.retention-hours:168}") long retentionHours,
+                       @Value("${filmorate.activity-log.force-interval-ms:1000}") long forceIntervalMs,
+                       @Value("${filmorate.activity-log.capacity:65536}") int capacity) {
+        this(Path.of(directory), segmentSize, Duration.ofHours(retentionHours), forceIntervalMs, capacity,
+                Clock.systemUTC());
+    }
+
+    public ActivityLog(Path directory, int segmentSize, Duration retention, long forceIntervalMs, int capacity,
+                       Clock clock) {
+        this.directory = directory;
+        this.segmentRecords = Math.max(1, segmentSize / FRAME_SIZE);
+        this.retentionMs = retention.toMillis();
+        this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(forceIntervalMs);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("activity log " + directory + " is used by another process");
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            segments.put(baseOffset, Segment.open(file, baseOffset, 0));
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, Segment.open(segmentPath(0), 0, segmentRecords));
+        }
+        // full segments are sealed, only the last one can end with a torn frame of a crash
+        Segment last = segments.lastEntry().getValue();
+        last.size = last.scan();
+        endOffset = last.baseOffset + last.size;
+        appended.set(endOffset);
+
+        running = true;
+        writer = new Thread(this::write, "activity-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("activity log {} is opened with offsets from {} to {}", directory, getStartOffset(), endOffset);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join();
+        }
+        if (fileLock != null) {
+            fileLock.release();
+            lockChannel.close();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLikesChanged(LikesChangedEvent event) {
+        ActivityType type = event.isRemoved() ? ActivityType.UNLIKE : ActivityType.LIKE;
+        event.getLikes().forEach(like -> append(type, like.getUserId(), like.getFilmId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFriendsChanged(FriendsChangedEvent event) {
+        append(event.isRemoved() ? ActivityType.FRIEND_REMOVE : ActivityType.FRIEND_ADD,
+                event.getUserId(), event.getFriendId());
+    }
+
+    /**
+     * Queues the record for the writer, blocks while {@code capacity} records are waiting.
+     */
+    public void append(ActivityType type, int userId, int targetId) {
+        if (!running) {
+            throw new IllegalStateException("activity log is closed");
+        }
+        try {
+            queue.put(new ActivityEvent(-1, type, userId, targetId, clock.instant()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("append to activity log is interrupted", e);
+        }
+        appended.incrementAndGet();
+    }
+
+    /**
+     * Waits until the records appended before the call are readable.
+     */
+    public boolean flush(long timeoutMs) throws InterruptedException {
+        long target = appended.get();
+        long left = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        writtenLock.lock();
+        try {
+            while (endOffset < target) {
+                if (left <= 0) {
+                    return false;
+                }
+                left = written.awaitNanos(left);
+            }
+            return true;
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+
+    public long getStartOffset() {
+        return segments.firstKey();
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public List<ActivityEvent> read(long fromOffset, int limit) {
+        List<ActivityEvent> events = new ArrayList<>(Math.min(limit, 1024));
+        replay(fromOffset, limit, events::add);
+        return events;
+    }
+
+    /**
+     * Passes up to {@code limit} records starting at {@code fromOffset} to the consumer and returns the offset to read
+     * next. Records removed by retention are skipped.
+     */
+    public long replay(long fromOffset, long limit, Consumer<ActivityEvent> consumer) {
+        long end = endOffset;
+        long offset = Math.min(Math.max(fromOffset, getStartOffset()), end);
+        long stop = offset + Math.min(limit, end - offset);
+        CRC32C crc = new CRC32C();
+        while (offset < stop) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                offset = Math.min(getStartOffset(), stop);
+                continue;
+            }
+            Segment segment = entry.getValue();
+            ByteBuffer view = segment.buffer.duplicate();
+            long segmentEnd = Math.min(stop, segment.baseOffset + segment.capacity);
+            for (int index = (int) (offset - segment.baseOffset); offset < segmentEnd; index++, offset++) {
+                consumer.accept(segment.read(view, index, crc));
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Removes full segments whose last record is older than the retention, the segment being written is kept.
+     */
+    public void applyRetention() throws IOException {
+        long threshold = clock.millis() - retentionMs;
+        for (Segment segment : segments.headMap(segments.lastKey()).values()) {
+            if (segment.timeAt(segment.capacity - 1) >= threshold) {
+                break;
+            }
+            segments.remove(segment.baseOffset);
+            Files.deleteIfExists(segment.path);
+            log.info("activity log segment {} is removed by retention", segment.path);
+        }
+    }
+
+    private void write() {
+        List<ActivityEvent> batch = new ArrayList<>(MAX_BATCH);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+        CRC32C crc = new CRC32C();
+        long lastForce = System.nanoTime();
+        long lastRetention = 0;
+        boolean dirty = false;
+        while (running || !queue.isEmpty()) {
+            try {
+                ActivityEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    write(batch, frame, crc);
+                    dirty = true;
+                }
+                long now = System.nanoTime();
+                if (dirty && now - lastForce >= forceIntervalNanos) {
+                    segments.lastEntry().getValue().buffer.force();
+                    lastForce = now;
+                    dirty = false;
+                }
+                if (now - lastRetention >= RETENTION_CHECK_INTERVAL_NANOS) {
+                    applyRetention();
+                    lastRetention = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException | RuntimeException e) {
+                log.error("activity log lost {} records", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+        segments.lastEntry().getValue().buffer.force();
+    }
+
+    private void write(List<ActivityEvent> batch, ByteBuffer frame, CRC32C crc) throws IOException {
+        Segment segment = segments.lastEntry().getValue();
+        for (ActivityEvent event : batch) {
+            if (segment.size == segment.capacity) {
+                segment = roll(segment);
+            }
+            segment.append(event, frame, crc);
+        }
+        endOffset = segment.baseOffset + segment.size;
+        writtenLock.lock();
+        try {
+            written.signalAll();
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+
+    private Segment roll(Segment full) throws IOException {
+        full.buffer.force();
+        endOffset = full.baseOffset + full.size;
+        long baseOffset = full.baseOffset + full.capacity;
+        Segment segment = Segment.open(segmentPath(baseOffset), baseOffset, segmentRecords);
+        segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    private Path segmentPath(long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+    private static class Segment {
+        private final long baseOffset;
+
+        private final Path path;
+
+        private final MappedByteBuffer buffer;
+
+        // own position for the writer thread, readers use absolute gets on the buffer
+        private final ByteBuffer output;
+
+        private final int capacity;
+
+        // written records, only the writer thread uses it after start
+        private int size;
+
+        private Segment(long baseOffset, Path path, MappedByteBuffer buffer) {
+            this.baseOffset = baseOffset;
+            this.path = path;
+            this.buffer = buffer;
+            this.output = buffer.duplicate();
+            this.capacity = buffer.capacity() / FRAME_SIZE;
+            this.size = capacity;
+        }
+
+        /**
+         * Maps an existing segment with its own size or creates one of {@code capacity} records.
+         */
+        private static Segment open(Path path, long baseOffset, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long length = capacity > 0 ? (long) capacity * FRAME_SIZE : channel.size() / FRAME_SIZE * FRAME_SIZE;
+                Segment segment = new Segment(baseOffset, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+                if (capacity > 0) {
+                    segment.size = 0;
+                }
+                return segment;
+            }
+        }
+
+        /**
+         * Counts the valid frames before the first zero or damaged one.
+         */
+        private int scan() {
+            ByteBuffer view = buffer.duplicate();
+            CRC32C crc = new CRC32C();
+            int index = 0;
+            while (index < capacity && isValid(view, index, crc)) {
+                index++;
+            }
+            return index;
+        }
+
+        private void append(ActivityEvent event, ByteBuffer frame, CRC32C crc) {
+            frame.clear();
+            frame.putInt(0)
+                    .put((byte) event.getType().getCode())
+                    .putLong(event.getTime().toEpochMilli())
+                    .putInt(event.getUserId())
+                    .putInt(event.getTargetId());
+            crc.reset();
+            crc.update(frame.array(), Integer.BYTES, FRAME_SIZE - Integer.BYTES);
+            frame.putInt(0, (int) crc.getValue());
+            output.position(size * FRAME_SIZE);
+            output.put(frame.array());
+            size++;
+        }
+
+        private ActivityEvent read(ByteBuffer view, int index, CRC32C crc) {
+            if (!isValid(view, index, crc)) {
+                throw new IllegalStateException("activity log record " + (baseOffset + index) + " is damaged");
+            }
+            int position = index * FRAME_SIZE;
+            return new ActivityEvent(baseOffset + index,
+                    ActivityType.of(buffer.get(position + 4)),
+                    buffer.getInt(position + 13),
+                    buffer.getInt(position + 17),
+                    Instant.ofEpochMilli(buffer.getLong(position + 5)));
+        }
+
+        private long timeAt(int index) {
+            return buffer.getLong(index * FRAME_SIZE + 5);
+        }
+
+        private boolean isValid(ByteBuffer view, int index, CRC32C crc) {
+            int position = index * FRAME_SIZE;
+            view.limit(position + FRAME_SIZE).position(position + Integer.BYTES);
+            crc.reset();
+            crc.update(view);
+            return (int) crc.getValue() == buffer.getInt(position) && ActivityType.of(buffer.get(position + 4)) != null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.cli;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.ImportFormat;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.service.BatchImporter;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
+import ru.yandex.practicum.filmorate.service.UserImportService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Imports files given as {@code --import-users=users.ndjson --import-films=films.csv} and exits, users are imported
+ * first and files ending with .csv are read as CSV. Add {@code --spring.main.web-application-type=none} to skip
+ * starting the web server.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ImportCommand implements ApplicationRunner {
+    public static final String IMPORT_USERS_OPTION = "import-users";
+
+    public static final String IMPORT_FILMS_OPTION = "import-films";
+
+    private final UserImportService userImportService;
+
+    private final FilmImportService filmImportService;
+
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!args.containsOption(IMPORT_USERS_OPTION) && !args.containsOption(IMPORT_FILMS_OPTION)) {
+            return;
+        }
+        boolean failed = importFiles(args.getOptionValues(IMPORT_USERS_OPTION), userImportService);
+        failed |= importFiles(args.getOptionValues(IMPORT_FILMS_OPTION), filmImportService);
+        int exitCode = failed ? 1 : 0;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    private boolean importFiles(List<String> files, BatchImporter<?> importer) throws IOException {
+        boolean failed = false;
+        for (String file : files == null ? List.<String>of() : files) {
+            Path path = Path.of(file);
+            try (InputStream input = Files.newInputStream(path)) {
+                ImportReport report = importer.importFrom(input, ImportFormat.of(path));
+                report.getErrors().forEach(error -> log.warn("{}:{} {}", path, error.getLine(), error.getMessage()));
+                log.info("{}: imported {} rows, {} rows failed in {} ms ({} rows/s)", path,
+                        report.getImported(), report.getFailed(), report.getDurationMs(), report.getRowsPerSecond());
+                failed |= report.getFailed() > 0;
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryFilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryGenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryUserDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.Journal;
+import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
+import ru.yandex.practicum.filmorate.dao.interfaces.GenreDao;
+import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
+
+import java.nio.file.Path;
+
+/**
+ * Opt-in storage of films and users in the journaled in-memory DAOs instead of H2,
+ * {@code filmorate.storage.in-memory.enabled=true}. Film genres are kept inside the films, so genres come from the
+ * in-memory DAO as well, ratings are still read from H2. Hourly likes are not kept, so trending films start empty
+ * after a restart. Do not combine with the write-behind likes.
+ */
+@Configuration
+@ConditionalOnProperty(value = "filmorate.storage.in-memory.enabled", havingValue = "true")
+public class InMemoryStorageConfig {
+    private final Path directory;
+
+    private final long snapshotEvery;
+
+    private final int parallelism;
+
+    public InMemoryStorageConfig(@Value("${filmorate.storage.in-memory.dir}") String directory,
+                                 @Value("${filmorate.storage.in-memory.snapshot-every}") long snapshotEvery,
+                                 @Value("${filmorate.storage.in-memory.parallelism:0}") int parallelism) {
+        this.directory = Path.of(directory);
+        this.snapshotEvery = snapshotEvery;
+        this.parallelism = parallelism;
+    }
+
+    @Bean(destroyMethod = "close")
+    public Journal filmJournal() {
+        return new Journal(directory.resolve("films"), snapshotEvery, parallelism);
+    }
+
+    @Bean(destroyMethod = "close")
+    public Journal userJournal() {
+        return new Journal(directory.resolve("users"), snapshotEvery, parallelism);
+    }
+
+    @Bean
+    @Primary
+    @Qualifier("FilmDaoImpl")
+    public FilmDao durableFilmDao(@Qualifier("filmJournal") Journal journal,
+                                  @Qualifier("userJournal") Journal userJournal) {
+        return new InMemoryFilmDaoImpl(journal, durableUserDao(userJournal));
+    }
+
+    @Bean
+    @Primary
+    @Qualifier("UserDaoImpl")
+    public UserDao durableUserDao(@Qualifier("userJournal") Journal journal) {
+        return new InMemoryUserDaoImpl(journal);
+    }
+
+    @Bean
+    @Primary
+    @Qualifier("GenreDaoImpl")
+    public GenreDao filmGenreDao() {
+        return new InMemoryGenreDaoImpl();
+    }
+}
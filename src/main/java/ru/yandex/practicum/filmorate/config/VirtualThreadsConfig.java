@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in request execution on virtual threads, {@code filmorate.web.threads=virtual}. Tomcat hands every request to
+ * a new virtual thread instead of its worker pool, so a request waiting on JDBC does not hold a platform thread,
+ * async MVC responses like the film stream use the same executor. The build targets Java 11, so the executor is
+ * looked up reflectively and the application refuses to start on a runtime older than Java 21.
+ * <p>
+ * Embedded H2 2.1 synchronizes on the session around every command, so a virtual thread inside H2 pins its carrier
+ * thread; the Hikari pool bounds how many do at once, so keep {@code jdk.virtualThreadScheduler.parallelism}
+ * above {@code spring.datasource.hikari.maximum-pool-size} for cache and index reads to keep running.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(value = "filmorate.web.threads", havingValue = "virtual")
+public class VirtualThreadsConfig implements WebMvcConfigurer {
+    private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        log.info("requests are executed on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new ConcurrentTaskExecutor(executor));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new IllegalStateException("filmorate.web.threads=virtual needs Java 21 or newer, running on "
+                    + Runtime.version());
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("can not create a virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.activity.ActivityLog;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
+import ru.yandex.practicum.filmorate.metrics.StatementMetrics;
+import ru.yandex.practicum.filmorate.model.ActivityEvent;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.SketchSnapshot;
+import ru.yandex.practicum.filmorate.model.StatementStats;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.RatingService;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin")
+@Validated
+@RequiredArgsConstructor
+public class AdminController {
+
+    private final FilmService filmService;
+
+    private final GenreService genreService;
+
+    private final RatingService ratingService;
+
+    private final FilmCache filmCache;
+
+    private final StatementMetrics statementMetrics;
+
+    private final ActivityLog activityLog;
+
+    @PostMapping("/likes/rebuild")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void rebuildLikesCount() {
+        filmService.rebuildLikesCount();
+    }
+
+    @PostMapping("/recommendations/rebuild")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void rebuildRecommendations() {
+        filmService.rebuildRecommendations();
+    }
+
+    @PostMapping("/reference-data/refresh")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void refreshReferenceData() {
+        genreService.refresh();
+        ratingService.refresh();
+        // cached films still hold the ratings of the previous table
+        filmCache.invalidateAll();
+    }
+
+    @GetMapping("/sketch")
+    public SketchSnapshot getSketch() {
+        return filmService.getSketch();
+    }
+
+    @PostMapping("/sketch/merge")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void mergeSketch(@RequestBody SketchSnapshot snapshot) {
+        filmService.mergeSketch(snapshot);
+    }
+
+    @GetMapping("/cache/films")
+    public CacheStats getFilmCacheStats() {
+        return filmCache.getStats();
+    }
+
+    @GetMapping("/metrics/jdbc")
+    public List<StatementStats> getJdbcMetrics() {
+        return statementMetrics.getStats();
+    }
+
+    @GetMapping("/activity")
+    public ResponseEntity<List<ActivityEvent>> getActivity(@PositiveOrZero @RequestParam(defaultValue = "0") long from,
+                                                           @Positive @Max(Page.MAX_SIZE) @RequestParam(defaultValue = "100") int limit) {
+        List<ActivityEvent> events = new ArrayList<>();
+        long next = activityLog.replay(from, limit, events::add);
+        return ResponseEntity.ok()
+                .header(Page.NEXT_CURSOR_HEADER, String.valueOf(next))
+                .body(events);
+    }
+}
@@ -1,15 +1,39 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.index.HeavyHitters;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
+import ru.yandex.practicum.filmorate.model.ImportFormat;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LikeResult;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.PopularFilmsStream;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 @RequestMapping("/films")
@@ -17,11 +41,71 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
 
+    private static final int STREAM_FLUSH_EVERY = 100;
+
+    private static final int MAX_LIKES_BATCH_SIZE = 10_000;
+
+    private static final String PREFER = "Prefer";
+
+    private static final String RETURN_MINIMAL = "return=minimal";
+
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+
     private final FilmService filmService;
 
+    private final ObjectMapper objectMapper;
+
+    private final FilmImportService filmImportService;
+
+    private final PopularFilmsStream popularFilmsStream;
+
     @GetMapping
-    public List<Film> findAllFilms() {
-        return filmService.getAll();
+    public ResponseEntity<List<Film>> findAllFilms(@PositiveOrZero @RequestParam(required = false) Integer after,
+                                                   @Positive @Max(Page.MAX_SIZE) @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(filmService.getAll());
+        }
+        Page<Film> page = filmService.getPage(after == null ? 0 : after, limit == null ? Page.DEFAULT_SIZE : limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(Page.NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+        return response.body(page.getItems());
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFilms() {
+        StreamingResponseBody body = out -> {
+            AtomicInteger written = new AtomicInteger();
+            filmService.streamAll(film -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(film));
+                    out.write('\n');
+                    if (written.incrementAndGet() % STREAM_FLUSH_EVERY == 1) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping("/search")
+    public List<Film> searchFilms(@NotBlank @RequestParam String q,
+                                  @Positive @Max(Page.MAX_SIZE) @RequestParam(defaultValue = "10") int limit,
+                                  @RequestParam(defaultValue = "false") boolean boostPopular) {
+        return filmService.searchFilms(q, limit, boostPopular);
+    }
+
+    @GetMapping("/autocomplete")
+    public List<FilmSuggestion> autocompleteFilms(@NotBlank @RequestParam String prefix,
+                                                  @Positive @Max(Page.MAX_SIZE) @RequestParam(defaultValue = "10") int limit) {
+        return filmService.autocomplete(prefix, limit);
     }
 
     @GetMapping("/{filmId}")
@@ -34,14 +118,31 @@ public class FilmController {
         return filmService.add(film);
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportReport importFilms(InputStream body) throws IOException {
+        return filmImportService.importFrom(body, ImportFormat.NDJSON);
+    }
+
+    @PostMapping(value = "/import", consumes = ImportFormat.TEXT_CSV_VALUE)
+    public ImportReport importFilmsFromCsv(InputStream body) throws IOException {
+        return filmImportService.importFrom(body, ImportFormat.CSV);
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
         return filmService.update(film);
     }
 
     @PutMapping("{filmId}/like/{userId}")
-    public Film addLike(@PathVariable int filmId, @PathVariable int userId) {
-        return filmService.addLike(filmId, userId);
+    public ResponseEntity<Film> addLike(@PathVariable int filmId, @PathVariable int userId,
+                                        @RequestHeader(value = PREFER, required = false) String prefer) {
+        if (RETURN_MINIMAL.equals(prefer)) {
+            filmService.like(filmId, userId);
+            return ResponseEntity.noContent()
+                    .header(PREFERENCE_APPLIED, RETURN_MINIMAL)
+                    .build();
+        }
+        return ResponseEntity.ok(filmService.addLike(filmId, userId));
     }
 
     @DeleteMapping("{filmId}/like/{userId}")
@@ -50,8 +151,36 @@ public class FilmController {
         filmService.deleteLike(filmId, userId);
     }
 
+    @PostMapping("/likes:batch")
+    public List<LikeResult> addLikes(@RequestBody @NotEmpty @Size(max = MAX_LIKES_BATCH_SIZE) List<@Valid Like> likes) {
+        return filmService.addLikes(likes);
+    }
+
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@Positive @RequestParam(defaultValue = "10") int count) {
-        return filmService.getPopularFilms(count);
+    public ResponseEntity<List<Film>> getPopularFilms(@Positive @RequestParam(defaultValue = "10") int count,
+                                                      @RequestParam(required = false) Integer genreId,
+                                                      @RequestParam(required = false) Integer year,
+                                                      @RequestParam(defaultValue = "false") boolean approximate) {
+        if (!approximate) {
+            return ResponseEntity.ok(filmService.getPopularFilms(count, genreId, year));
+        }
+        if (genreId != null || year != null) {
+            throw new ValidationException("approximate popular films can not be filtered by genre or year");
+        }
+        return ResponseEntity.ok()
+                .header(HeavyHitters.ERROR_HEADER, String.valueOf(filmService.getApproximateErrorBound()))
+                .header(HeavyHitters.CONFIDENCE_HEADER, String.valueOf(filmService.getApproximateConfidence()))
+                .body(filmService.getApproximatePopularFilms(count));
+    }
+
+    @GetMapping(value = "/popular/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPopularFilms() {
+        return popularFilmsStream.subscribe();
+    }
+
+    @GetMapping("/trending")
+    public List<Film> getTrendingFilms(@RequestParam(defaultValue = "24h") String window,
+                                       @Positive @RequestParam(defaultValue = "10") int count) {
+        return filmService.getTrendingFilms(window, count);
     }
 }
@@ -2,23 +2,51 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportFormat;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserImportService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
 @RequestMapping("/users")
+@Validated
 @RequiredArgsConstructor
 public class UserController {
 
     private final UserService userService;
 
+    private final UserImportService userImportService;
+
+    private final FilmService filmService;
+
     @GetMapping
-    public List<User> findAllUsers() {
-        return userService.getAll();
+    public ResponseEntity<List<User>> findAllUsers(@PositiveOrZero @RequestParam(required = false) Integer after,
+                                                   @Positive @Max(Page.MAX_SIZE) @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.getAll());
+        }
+        Page<User> page = userService.getPage(after == null ? 0 : after, limit == null ? Page.DEFAULT_SIZE : limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(Page.NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+        return response.body(page.getItems());
     }
 
     @GetMapping("/{userId}")
@@ -31,6 +59,16 @@ public class UserController {
         return userService.add(user);
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportReport importUsers(InputStream body) throws IOException {
+        return userImportService.importFrom(body, ImportFormat.NDJSON);
+    }
+
+    @PostMapping(value = "/import", consumes = ImportFormat.TEXT_CSV_VALUE)
+    public ImportReport importUsersFromCsv(InputStream body) throws IOException {
+        return userImportService.importFrom(body, ImportFormat.CSV);
+    }
+
     @PutMapping
     public User updateUser(@Valid @RequestBody User user) {
         return userService.update(user);
@@ -56,4 +94,16 @@ public class UserController {
     public List<User> getCommonFriends(@PathVariable int userId, @PathVariable int otherId) {
         return userService.getCommonFriends(userId, otherId);
     }
+
+    @GetMapping("/{userId}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable int userId,
+                                           @Positive @Max(Page.MAX_SIZE) @RequestParam(defaultValue = "10") int limit) {
+        return userService.getFriendSuggestions(userId, limit);
+    }
+
+    @GetMapping("/{userId}/recommendations")
+    public List<Film> getRecommendations(@PathVariable int userId,
+                                         @Positive @Max(Page.MAX_SIZE) @RequestParam(defaultValue = "10") int limit) {
+        return filmService.getRecommendations(userId, limit);
+    }
 }
@@ -0,0 +1,129 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Size-bounded (W-TinyLFU) cache of films with their genres.
+ * A changed film is evicted right away and once more after its transaction completes, and is read
+ * past the cache until then, so no other transaction can cache or see a version older than the commit.
+ * Callers always get their own copy of the cached film.
+ * <p>
+ * Films loaded in bulk are not cached if anything was invalidated while they were loading.
+ */
+@Component
+public class FilmCache {
+    private final Cache<Integer, Film> cache;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public FilmCache(@Value("${filmorate.films.cache.maximum-size:10000}") long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<Film> get(int filmId, IntFunction<Optional<Film>> loader) {
+        if (getChangedInTransaction().contains(filmId)) {
+            return loader.apply(filmId);
+        }
+        Film film = cache.get(filmId, id -> loader.apply(id).orElse(null));
+        return Optional.ofNullable(film).map(FilmCache::copy);
+    }
+
+    /**
+     * Returns the films in the order of the ids, the ones missing in the cache are loaded with one call.
+     */
+    public List<Film> getAll(List<Integer> filmIds, Function<List<Integer>, List<Film>> loader) {
+        Set<Integer> changedIds = getChangedInTransaction();
+        Map<Integer, Film> films = new HashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        for (int filmId : filmIds) {
+            Film film = changedIds.contains(filmId) ? null : cache.getIfPresent(filmId);
+            if (film == null) {
+                missingIds.add(filmId);
+            } else {
+                films.put(filmId, film);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            long invalidationsBefore = invalidations.get();
+            for (Film film : loader.apply(missingIds)) {
+                films.put(film.getId(), film);
+                if (!changedIds.contains(film.getId())) {
+                    // an eviction of the key waits for the compute, so it either comes first and is seen or comes after
+                    cache.asMap().compute(film.getId(),
+                            (filmId, cached) -> invalidations.get() == invalidationsBefore ? film : cached);
+                }
+            }
+        }
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(FilmCache::copy)
+                .collect(Collectors.toList());
+    }
+
+    public void invalidate(int filmId) {
+        // counted before the eviction, so a bulk load that misses the count caches its film before it is evicted
+        invalidations.incrementAndGet();
+        cache.invalidate(filmId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Set<Integer> changedIds = getChangedInTransaction();
+        if (changedIds.isEmpty()) {
+            Set<Integer> ids = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, ids);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(FilmCache.this);
+                    invalidations.incrementAndGet();
+                    cache.invalidateAll(ids);
+                }
+            });
+            changedIds = ids;
+        }
+        changedIds.add(filmId);
+    }
+
+    /**
+     * Evicts every film, for changes of the reference data that all films share.
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = cache.stats();
+        return new CacheStats(cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Integer> getChangedInTransaction() {
+        Set<Integer> changedIds = (Set<Integer>) TransactionSynchronizationManager.getResource(this);
+        return changedIds == null ? Set.of() : changedIds;
+    }
+
+    private static Film copy(Film film) {
+        return film.toBuilder()
+                .likedUsers(new HashSet<>(film.getLikedUsers()))
+                .genres(film.getGenres() == null ? null : new LinkedHashSet<>(film.getGenres()))
+                .build();
+    }
+}
@@ -3,18 +3,26 @@ package ru.yandex.practicum.filmorate.dao;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.HourlyLikes;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Rating;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.util.function.Function.identity;
@@ -23,17 +31,68 @@ import static java.util.function.Function.identity;
 @RequiredArgsConstructor
 @Qualifier("FilmDaoImpl")
 public class FilmDaoImpl implements FilmDao {
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+
+    private static final String INSERT_FILM_SQL = "insert into FILMS (NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) values (?, ?, ?, ?, ?)";
+
     private final JdbcTemplate jdbcTemplate;
 
+    private final GenreDaoImpl genreDao;
+
+    private final RatingDaoImpl ratingDao;
+
+    private final FilmCache filmCache;
+
     @Override
     public List<Film> getAll() {
-        String sqlQuery = "select f.*, r.NAME as r_name from FILMS f join RATINGS R on f.RATING_ID = R.ID";
+        String sqlQuery = "/* film.getAll */ select f.*, r.NAME as r_name from FILMS f join RATINGS R on f.RATING_ID = R.ID";
         List<Film> filmList = jdbcTemplate.query(sqlQuery, this::mapRowToFilm);
         return setFilmGenres(filmList);
     }
 
+    @Override
+    public List<Film> getPage(int afterId, int limit) {
+        String sqlQuery = "/* film.getPage */ select f.*, r.NAME as r_name from FILMS f join RATINGS R on f.RATING_ID = R.ID where f.ID > ? order by f.ID limit ?";
+        List<Film> filmList = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, afterId, limit);
+        return setFilmGenres(filmList);
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        String sqlQuery = "/* film.streamAll */ select f.*, r.NAME as r_name, fg.GENRE_ID as g_id from FILMS f join RATINGS R on f.RATING_ID = R.ID " +
+                "left join FILM_GENRES fg on f.ID = fg.FILM_ID order by f.ID, fg.GENRE_ID";
+        Film[] current = new Film[1];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            int filmId = rs.getInt("id");
+            if (current[0] == null || current[0].getId() != filmId) {
+                if (current[0] != null) {
+                    consumer.accept(current[0]);
+                }
+                current[0] = mapRowToFilm(rs, rs.getRow());
+            }
+            int genreId = rs.getInt("g_id");
+            if (!rs.wasNull()) {
+                current[0].getGenres().add(getGenre(genreId));
+            }
+        });
+        if (current[0] != null) {
+            consumer.accept(current[0]);
+        }
+    }
+
+    @Override
     public Optional<Film> get(int filmId) {
-        String sqlQuery = "select f.*, r.NAME from FILMS f join RATINGS R on f.RATING_ID = R.ID where f.id = ?;";
+        return filmCache.get(filmId, this::load);
+    }
+
+    private Optional<Film> load(int filmId) {
+        String sqlQuery = "/* film.get */ select f.*, r.NAME as r_name from FILMS f join RATINGS R on f.RATING_ID = R.ID where f.id = ?;";
         try {
             Film film = jdbcTemplate.queryForObject(sqlQuery, this::mapRowToFilm, filmId);
             List<Film> films = setFilmGenres(Collections.singletonList(film));
@@ -45,19 +104,49 @@ public class FilmDaoImpl implements FilmDao {
 
     @Override
     public Film add(Film film) {
-        SimpleJdbcInsert insertFilm = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("films")
-                .usingGeneratedKeyColumns("id");
-        int filmId = insertFilm.executeAndReturnKey(film.toInsertMap()).intValue();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("/* film.add */ " + INSERT_FILM_SQL, new String[]{"id"});
+            setInsertValues(ps, film);
+            return ps;
+        }, keyHolder);
+        int filmId = Objects.requireNonNull(keyHolder.getKey()).intValue();
         film.setId(filmId);
+        filmCache.invalidate(filmId);
         return get(filmId).orElse(null);
     }
 
+    @Override
+    public List<Film> addAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("/* film.addAll */ " + INSERT_FILM_SQL, new String[]{"id"})) {
+                for (Film film : films) {
+                    setInsertValues(ps, film);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        if (!keys.next()) {
+                            throw new IncorrectResultSizeDataAccessException(films.size());
+                        }
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+        return films;
+    }
+
     @Override
     public Optional<Film> update(Film film) {
         Optional<Film> currentFilm = get(film.getId());
         if (currentFilm.isPresent()) {
-            String sql = "update FILMS set NAME = ?, DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, RATING_ID = ? where id = ?;";
+            String sql = "/* film.update */ update FILMS set NAME = ?, DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, RATING_ID = ? where id = ?;";
             jdbcTemplate.update(sql,
                     film.getName(),
                     film.getDescription(),
@@ -65,6 +154,7 @@ public class FilmDaoImpl implements FilmDao {
                     film.getDuration(),
                     film.getMpa().getId(),
                     film.getId());
+            filmCache.invalidate(film.getId());
             return Optional.of(film);
         } else {
             return Optional.empty();
@@ -75,12 +165,7 @@ public class FilmDaoImpl implements FilmDao {
     public Optional<Film> addLike(int filmId, int userId) {
         Optional<Film> film = get(filmId);
         film.ifPresent(f -> {
-            String sql = "insert into LIKES (user_id, film_id) select ?, ? WHERE NOT EXISTS ( SELECT user_id, film_id FROM LIKES WHERE user_id = ? and film_id = ? )";
-            jdbcTemplate.update(sql,
-                    userId,
-                    filmId,
-                    userId,
-                    filmId);
+            saveLike(filmId, userId);
             f.getLikedUsers().add(userId);
         });
         return film;
@@ -90,25 +175,245 @@ public class FilmDaoImpl implements FilmDao {
     public Optional<Film> deleteLike(int filmId, int userId) {
         Optional<Film> film = get(filmId);
         film.ifPresent(f -> {
-            String sql = "delete from LIKES where USER_ID = ? and FILM_ID = ?;";
-            jdbcTemplate.update(sql,
-                    userId,
-                    filmId);
+            removeLike(filmId, userId);
             f.getLikedUsers().remove(userId);
-
         });
         return film;
     }
 
+    @Override
+    public boolean saveLike(int filmId, int userId) {
+        String sql = "/* film.saveLike */ insert into LIKES (user_id, film_id) select ?, ? WHERE NOT EXISTS ( SELECT user_id, film_id FROM LIKES WHERE user_id = ? and film_id = ? )";
+        int inserted = jdbcTemplate.update(sql,
+                userId,
+                filmId,
+                userId,
+                filmId);
+        if (inserted > 0) {
+            updateLikesCount(filmId, 1);
+        }
+        return inserted > 0;
+    }
+
+    @Override
+    public Optional<LocalDateTime> removeLike(int filmId, int userId) {
+        String sql = "/* film.removeLike */ select CREATED_AT from OLD TABLE (delete from LIKES where USER_ID = ? and FILM_ID = ?);";
+        List<LocalDateTime> deleted = jdbcTemplate.queryForList(sql, LocalDateTime.class, userId, filmId);
+        if (deleted.isEmpty()) {
+            return Optional.empty();
+        }
+        updateLikesCount(filmId, -1);
+        return Optional.of(deleted.get(0));
+    }
+
+    /**
+     * Returns when the like was made, empty when there is no like.
+     */
+    public Optional<LocalDateTime> getLikedAt(int filmId, int userId) {
+        String sqlQuery = "/* film.getLikedAt */ select CREATED_AT from LIKES where USER_ID = ? and FILM_ID = ?;";
+        return jdbcTemplate.queryForList(sqlQuery, LocalDateTime.class, userId, filmId).stream().findFirst();
+    }
+
+    /**
+     * Returns the likes counters of the films, films that do not exist are left out.
+     */
+    public Map<Integer, Integer> getLikesCount(Collection<Integer> filmIds) {
+        Map<Integer, Integer> likesCount = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return likesCount;
+        }
+        String inSql = String.join(",", Collections.nCopies(filmIds.size(), "?"));
+        String sqlQuery = String.format("/* film.getLikesCountByIds */ select ID, LIKES_COUNT from FILMS where ID in (%s)", inSql);
+        jdbcTemplate.query(sqlQuery, rs -> {
+            likesCount.put(rs.getInt("id"), rs.getInt("likes_count"));
+        }, filmIds.toArray());
+        return likesCount;
+    }
+
     @Override
     public List<Film> getPopularFilms(int count) {
-        String sqlQuery = "with q as (select count(*) as cnt, FILM_ID from LIKES group by FILM_ID) select f.*, r.NAME, q.cnt from FILMS f join RATINGS R on f.RATING_ID = R.ID left join q on f.ID = q.FILM_ID order by q.cnt desc limit ?;";
+        String sqlQuery = "/* film.getPopular */ select f.*, r.NAME as r_name from (select * from FILMS order by LIKES_COUNT desc, ID limit ?) f " +
+                "join RATINGS R on f.RATING_ID = R.ID order by f.LIKES_COUNT desc, f.ID;";
         List<Film> filmList = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, count);
         return setFilmGenres(filmList);
     }
 
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        List<Film> filmList;
+        if (genreId != null && year != null) {
+            String sqlQuery = "/* film.getPopularByGenreAndYear */ select f.*, r.NAME as r_name from (select * from FILMS f where RELEASE_YEAR = ? " +
+                    "and exists (select 1 from FILM_GENRES fg where fg.FILM_ID = f.ID and fg.GENRE_ID = ?) order by RELEASE_YEAR, LIKES_COUNT desc, ID limit ?) f " +
+                    "join RATINGS R on f.RATING_ID = R.ID order by f.LIKES_COUNT desc, f.ID;";
+            filmList = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, year, genreId, count);
+        } else if (genreId != null) {
+            String sqlQuery = "/* film.getPopularByGenre */ select f.*, r.NAME as r_name from (select * from FILMS f " +
+                    "where exists (select 1 from FILM_GENRES fg where fg.FILM_ID = f.ID and fg.GENRE_ID = ?) order by LIKES_COUNT desc, ID limit ?) f " +
+                    "join RATINGS R on f.RATING_ID = R.ID order by f.LIKES_COUNT desc, f.ID;";
+            filmList = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, genreId, count);
+        } else if (year != null) {
+            String sqlQuery = "/* film.getPopularByYear */ select f.*, r.NAME as r_name from (select * from FILMS where RELEASE_YEAR = ? " +
+                    "order by RELEASE_YEAR, LIKES_COUNT desc, ID limit ?) f join RATINGS R on f.RATING_ID = R.ID order by f.LIKES_COUNT desc, f.ID;";
+            filmList = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, year, count);
+        } else {
+            return getPopularFilms(count);
+        }
+        return setFilmGenres(filmList);
+    }
+
+    @Override
+    public List<Boolean> saveLikes(List<Like> likes) {
+        String sql = "/* film.saveLikes */ insert into LIKES (user_id, film_id) select ?, ? WHERE NOT EXISTS ( SELECT user_id, film_id FROM LIKES WHERE user_id = ? and film_id = ? )";
+        int[] inserted = jdbcTemplate.batchUpdate(sql,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Like like = likes.get(i);
+                        ps.setInt(1, like.getUserId());
+                        ps.setInt(2, like.getFilmId());
+                        ps.setInt(3, like.getUserId());
+                        ps.setInt(4, like.getFilmId());
+                    }
+
+                    public int getBatchSize() {
+                        return likes.size();
+                    }
+                });
+
+        return updateLikesCount(likes, inserted, 1);
+    }
+
+    @Override
+    public List<Boolean> removeLikes(List<Like> likes) {
+        String sql = "/* film.removeLikes */ delete from LIKES where USER_ID = ? and FILM_ID = ?;";
+        int[] deleted = jdbcTemplate.batchUpdate(sql,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setInt(1, likes.get(i).getUserId());
+                        ps.setInt(2, likes.get(i).getFilmId());
+                    }
+
+                    public int getBatchSize() {
+                        return likes.size();
+                    }
+                });
+        return updateLikesCount(likes, deleted, -1);
+    }
+
+    @Override
+    public boolean hasLike(int filmId, int userId) {
+        String sqlQuery = "/* film.hasLike */ select count(*) from LIKES where USER_ID = ? and FILM_ID = ?;";
+        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, userId, filmId);
+        return count != null && count > 0;
+    }
+
+    public boolean likeTargetsExist(int filmId, int userId) {
+        String sqlQuery = "/* film.likeTargetsExist */ select (select count(*) from FILMS where ID = ?) + (select count(*) from USERS where ID = ?)";
+        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, filmId, userId);
+        return count != null && count == 2;
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> filmIds) {
+        Set<Integer> existingIds = new HashSet<>();
+        List<Integer> ids = new ArrayList<>(filmIds);
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+            String inSql = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            String sqlQuery = String.format("/* film.getExistingIds */ select ID from FILMS where ID in (%s)", inSql);
+            existingIds.addAll(jdbcTemplate.queryForList(sqlQuery, Integer.class, chunk.toArray()));
+        }
+        return existingIds;
+    }
+
+    @Override
+    public List<Film> getByIds(Collection<Integer> filmIds) {
+        return filmCache.getAll(new ArrayList<>(filmIds), this::loadByIds);
+    }
+
+    private List<Film> loadByIds(List<Integer> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(filmIds.size(), "?"));
+        String sqlQuery = String.format("/* film.getByIds */ select f.*, r.NAME as r_name from FILMS f join RATINGS R on f.RATING_ID = R.ID where f.ID in (%s)", inSql);
+        List<Film> filmList = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, filmIds.toArray());
+        return setFilmGenres(filmList);
+    }
+
+    @Override
+    public Map<Integer, Integer> getLikesCount() {
+        String sqlQuery = "/* film.getLikesCount */ select f.ID, count(l.USER_ID) as cnt from FILMS f left join LIKES l on f.ID = l.FILM_ID group by f.ID";
+        Map<Integer, Integer> likesCount = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, rs -> {
+            likesCount.put(rs.getInt("id"), rs.getInt("cnt"));
+        });
+        return likesCount;
+    }
+
+    @Override
+    public void streamLikes(Consumer<Like> consumer) {
+        String sqlQuery = "/* film.streamLikes */ select USER_ID, FILM_ID from LIKES";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            consumer.accept(new Like(rs.getInt("film_id"), rs.getInt("user_id")));
+        });
+    }
+
+    @Override
+    public List<HourlyLikes> getHourlyLikesSince(LocalDateTime since) {
+        String sqlQuery = "/* film.getHourlyLikesSince */ select FILM_ID, DATE_TRUNC(HOUR, CREATED_AT) as LIKE_HOUR, count(*) as CNT from LIKES where CREATED_AT >= ? group by FILM_ID, DATE_TRUNC(HOUR, CREATED_AT)";
+        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> new HourlyLikes(
+                rs.getInt("film_id"),
+                rs.getTimestamp("like_hour").toLocalDateTime(),
+                rs.getInt("cnt")), since);
+    }
+
+    @Override
+    public void rebuildLikesCount() {
+        String sql = "/* film.rebuildLikesCount */ update FILMS f set LIKES_COUNT = (select count(*) from LIKES l where l.FILM_ID = f.ID);";
+        jdbcTemplate.update(sql);
+    }
+
+    private void updateLikesCount(int filmId, int delta) {
+        String sql = "/* film.updateLikesCount */ update FILMS set LIKES_COUNT = LIKES_COUNT + ? where ID = ?;";
+        jdbcTemplate.update(sql, delta, filmId);
+    }
+
+    private List<Boolean> updateLikesCount(List<Like> likes, int[] updateCounts, int delta) {
+        List<Boolean> changed = new ArrayList<>(likes.size());
+        Map<Integer, Integer> likesDelta = new HashMap<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            changed.add(updateCounts[i] > 0);
+            if (updateCounts[i] > 0) {
+                likesDelta.merge(likes.get(i).getFilmId(), delta, Integer::sum);
+            }
+        }
+        List<Object[]> counters = likesDelta.entrySet()
+                .stream()
+                .map(e -> new Object[]{e.getValue(), e.getKey()})
+                .collect(Collectors.toList());
+        String sql = "/* film.updateLikesCounts */ update FILMS set LIKES_COUNT = LIKES_COUNT + ? where ID = ?;";
+        jdbcTemplate.batchUpdate(sql, counters);
+        return changed;
+    }
+
+    private void setInsertValues(PreparedStatement ps, Film film) throws SQLException {
+        ps.setString(1, film.getName());
+        ps.setString(2, film.getDescription());
+        ps.setObject(3, film.getReleaseDate());
+        ps.setInt(4, film.getDuration());
+        ps.setInt(5, film.getMpa().getId());
+    }
+
     private Film mapRowToFilm(ResultSet resultSet, int rowNum) throws SQLException {
-        Rating mpa = new Rating(resultSet.getInt("rating_id"), resultSet.getString(7));
+        int ratingId = resultSet.getInt("rating_id");
+        Rating mpa = ratingDao.get(ratingId).orElse(null);
+        if (mpa == null) {
+            mpa = new Rating(ratingId, resultSet.getString("r_name"));
+        }
         return Film.builder()
                 .id(resultSet.getInt("id"))
                 .name(resultSet.getString("name"))
@@ -126,15 +431,17 @@ public class FilmDaoImpl implements FilmDao {
 
         Set<Integer> filmIds = filmsMap.keySet();
         String inSql = String.join(",", Collections.nCopies(filmIds.size(), "?"));
-        String sql = String.format("select fg.FILM_ID, g.* from GENRES g join FILM_GENRES fg on g.ID = fg.GENRE_ID where fg.FILM_ID in (%s)", inSql);
+        String sql = String.format("/* film.getGenres */ select FILM_ID, GENRE_ID from FILM_GENRES where FILM_ID in (%s)", inSql);
 
-        List<FilmGenre> filmGenres = jdbcTemplate.query(
-                sql,
-                filmIds.toArray(),
-                BeanPropertyRowMapper.newInstance(FilmGenre.class));
+        jdbcTemplate.query(sql, rs -> {
+            filmsMap.get(rs.getInt("film_id")).getGenres().add(getGenre(rs.getInt("genre_id")));
+        }, filmIds.toArray());
+        return films;
+    }
 
-        filmGenres.forEach(filmGenre -> filmsMap.get(filmGenre.getFilmId()).getGenres().add(filmGenre.toGenre()));
-        return new ArrayList<>(filmsMap.values());
+    private Genre getGenre(int genreId) {
+        return genreDao.get(genreId)
+                .orElseGet(() -> new Genre(genreId, null));
     }
 }
 
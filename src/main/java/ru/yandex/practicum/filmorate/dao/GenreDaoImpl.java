@@ -2,19 +2,19 @@ package ru.yandex.practicum.filmorate.dao;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.dao.interfaces.GenreDao;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import javax.annotation.PostConstruct;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -23,27 +23,34 @@ import java.util.Optional;
 public class GenreDaoImpl implements GenreDao {
     private final JdbcTemplate jdbcTemplate;
 
+    private final FilmCache filmCache;
+
+    private volatile ReferenceTable<Genre> genres;
+
     @Override
     public Optional<Genre> get(int genreId) {
-        String sqlQuery = "select * from GENRES where id = ?;";
-        try {
-            Genre genre = jdbcTemplate.queryForObject(sqlQuery, BeanPropertyRowMapper.newInstance(Genre.class), genreId);
-            return Optional.of(genre);
-        } catch (EmptyResultDataAccessException e) {
-            return Optional.empty();
-        }
+        return getGenres().get(genreId);
     }
 
     @Override
     public LinkedHashSet<Genre> getAll() {
-        String sqlQuery = "select * from GENRES order by ID";
-        return new LinkedHashSet<>(jdbcTemplate.query(sqlQuery, BeanPropertyRowMapper.newInstance(Genre.class)));
+        return getGenres().getAll();
+    }
+
+    @Override
+    @PostConstruct
+    public void refresh() {
+        String sqlQuery = "/* genre.getAll */ select ID, NAME from GENRES order by ID";
+        List<Genre> genreList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> new Genre(rs.getInt("id"), rs.getString("name")));
+        genres = new ReferenceTable<>(genreList, Genre::getId);
+        // cached films still hold the genres of the previous table
+        filmCache.invalidateAll();
     }
 
     @Override
     public Film addFilmGenre(Film film) {
         if (film.getGenres() != null) {
-            String sql = "insert into FILM_GENRES (film_id, genre_id) VALUES (?, ?);";
+            String sql = "/* genre.addFilmGenre */ insert into FILM_GENRES (film_id, genre_id) VALUES (?, ?);";
             jdbcTemplate.batchUpdate(sql,
                     new BatchPreparedStatementSetter() {
                         public void setValues(PreparedStatement ps, int i) throws SQLException {
@@ -55,14 +62,38 @@ public class GenreDaoImpl implements GenreDao {
                             return film.getGenres().size();
                         }
                     });
+            filmCache.invalidate(film.getId());
         }
         return film;
     }
 
+    @Override
+    public void addFilmGenres(List<Film> films) {
+        List<Object[]> filmGenres = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenres() != null) {
+                film.getGenres().forEach(genre -> filmGenres.add(new Object[]{film.getId(), genre.getId()}));
+            }
+        }
+        if (!filmGenres.isEmpty()) {
+            String sql = "/* genre.addFilmGenres */ insert into FILM_GENRES (film_id, genre_id) VALUES (?, ?);";
+            jdbcTemplate.batchUpdate(sql, filmGenres);
+        }
+        films.forEach(film -> filmCache.invalidate(film.getId()));
+    }
+
     @Override
     public void deleteFilmGenre(Film film) {
-        String deleteSql = "delete from FILM_GENRES where film_id = ?";
+        String deleteSql = "/* genre.deleteFilmGenre */ delete from FILM_GENRES where film_id = ?";
         jdbcTemplate.update(deleteSql,
                 film.getId());
+        filmCache.invalidate(film.getId());
+    }
+
+    private ReferenceTable<Genre> getGenres() {
+        if (genres == null) {
+            refresh();
+        }
+        return genres;
     }
 }
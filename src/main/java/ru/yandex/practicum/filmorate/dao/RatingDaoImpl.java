@@ -2,14 +2,14 @@ package ru.yandex.practicum.filmorate.dao;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.dao.interfaces.RatingDao;
 import ru.yandex.practicum.filmorate.model.Rating;
 
+import javax.annotation.PostConstruct;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -19,20 +19,30 @@ public class RatingDaoImpl implements RatingDao {
 
     private final JdbcTemplate jdbcTemplate;
 
+    private volatile ReferenceTable<Rating> ratings;
+
     @Override
     public Optional<Rating> get(int ratingId) {
-        String sqlQuery = "select * from RATINGS where id = ?;";
-        try {
-            Rating rating = jdbcTemplate.queryForObject(sqlQuery, BeanPropertyRowMapper.newInstance(Rating.class), ratingId);
-            return Optional.of(rating);
-        } catch (EmptyResultDataAccessException e) {
-            return Optional.empty();
-        }
+        return getRatings().get(ratingId);
     }
 
     @Override
     public LinkedHashSet<Rating> getAll() {
-        String sqlQuery = "select * from RATINGS order by ID";
-        return new LinkedHashSet<>(jdbcTemplate.query(sqlQuery, BeanPropertyRowMapper.newInstance(Rating.class)));
+        return getRatings().getAll();
+    }
+
+    @Override
+    @PostConstruct
+    public void refresh() {
+        String sqlQuery = "/* rating.getAll */ select ID, NAME from RATINGS order by ID";
+        List<Rating> ratingList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> new Rating(rs.getInt("id"), rs.getString("name")));
+        ratings = new ReferenceTable<>(ratingList, Rating::getId);
+    }
+
+    private ReferenceTable<Rating> getRatings() {
+        if (ratings == null) {
+            refresh();
+        }
+        return ratings;
     }
 }
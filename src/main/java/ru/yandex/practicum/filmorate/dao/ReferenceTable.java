@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable id-indexed table of small reference data (genres, ratings).
+ * The same instances are shared by every film read from the database.
+ */
+class ReferenceTable<T> {
+    private final Object[] values;
+
+    ReferenceTable(List<T> values, ToIntFunction<T> idGetter) {
+        this.values = new Object[values.stream().mapToInt(idGetter).max().orElse(0) + 1];
+        values.forEach(value -> this.values[idGetter.applyAsInt(value)] = value);
+    }
+
+    @SuppressWarnings("unchecked")
+    Optional<T> get(int id) {
+        return id >= 0 && id < values.length ? Optional.ofNullable((T) values[id]) : Optional.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    LinkedHashSet<T> getAll() {
+        LinkedHashSet<T> all = new LinkedHashSet<>();
+        for (Object value : values) {
+            if (value != null) {
+                all.add((T) value);
+            }
+        }
+        return all;
+    }
+}
@@ -4,40 +4,66 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
 import ru.yandex.practicum.filmorate.model.User;
 
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 
 @Repository
 @RequiredArgsConstructor
 @Slf4j
 @Qualifier("UserDaoImpl")
 public class UserDaoImpl implements UserDao {
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+
+    private static final String INSERT_USER_SQL = "insert into USERS (EMAIL, LOGIN, NAME, BIRTHDAY) values (?, ?, ?, ?)";
 
     private final JdbcTemplate jdbcTemplate;
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    private final FriendGraph friendGraph = new FriendGraph();
+
+    @PostConstruct
+    public void loadFriendGraph() {
+        FriendGraph.Edges edges = new FriendGraph.Edges();
+        jdbcTemplate.query("/* user.getFriendEdges */ select USER_ID, FRIEND_ID from FRIENDS",
+                rs -> {
+                    edges.add(rs.getInt("user_id"), rs.getInt("friend_id"));
+                });
+        friendGraph.rebuild(edges);
+        log.debug("friend graph is loaded with {} edges", friendGraph.getEdgeCount());
+    }
+
     @Override
     public List<User> getAll() {
-        String sqlQuery = "select * from USERS;";
+        String sqlQuery = "/* user.getAll */ select * from USERS;";
         return jdbcTemplate.query(sqlQuery, this::mapRowToUser);
     }
 
+    @Override
+    public List<User> getPage(int afterId, int limit) {
+        String sqlQuery = "/* user.getPage */ select * from USERS where ID > ? order by ID limit ?;";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, afterId, limit);
+    }
+
     @Override
     public Optional<User> get(int userId) {
-        String sqlQuery = "select * from USERS where id = ?;";
+        String sqlQuery = "/* user.get */ select * from USERS where id = ?;";
         try {
             User user = jdbcTemplate.queryForObject(sqlQuery, this::mapRowToUser, userId);
             return Optional.of(user);
@@ -46,23 +72,66 @@ public class UserDaoImpl implements UserDao {
         }
     }
 
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> userIds) {
+        return getExisting("getExistingIds", "ID", userIds, Integer.class);
+    }
+
+    @Override
+    public Set<String> getExistingLogins(Collection<String> logins) {
+        return getExisting("getExistingLogins", "LOGIN", logins, String.class);
+    }
+
+    @Override
+    public Set<String> getExistingEmails(Collection<String> emails) {
+        return getExisting("getExistingEmails", "EMAIL", emails, String.class);
+    }
+
     @Override
     public User add(User user) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("id");
-        int userId = simpleJdbcInsert.executeAndReturnKey(user.toMap()).intValue();
-        user.setId(userId);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("/* user.add */ " + INSERT_USER_SQL, new String[]{"id"});
+            setInsertValues(ps, user);
+            return ps;
+        }, keyHolder);
+        user.setId(Objects.requireNonNull(keyHolder.getKey()).intValue());
         return user;
     }
 
+    @Override
+    public List<User> addAll(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("/* user.addAll */ " + INSERT_USER_SQL, new String[]{"id"})) {
+                for (User user : users) {
+                    setInsertValues(ps, user);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (User user : users) {
+                        if (!keys.next()) {
+                            throw new IncorrectResultSizeDataAccessException(users.size());
+                        }
+                        user.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+        return users;
+    }
+
     @Override
     public Optional<User> update(User user) {
         Optional<User> currentUser = get(user.getId());
         if (currentUser.isEmpty()) {
             return Optional.empty();
         }
-        String sqlQuery = "update users set email = ?, login = ?, name = ?, birthday = ? where id = ?";
+        String sqlQuery = "/* user.update */ update users set email = ?, login = ?, name = ?, birthday = ? where id = ?";
         jdbcTemplate.update(sqlQuery,
                 user.getEmail(),
                 user.getLogin(),
@@ -73,35 +142,28 @@ public class UserDaoImpl implements UserDao {
     }
 
     @Override
-    public Optional<User> addFriend(int userId, int friendId) {
-        Optional<User> currentUser = get(userId);
-        Optional<User> friend = get(friendId);
-        if (currentUser.isPresent() && friend.isPresent()) {
-            SqlRowSet isFriends = jdbcTemplate.queryForRowSet(
-                    "select * from friends where user_id = ? and friend_id = ?", userId, friendId);
-            if (isFriends.next()) {
-                return currentUser;
-            }
-            Map<String, Object> parameters = new HashMap<>();
-            parameters.put("user_id", userId);
-            parameters.put("friend_id", friendId);
-            new SimpleJdbcInsert(jdbcTemplate)
-                    .withTableName("friends")
-                    .execute(parameters);
-            currentUser.get().getFriends().add(friendId);
-            return currentUser;
+    public Optional<Boolean> addFriend(int userId, int friendId) {
+        if (getExistingIds(List.of(userId, friendId)).size() < 2) {
+            return Optional.empty();
+        }
+        if (friendGraph.contains(userId, friendId)) {
+            return Optional.of(false);
         }
-        return Optional.empty();
+        jdbcTemplate.update("/* user.addFriend */ insert into FRIENDS (USER_ID, FRIEND_ID) values (?, ?)", userId, friendId);
+        friendGraph.add(userId, friendId);
+        undoOnRollback(() -> friendGraph.remove(userId, friendId));
+        return Optional.of(true);
     }
 
     @Override
-    public void deleteFriend(int userId, int friendId) {
-        Optional<User> currentUser = get(userId);
-        Optional<User> friend = get(friendId);
-        if (currentUser.isPresent() && friend.isPresent()) {
-            String sqlQuery = "delete from friends where user_id = ? and friend_id = ?";
-            jdbcTemplate.update(sqlQuery, userId, friendId);
+    public boolean deleteFriend(int userId, int friendId) {
+        String sqlQuery = "/* user.deleteFriend */ delete from friends where user_id = ? and friend_id = ?";
+        if (jdbcTemplate.update(sqlQuery, userId, friendId) == 0) {
+            return false;
         }
+        friendGraph.remove(userId, friendId);
+        undoOnRollback(() -> friendGraph.add(userId, friendId));
+        return true;
     }
 
     @Override
@@ -109,9 +171,7 @@ public class UserDaoImpl implements UserDao {
         if (get(userId).isEmpty()) {
             return Optional.empty();
         }
-        String sqlQuery = "select * from USERS where id in (select FRIEND_ID from FRIENDS where USER_ID = ?);";
-        List<User> friends = jdbcTemplate.query(sqlQuery, this::mapRowToUser, userId);
-        return Optional.of(friends);
+        return Optional.of(getByIds(friendGraph.getFriends(userId)));
     }
 
     @Override
@@ -119,14 +179,71 @@ public class UserDaoImpl implements UserDao {
         Optional<User> currentUser = get(userId);
         Optional<User> friend = get(otherId);
         if (currentUser.isPresent() && friend.isPresent()) {
-            String sqlQuery = "select * from USERS where id in (select FRIEND_ID from FRIENDS where USER_ID = ? and FRIEND_ID in (select FRIEND_ID from FRIENDS where USER_ID = ?));";
-            List<User> friends = jdbcTemplate.query(sqlQuery, this::mapRowToUser, userId, otherId);
-            return Optional.of(friends);
+            return Optional.of(getByIds(friendGraph.getCommonFriends(userId, otherId)));
         } else {
             return Optional.empty();
         }
     }
 
+    @Override
+    public Optional<List<User>> getFriendSuggestions(int userId, int limit) {
+        if (get(userId).isEmpty()) {
+            return Optional.empty();
+        }
+        int[] suggestions = friendGraph.getSuggestions(userId, limit, FriendGraph.MAX_FAN_OUT);
+        Map<Integer, User> users = new HashMap<>();
+        getByIds(suggestions).forEach(user -> users.put(user.getId(), user));
+        List<User> ranked = new ArrayList<>(suggestions.length);
+        for (int suggestion : suggestions) {
+            ranked.add(users.get(suggestion));
+        }
+        return Optional.of(ranked);
+    }
+
+    private List<User> getByIds(int[] userIds) {
+        List<User> users = new ArrayList<>(userIds.length);
+        for (int from = 0; from < userIds.length; from += IN_CLAUSE_CHUNK_SIZE) {
+            int to = Math.min(from + IN_CLAUSE_CHUNK_SIZE, userIds.length);
+            String inSql = String.join(",", Collections.nCopies(to - from, "?"));
+            String sqlQuery = String.format("/* user.getByIds */ select * from USERS where ID in (%s) order by ID", inSql);
+            users.addAll(jdbcTemplate.query(sqlQuery, this::mapRowToUser, Arrays.stream(userIds, from, to).boxed().toArray()));
+        }
+        return users;
+    }
+
+    // the graph is changed right away to be read in the same transaction and restored if the transaction rolls back
+    private void undoOnRollback(Runnable undo) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        undo.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private <T> Set<T> getExisting(String statement, String column, Collection<T> values, Class<T> type) {
+        Set<T> existing = new HashSet<>();
+        List<T> list = new ArrayList<>(values);
+        for (int from = 0; from < list.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<T> chunk = list.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, list.size()));
+            String inSql = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            String sqlQuery = String.format("/* user.%s */ select %s from USERS where %s in (%s)", statement, column, column, inSql);
+            existing.addAll(jdbcTemplate.queryForList(sqlQuery, type, chunk.toArray()));
+        }
+        return existing;
+    }
+
+    private void setInsertValues(PreparedStatement ps, User user) throws SQLException {
+        ps.setString(1, user.getEmail());
+        ps.setString(2, user.getLogin());
+        ps.setString(3, user.getName());
+        ps.setString(4, user.getBirthday().format(formatter));
+    }
+
     private User mapRowToUser(ResultSet resultSet, int rowNum) throws SQLException {
         return User.builder()
                 .id(resultSet.getInt("id"))
@@ -0,0 +1,501 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.HourlyLikes;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind mode for likes: likes and unlikes are buffered in memory, coalesced per (film, user)
+ * and written to the database in one transaction per flush. Flush happens every
+ * {@code flush-interval-ms} (the durability window), as soon as {@code batch-size} likes are pending
+ * and on shutdown. Pending and in-flight likes together never exceed {@code capacity}: the caller that fills the
+ * buffer flushes it itself, and while the database keeps failing callers are rejected instead of buffering more.
+ * A batch that fails is written again row by row, rows the database rejects are dropped and logged, the others
+ * are kept for the next flush. Popular films are read without flushing, the buffered likes are merged into the
+ * counters of the database.
+ */
+@Slf4j
+@Repository
+@Primary
+@Qualifier("FilmDaoImpl")
+@ConditionalOnProperty(value = "filmorate.likes.write-behind.enabled", havingValue = "true")
+public class WriteBehindFilmDao implements FilmDao {
+    private final FilmDaoImpl filmDao;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final long flushIntervalMs;
+
+    private final int batchSize;
+
+    private final int capacity;
+
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // one slot per entry of pending and flushing
+    private final Semaphore slots;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // callers do not flush a full buffer again before this time, the last flush failed
+    private volatile long retryAt;
+
+    // odd while a flush writes the database, changed under the flush lock only
+    private volatile long flushGeneration;
+
+    private volatile ConcurrentMap<Like, PendingLike> pending = new ConcurrentHashMap<>();
+
+    private volatile ConcurrentMap<Like, PendingLike> flushing = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public WriteBehindFilmDao(FilmDaoImpl filmDao,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${filmorate.likes.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+                              @Value("${filmorate.likes.write-behind.batch-size:1000}") int batchSize,
+                              @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity) {
+        this.filmDao = filmDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // a caller that flushes a full buffer is inside its own request transaction, which may still roll back
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.flushIntervalMs = flushIntervalMs;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "likes-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("likes write-behind is enabled: flush every {} ms or {} likes, capacity {}", flushIntervalMs, batchSize, capacity);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        flush();
+    }
+
+    @Override
+    public Optional<Film> addLike(int filmId, int userId) {
+        Optional<Film> film = get(filmId);
+        film.ifPresent(f -> {
+            saveLike(filmId, userId);
+            f.getLikedUsers().add(userId);
+        });
+        return film;
+    }
+
+    @Override
+    public Optional<Film> deleteLike(int filmId, int userId) {
+        Optional<Film> film = get(filmId);
+        film.ifPresent(f -> {
+            removeLike(filmId, userId);
+            f.getLikedUsers().remove(userId);
+        });
+        return film;
+    }
+
+    @Override
+    public boolean saveLike(int filmId, int userId) {
+        return setLike(new Like(filmId, userId), true) != null;
+    }
+
+    @Override
+    public Optional<LocalDateTime> removeLike(int filmId, int userId) {
+        return Optional.ofNullable(setLike(new Like(filmId, userId), false));
+    }
+
+    @Override
+    public List<Boolean> saveLikes(List<Like> likes) {
+        return likes.stream()
+                .map(like -> setLike(like, true) != null)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Boolean> removeLikes(List<Like> likes) {
+        return likes.stream()
+                .map(like -> setLike(like, false) != null)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean hasLike(int filmId, int userId) {
+        Like like = new Like(filmId, userId);
+        swapLock.readLock().lock();
+        try {
+            PendingLike pendingLike = pending.get(like);
+            return pendingLike != null ? pendingLike.isLiked() : isPersisted(like);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, Integer> getLikesCount() {
+        flushLock.lock();
+        try {
+            flush();
+            return filmDao.getLikesCount();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count) {
+        return getPopularFilms(count, null, null);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        while (true) {
+            long generation = flushGeneration;
+            if (generation % 2 == 0) {
+                List<Film> films = getPopularFilms(count, genreId, year, getPendingDeltas());
+                // no flush wrote the database meanwhile, so the deltas are relative to the counters that were read
+                if (flushGeneration == generation) {
+                    return films;
+                }
+            }
+            // waits for the flush instead of guessing which of its likes are committed
+            flushLock.lock();
+            flushLock.unlock();
+        }
+    }
+
+    private List<Film> getPopularFilms(int count, Integer genreId, Integer year, Map<Integer, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return filmDao.getPopularFilms(count, genreId, year);
+        }
+        // a film below the top can only pass a film of the top that loses likes
+        int losing = (int) deltas.values().stream().filter(delta -> delta < 0).count();
+        Map<Integer, Film> candidates = new HashMap<>();
+        filmDao.getPopularFilms(count + losing, genreId, year).forEach(film -> candidates.put(film.getId(), film));
+        List<Integer> gaining = deltas.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0 && !candidates.containsKey(entry.getKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        filmDao.getByIds(gaining).stream()
+                .filter(film -> year == null || film.getReleaseDate().getYear() == year)
+                .filter(film -> genreId == null || film.getGenres().stream().anyMatch(genre -> genre.getId() == genreId))
+                .forEach(film -> candidates.put(film.getId(), film));
+        Map<Integer, Integer> likes = filmDao.getLikesCount(candidates.keySet());
+        deltas.forEach((filmId, delta) -> likes.computeIfPresent(filmId, (id, persisted) -> persisted + delta));
+        return candidates.values().stream()
+                .sorted(Comparator.comparing((Film film) -> likes.getOrDefault(film.getId(), 0)).reversed()
+                        .thenComparingInt(Film::getId))
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    // likes gained or lost per film by the buffered likes, relative to the database while no flush is running
+    private Map<Integer, Integer> getPendingDeltas() {
+        Map<Integer, Integer> deltas = new HashMap<>();
+        swapLock.readLock().lock();
+        try {
+            pending.forEach((like, pendingLike) -> deltas.merge(like.getFilmId(), pendingLike.isLiked() ? 1 : -1, Integer::sum));
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        return deltas;
+    }
+
+    @Override
+    public void streamLikes(Consumer<Like> consumer) {
+        flushLock.lock();
+        try {
+            flush();
+            filmDao.streamLikes(consumer);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public List<HourlyLikes> getHourlyLikesSince(LocalDateTime since) {
+        flush();
+        return filmDao.getHourlyLikesSince(since);
+    }
+
+    @Override
+    public void rebuildLikesCount() {
+        flush();
+        filmDao.rebuildLikesCount();
+    }
+
+    @Override
+    public List<Film> getAll() {
+        return filmDao.getAll();
+    }
+
+    @Override
+    public List<Film> getPage(int afterId, int limit) {
+        return filmDao.getPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        filmDao.streamAll(consumer);
+    }
+
+    @Override
+    public Film add(Film film) {
+        return filmDao.add(film);
+    }
+
+    @Override
+    public List<Film> addAll(List<Film> films) {
+        return filmDao.addAll(films);
+    }
+
+    @Override
+    public Optional<Film> update(Film film) {
+        return filmDao.update(film);
+    }
+
+    @Override
+    public Optional<Film> get(int filmId) {
+        return filmDao.get(filmId);
+    }
+
+    @Override
+    public List<Film> getByIds(Collection<Integer> filmIds) {
+        return filmDao.getByIds(filmIds);
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> filmIds) {
+        return filmDao.getExistingIds(filmIds);
+    }
+
+    public int getPendingCount() {
+        return pending.size() + flushing.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            swapLock.writeLock().lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                flushing = pending;
+                pending = new ConcurrentHashMap<>();
+                flushGeneration++;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            writeFlushing();
+        } finally {
+            flushRequested.set(false);
+            flushLock.unlock();
+        }
+    }
+
+    private void writeFlushing() {
+        Map<Like, PendingLike> kept;
+        try {
+            write(flushing);
+            log.debug("flushed {} likes", flushing.size());
+            kept = Map.of();
+        } catch (RuntimeException e) {
+            log.warn("failed to flush {} likes in one transaction, writing them one by one", flushing.size(), e);
+            kept = writeOneByOne();
+        }
+        swapLock.writeLock().lock();
+        try {
+            int freed = flushing.size() - kept.size();
+            for (Map.Entry<Like, PendingLike> entry : kept.entrySet()) {
+                PendingLike failed = entry.getValue();
+                PendingLike newer = pending.get(entry.getKey());
+                if (newer == null) {
+                    pending.put(entry.getKey(), failed);
+                } else if (newer.isLiked() == failed.isPersisted()) {
+                    pending.remove(entry.getKey());
+                    freed += 2;
+                } else {
+                    pending.put(entry.getKey(), new PendingLike(failed.isPersisted(), newer.isLiked(), newer.getLikedAt()));
+                    freed++;
+                }
+            }
+            flushing = new ConcurrentHashMap<>();
+            flushGeneration++;
+            slots.release(freed);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    private Map<Like, PendingLike> writeOneByOne() {
+        Map<Like, PendingLike> kept = new HashMap<>();
+        for (Map.Entry<Like, PendingLike> entry : flushing.entrySet()) {
+            if (!kept.isEmpty()) {
+                // the database is failing, the rest waits for the next flush
+                kept.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            try {
+                write(Map.of(entry.getKey(), entry.getValue()));
+            } catch (DataIntegrityViolationException e) {
+                droppedCount.incrementAndGet();
+                log.error("dropped {} of film {} by user {} that the database rejects: {}",
+                        entry.getValue().isLiked() ? "like" : "unlike", entry.getKey().getFilmId(),
+                        entry.getKey().getUserId(), e.getMostSpecificCause().getMessage());
+            } catch (RuntimeException e) {
+                kept.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!kept.isEmpty()) {
+            retryAt = System.currentTimeMillis() + flushIntervalMs;
+            log.error("failed to flush {} likes, they are kept for the next flush", kept.size());
+        }
+        return kept;
+    }
+
+    private void write(Map<Like, PendingLike> batch) {
+        List<Like> likes = new ArrayList<>();
+        List<Like> unlikes = new ArrayList<>();
+        batch.forEach((like, pendingLike) -> (pendingLike.isLiked() ? likes : unlikes).add(like));
+        transactionTemplate.executeWithoutResult(status -> {
+            filmDao.saveLikes(likes);
+            filmDao.removeLikes(unlikes);
+        });
+    }
+
+    /**
+     * Returns when the changed like was made, the current time for a new like, null when nothing changed.
+     */
+    private LocalDateTime setLike(Like like, boolean liked) {
+        acquireSlot();
+        LocalDateTime changed;
+        // the slot of this call is returned unless the like takes a new entry
+        int[] freed = {1};
+        swapLock.readLock().lock();
+        try {
+            PendingLike current = pending.get(like);
+            boolean persisted = current != null ? current.isPersisted() : isPersisted(like);
+            // the foreign keys are only checked on flush, so a like must not be buffered for a missing film or user
+            if (liked && !persisted && current == null && !filmDao.likeTargetsExist(like.getFilmId(), like.getUserId())) {
+                throw new DataIntegrityViolationException("film " + like.getFilmId() + " or user " + like.getUserId() + " does not exist");
+            }
+            LocalDateTime persistedAt = !liked && persisted && current == null ? getPersistedLikedAt(like) : null;
+            LocalDateTime[] result = new LocalDateTime[1];
+            pending.compute(like, (key, pendingLike) -> {
+                boolean base = pendingLike != null ? pendingLike.isPersisted() : persisted;
+                boolean previous = pendingLike != null ? pendingLike.isLiked() : base;
+                if (previous != liked) {
+                    if (liked) {
+                        result[0] = LocalDateTime.now();
+                    } else if (pendingLike != null) {
+                        result[0] = pendingLike.getLikedAt();
+                    } else {
+                        result[0] = persistedAt != null ? persistedAt : LocalDateTime.now();
+                    }
+                }
+                PendingLike next = liked == base ? null : new PendingLike(base, liked, liked ? result[0] : null);
+                if (pendingLike == null) {
+                    freed[0] = next == null ? 1 : 0;
+                } else {
+                    freed[0] = next == null ? 2 : 1;
+                }
+                return next;
+            });
+            changed = result[0];
+        } finally {
+            swapLock.readLock().unlock();
+            slots.release(freed[0]);
+        }
+        if (slots.availablePermits() == 0) {
+            flushWhenFull();
+        } else if (pending.size() >= batchSize && scheduler != null && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+        return changed;
+    }
+
+    private void acquireSlot() {
+        while (!slots.tryAcquire()) {
+            if (System.currentTimeMillis() < retryAt) {
+                throw new DataAccessResourceFailureException("likes are not written to the database, "
+                        + capacity + " of them are waiting");
+            }
+            flush();
+        }
+    }
+
+    private void flushWhenFull() {
+        if (System.currentTimeMillis() >= retryAt) {
+            flush();
+        }
+    }
+
+    // called under the read lock, so neither the in-flight batch nor the persisted state of other likes can change
+    private boolean isPersisted(Like like) {
+        PendingLike inFlight = flushing.get(like);
+        return inFlight != null ? inFlight.isLiked() : filmDao.hasLike(like.getFilmId(), like.getUserId());
+    }
+
+    // called under the read lock like isPersisted, a like still in flight was buffered with its time
+    private LocalDateTime getPersistedLikedAt(Like like) {
+        PendingLike inFlight = flushing.get(like);
+        if (inFlight != null) {
+            return inFlight.getLikedAt();
+        }
+        return filmDao.getLikedAt(like.getFilmId(), like.getUserId()).orElse(null);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PendingLike {
+        private final boolean persisted;
+        private final boolean liked;
+        // when a buffered like was made, null for an unlike
+        private final LocalDateTime likedAt;
+    }
+}
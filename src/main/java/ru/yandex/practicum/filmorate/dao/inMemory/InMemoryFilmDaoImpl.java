@@ -1,20 +1,49 @@
 package ru.yandex.practicum.filmorate.dao.inMemory;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
+import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.HourlyLikes;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Rating;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * Films kept in memory. Created with a {@link Journal} it is durable: every mutation is logged under the lock before
+ * it is applied and synced after the lock is released, so concurrent writers share fsyncs, and the state is recovered
+ * from the journal on creation. Once the journal failed it rejects every record, so no mutation is applied anymore.
+ */
 @Component
 @Qualifier("InMemoryFilmDaoImpl")
 public class InMemoryFilmDaoImpl implements FilmDao {
-    private final Map<Integer, Film> films = new HashMap<>();
+    private static final byte PUT = 1;
+
+    private static final byte LIKE = 2;
+
+    private static final byte UNLIKE = 3;
+
+    private final Map<Integer, Film> films = new ConcurrentHashMap<>();
     private final AtomicInteger uniqueId = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Journal journal;
+    private final UserDao userDao;
+    // like times are not journaled, likes recovered on creation predate the trending index and have none
+    private final Map<Like, LocalDateTime> likedAt = new ConcurrentHashMap<>();
 
     private final Map<Integer, Rating> ratings = Map.ofEntries(
             new AbstractMap.SimpleEntry<>(1, new Rating(1, "G")),
@@ -24,11 +53,81 @@ public class InMemoryFilmDaoImpl implements FilmDao {
             new AbstractMap.SimpleEntry<>(5, new Rating(5, "NC-17"))
     );
 
+    @Autowired
+    public InMemoryFilmDaoImpl(@Qualifier("InMemoryUserDaoImpl") UserDao userDao) {
+        this.userDao = userDao;
+        journal = null;
+    }
+
+    public InMemoryFilmDaoImpl(Journal journal, UserDao userDao) {
+        this.journal = journal;
+        this.userDao = userDao;
+        try {
+            journal.loadSnapshot(this::loadChunk);
+            journal.replay(this::apply);
+            journal.start(this::snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all films to the journal, the log records it covers are deleted.
+     */
+    public void snapshot() {
+        long lsn;
+        List<Film> copy;
+        lock.lock();
+        try {
+            lsn = journal.checkpoint();
+            copy = films.values()
+                    .stream()
+                    .map(film -> film.toBuilder().likedUsers(new HashSet<>(film.getLikedUsers())).build())
+                    .collect(Collectors.toList());
+        } finally {
+            lock.unlock();
+        }
+        try {
+            journal.writeSnapshot(lsn, copy, chunk -> Records.encode(out -> {
+                out.writeInt(chunk.size());
+                for (Film film : chunk) {
+                    Records.writeFilm(out, film);
+                }
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public List<Film> getAll() {
         return new ArrayList<>(films.values());
     }
 
+    @Override
+    public List<Film> getPage(int afterId, int limit) {
+        return films.values()
+                .stream()
+                .filter(film -> film.getId() > afterId)
+                .sorted(Comparator.comparing(Film::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        films.values()
+                .stream()
+                .sorted(Comparator.comparing(Film::getId))
+                .forEach(consumer);
+    }
+
+    @Override
+    public void streamLikes(Consumer<Like> consumer) {
+        films.values().forEach(film -> film.getLikedUsers()
+                .forEach(userId -> consumer.accept(new Like(film.getId(), userId))));
+    }
+
     @Override
     public Optional<Film> get(int filmId) {
         return Optional.ofNullable(films.get(filmId));
@@ -36,35 +135,71 @@ public class InMemoryFilmDaoImpl implements FilmDao {
 
     @Override
     public Film add(Film film) {
-        film.setId(uniqueId.incrementAndGet());
-        films.put(film.getId(), film);
-        return film;
+        return addAll(List.of(film)).get(0);
+    }
+
+    @Override
+    public List<Film> addAll(List<Film> films) {
+        long lsn = 0;
+        lock.lock();
+        try {
+            for (Film film : films) {
+                film.setId(uniqueId.incrementAndGet());
+                lsn = log(() -> put(film));
+                this.films.put(film.getId(), film);
+            }
+        } finally {
+            lock.unlock();
+        }
+        sync(lsn);
+        return films;
     }
 
     @Override
     public Optional<Film> update(Film film) {
-        Optional<Film> currentFilm = get(film.getId());
-        if (currentFilm.isPresent()) {
-            films.put(film.getId(), film);
-            return Optional.of(film);
+        Film updated;
+        long lsn;
+        lock.lock();
+        try {
+            Film current = films.get(film.getId());
+            if (current == null) {
+                return Optional.empty();
+            }
+            // likes are not part of the request body, the stored ones are kept
+            updated = film.toBuilder().likedUsers(new HashSet<>(current.getLikedUsers())).build();
+            lsn = log(() -> put(updated));
+            films.put(updated.getId(), updated);
+        } finally {
+            lock.unlock();
         }
-        return currentFilm;
+        sync(lsn);
+        return Optional.of(updated);
     }
 
     @Override
     public Optional<Film> addLike(int filmId, int userId) {
         Optional<Film> film = get(filmId);
-        film.ifPresent(f -> f.getLikedUsers().add(userId));
+        film.ifPresent(f -> saveLike(filmId, userId));
         return film;
     }
 
     @Override
     public Optional<Film> deleteLike(int filmId, int userId) {
         Optional<Film> film = get(filmId);
-        film.ifPresent(f -> f.getLikedUsers().remove(userId));
+        film.ifPresent(f -> removeLike(filmId, userId));
         return film;
     }
 
+    @Override
+    public boolean saveLike(int filmId, int userId) {
+        return changeLikes(List.of(new Like(filmId, userId)), LIKE).get(0) != null;
+    }
+
+    @Override
+    public Optional<LocalDateTime> removeLike(int filmId, int userId) {
+        return Optional.ofNullable(changeLikes(List.of(new Like(filmId, userId)), UNLIKE).get(0));
+    }
+
     @Override
     public List<Film> getPopularFilms(int count) {
         return films.values()
@@ -74,6 +209,65 @@ public class InMemoryFilmDaoImpl implements FilmDao {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        return films.values()
+                .stream()
+                .filter(f -> genreId == null || f.getGenres().stream().anyMatch(g -> g.getId() == genreId))
+                .filter(f -> year == null || f.getReleaseDate().getYear() == year)
+                .sorted(Comparator.comparing(Film::getLikes).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Boolean> saveLikes(List<Like> likes) {
+        return changed(changeLikes(likes, LIKE));
+    }
+
+    @Override
+    public List<Boolean> removeLikes(List<Like> likes) {
+        return changed(changeLikes(likes, UNLIKE));
+    }
+
+    @Override
+    public boolean hasLike(int filmId, int userId) {
+        return get(filmId)
+                .map(f -> f.getLikedUsers().contains(userId))
+                .orElse(false);
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> filmIds) {
+        return filmIds.stream()
+                .filter(films::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<Film> getByIds(Collection<Integer> filmIds) {
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<Integer, Integer> getLikesCount() {
+        return films.values()
+                .stream()
+                .collect(Collectors.toMap(Film::getId, Film::getLikes));
+    }
+
+    @Override
+    public List<HourlyLikes> getHourlyLikesSince(LocalDateTime since) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void rebuildLikesCount() {
+    }
+
     public Optional<Rating> getRating(int ratingId) {
         return Optional.ofNullable(ratings.get(ratingId));
     }
@@ -81,4 +275,100 @@ public class InMemoryFilmDaoImpl implements FilmDao {
     public List<Rating> getAllRatings() {
         return new ArrayList<>(ratings.values());
     }
+
+    private static List<Boolean> changed(List<LocalDateTime> likedAt) {
+        return likedAt.stream()
+                .map(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns when each changed like was made, null for the likes that did not change.
+     */
+    private List<LocalDateTime> changeLikes(List<Like> likes, byte operation) {
+        List<LocalDateTime> changed = new ArrayList<>(likes.size());
+        long lsn = 0;
+        lock.lock();
+        try {
+            for (Like like : likes) {
+                Film film = films.get(like.getFilmId());
+                if (operation == LIKE && (film == null || userDao.get(like.getUserId()).isEmpty())) {
+                    throw new DataIntegrityViolationException("film " + like.getFilmId() + " or user "
+                            + like.getUserId() + " does not exist");
+                }
+                boolean result = film != null
+                        && film.getLikedUsers().contains(like.getUserId()) == (operation == UNLIKE);
+                if (result) {
+                    lsn = log(() -> Records.encode(out -> {
+                        out.writeByte(operation);
+                        out.writeInt(like.getFilmId());
+                        out.writeInt(like.getUserId());
+                    }));
+                    if (operation == LIKE) {
+                        film.getLikedUsers().add(like.getUserId());
+                        LocalDateTime now = LocalDateTime.now();
+                        likedAt.put(like, now);
+                        changed.add(now);
+                    } else {
+                        film.getLikedUsers().remove(like.getUserId());
+                        changed.add(Objects.requireNonNullElse(likedAt.remove(like), LocalDateTime.MIN));
+                    }
+                } else {
+                    changed.add(null);
+                }
+            }
+        } finally {
+            lock.unlock();
+            // likes applied before a failure are synced as well
+            sync(lsn);
+        }
+        return changed;
+    }
+
+    private static byte[] put(Film film) {
+        return Records.encode(out -> {
+            out.writeByte(PUT);
+            Records.writeFilm(out, film);
+        });
+    }
+
+    private long log(Supplier<byte[]> record) {
+        return journal == null ? 0 : journal.write(record.get());
+    }
+
+    private void sync(long lsn) {
+        if (lsn > 0) {
+            journal.sync(lsn);
+        }
+    }
+
+    private void loadChunk(ByteBuffer chunk) {
+        for (int i = chunk.getInt(); i > 0; i--) {
+            putRecovered(Records.readFilm(chunk));
+        }
+    }
+
+    private void apply(ByteBuffer record) {
+        byte operation = record.get();
+        if (operation == PUT) {
+            putRecovered(Records.readFilm(record));
+            return;
+        }
+        int filmId = record.getInt();
+        int userId = record.getInt();
+        Film film = films.get(filmId);
+        if (film == null || operation != LIKE && operation != UNLIKE) {
+            throw new IllegalStateException("record " + operation + " for film " + filmId + " can not be applied");
+        }
+        if (operation == LIKE) {
+            film.getLikedUsers().add(userId);
+        } else {
+            film.getLikedUsers().remove(userId);
+        }
+    }
+
+    private void putRecovered(Film film) {
+        films.put(film.getId(), film);
+        uniqueId.accumulateAndGet(film.getId(), Math::max);
+    }
 }
@@ -8,6 +8,7 @@ import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.AbstractMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -37,7 +38,15 @@ public class InMemoryGenreDaoImpl implements GenreDao {
         return film;
     }
 
+    @Override
+    public void addFilmGenres(List<Film> films) {
+    }
+
     @Override
     public void deleteFilmGenre(Film film) {
     }
+
+    @Override
+    public void refresh() {
+    }
 }
@@ -3,74 +3,186 @@ package ru.yandex.practicum.filmorate.dao.inMemory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * Users and friendships kept in memory, durable when created with a {@link Journal} like {@link InMemoryFilmDaoImpl}.
+ */
 @Component
 @Qualifier("InMemoryUserDaoImpl")
 public class InMemoryUserDaoImpl implements UserDao {
-    private final Map<Integer, User> users = new HashMap<>();
+    private static final byte PUT = 1;
+
+    private static final byte FRIEND_ADD = 2;
+
+    private static final byte FRIEND_REMOVE = 3;
+
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
     private final AtomicInteger uniqueId = new AtomicInteger();
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Journal journal;
+
+    public InMemoryUserDaoImpl() {
+        journal = null;
+    }
+
+    public InMemoryUserDaoImpl(Journal journal) {
+        this.journal = journal;
+        FriendGraph.Edges edges = new FriendGraph.Edges();
+        try {
+            journal.loadSnapshot(chunk -> loadChunk(chunk, edges));
+            friendGraph.rebuild(edges);
+            journal.replay(this::apply);
+            journal.start(this::snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all users with their friends to the journal, the log records it covers are deleted.
+     */
+    public void snapshot() {
+        long lsn;
+        List<Map.Entry<User, int[]>> copy;
+        lock.lock();
+        try {
+            lsn = journal.checkpoint();
+            copy = users.values()
+                    .stream()
+                    .map(user -> new AbstractMap.SimpleEntry<>(user, friendGraph.getFriends(user.getId())))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.unlock();
+        }
+        try {
+            journal.writeSnapshot(lsn, copy, chunk -> Records.encode(out -> {
+                out.writeInt(chunk.size());
+                for (Map.Entry<User, int[]> entry : chunk) {
+                    Records.writeUser(out, entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (int friendId : entry.getValue()) {
+                        out.writeInt(friendId);
+                    }
+                }
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
     @Override
     public List<User> getAll() {
         return new ArrayList<>(users.values());
     }
 
+    @Override
+    public List<User> getPage(int afterId, int limit) {
+        return users.values()
+                .stream()
+                .filter(user -> user.getId() > afterId)
+                .sorted(Comparator.comparing(User::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Optional<User> get(int userId) {
         return Optional.ofNullable(users.get(userId));
     }
 
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> userIds) {
+        return userIds.stream()
+                .filter(users::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Set<String> getExistingLogins(Collection<String> logins) {
+        return users.values().stream()
+                .map(User::getLogin)
+                .filter(logins::contains)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Set<String> getExistingEmails(Collection<String> emails) {
+        return users.values().stream()
+                .map(User::getEmail)
+                .filter(emails::contains)
+                .collect(Collectors.toSet());
+    }
+
     @Override
     public User add(User user) {
-        user.setId(uniqueId.incrementAndGet());
-        users.put(user.getId(), user);
-        return user;
+        return addAll(List.of(user)).get(0);
+    }
+
+    @Override
+    public List<User> addAll(List<User> users) {
+        long lsn = 0;
+        lock.lock();
+        try {
+            for (User user : users) {
+                user.setId(uniqueId.incrementAndGet());
+                lsn = log(() -> put(user));
+                this.users.put(user.getId(), user);
+            }
+        } finally {
+            lock.unlock();
+        }
+        sync(lsn);
+        return users;
     }
 
     @Override
     public Optional<User> update(User user) {
-        Optional<User> currentUser = get(user.getId());
-        if (currentUser.isPresent()) {
+        long lsn;
+        lock.lock();
+        try {
+            if (!users.containsKey(user.getId())) {
+                return Optional.empty();
+            }
+            lsn = log(() -> put(user));
             users.put(user.getId(), user);
-            return Optional.of(user);
+        } finally {
+            lock.unlock();
         }
-        return currentUser;
+        sync(lsn);
+        return Optional.of(user);
     }
 
     @Override
-    public Optional<User> addFriend(int userId, int friendId) {
-        Optional<User> currentUser = get(userId);
-        Optional<User> friend = get(friendId);
-        if (currentUser.isPresent() && friend.isPresent()) {
-            currentUser.get().getFriends().add(friendId);
-            friend.get().getFriends().add(userId);
-            return currentUser;
+    public Optional<Boolean> addFriend(int userId, int friendId) {
+        if (users.containsKey(userId) && users.containsKey(friendId)) {
+            return Optional.of(changeFriends(userId, friendId, FRIEND_ADD));
         }
         return Optional.empty();
     }
 
     @Override
-    public void deleteFriend(int userId, int friendId) {
-        Optional<User> currentUser = get(userId);
-        Optional<User> friend = get(friendId);
-        if (currentUser.isPresent() && friend.isPresent()) {
-            currentUser.get().getFriends().remove(friendId);
-            friend.get().getFriends().remove(userId);
-        }
+    public boolean deleteFriend(int userId, int friendId) {
+        return users.containsKey(userId) && users.containsKey(friendId)
+                && changeFriends(userId, friendId, FRIEND_REMOVE);
     }
 
     @Override
     public Optional<List<User>> getFriends(int userId) {
         Optional<User> currentUser = get(userId);
-        return currentUser.map(user -> user.getFriends()
-                .stream()
-                .map(users::get)
-                .collect(Collectors.toList()));
+        return currentUser.map(user -> getUsers(friendGraph.getFriends(userId)));
     }
 
     @Override
@@ -78,13 +190,103 @@ public class InMemoryUserDaoImpl implements UserDao {
         Optional<User> currentUser = get(userId);
         Optional<User> friend = get(otherId);
         if (currentUser.isPresent() && friend.isPresent()) {
-            return currentUser.map(user -> user.getFriends()
-                    .stream()
-                    .filter(friend.get().getFriends()::contains)
-                    .map(users::get)
-                    .collect(Collectors.toList()));
+            return Optional.of(getUsers(friendGraph.getCommonFriends(userId, otherId)));
         } else {
             return Optional.empty();
         }
     }
+
+    @Override
+    public Optional<List<User>> getFriendSuggestions(int userId, int limit) {
+        return get(userId).map(user -> getUsers(friendGraph.getSuggestions(userId, limit, FriendGraph.MAX_FAN_OUT)));
+    }
+
+    private List<User> getUsers(int[] userIds) {
+        return Arrays.stream(userIds)
+                .mapToObj(users::get)
+                .collect(Collectors.toList());
+    }
+
+    private boolean changeFriends(int userId, int friendId, byte operation) {
+        boolean changed;
+        long lsn = 0;
+        lock.lock();
+        try {
+            // friendships are mutual, an add completes a half of one and a remove deletes any half
+            boolean linked = friendGraph.contains(userId, friendId) && friendGraph.contains(friendId, userId);
+            boolean unlinked = !friendGraph.contains(userId, friendId) && !friendGraph.contains(friendId, userId);
+            changed = operation == FRIEND_ADD ? !linked : !unlinked;
+            if (changed) {
+                lsn = log(() -> Records.encode(out -> {
+                    out.writeByte(operation);
+                    out.writeInt(userId);
+                    out.writeInt(friendId);
+                }));
+                applyFriends(userId, friendId, operation);
+            }
+        } finally {
+            lock.unlock();
+        }
+        sync(lsn);
+        return changed;
+    }
+
+    private void applyFriends(int userId, int friendId, byte operation) {
+        if (operation == FRIEND_ADD) {
+            friendGraph.add(userId, friendId);
+            friendGraph.add(friendId, userId);
+        } else {
+            friendGraph.remove(userId, friendId);
+            friendGraph.remove(friendId, userId);
+        }
+    }
+
+    private static byte[] put(User user) {
+        return Records.encode(out -> {
+            out.writeByte(PUT);
+            Records.writeUser(out, user);
+        });
+    }
+
+    private long log(Supplier<byte[]> record) {
+        return journal == null ? 0 : journal.write(record.get());
+    }
+
+    private void sync(long lsn) {
+        if (lsn > 0) {
+            journal.sync(lsn);
+        }
+    }
+
+    private void loadChunk(ByteBuffer chunk, FriendGraph.Edges edges) {
+        FriendGraph.Edges loaded = new FriendGraph.Edges();
+        for (int i = chunk.getInt(); i > 0; i--) {
+            User user = Records.readUser(chunk);
+            users.put(user.getId(), user);
+            uniqueId.accumulateAndGet(user.getId(), Math::max);
+            for (int j = chunk.getInt(); j > 0; j--) {
+                loaded.add(user.getId(), chunk.getInt());
+            }
+        }
+        // chunks are loaded in parallel, the lock is not used by anything else until the journal is replayed
+        lock.lock();
+        try {
+            edges.addAll(loaded);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(ByteBuffer record) {
+        byte operation = record.get();
+        if (operation == PUT) {
+            User user = Records.readUser(record);
+            users.put(user.getId(), user);
+            uniqueId.accumulateAndGet(user.getId(), Math::max);
+        } else if (operation == FRIEND_ADD || operation == FRIEND_REMOVE) {
+            applyFriends(record.getInt(), record.getInt(), operation);
+        } else {
+            throw new IllegalStateException("unknown user record " + operation);
+        }
+    }
 }
@@ -0,0 +1,475 @@
+package ru.yandex.practicum.filmorate.dao.inMemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durability for an in-memory DAO: a write-ahead log of mutations plus periodic snapshots of the whole state.
+ * A log frame is {@code length | crc32c | lsn | record}. Records are written as they come and made durable by
+ * {@link #sync}: the first caller forces the file and every record written before the force is done with it, so
+ * concurrent writers share one fsync. A snapshot is a list of checksummed chunks that are encoded and decoded in
+ * parallel; once it is written the log files it covers are deleted.
+ * <p>
+ * Recovery is {@link #loadSnapshot}, {@link #replay} and then {@link #start}: the last snapshot is loaded, records
+ * after it are replayed and a torn frame at the end of the log, left by a crash in the middle of a write, is cut off.
+ */
+@Slf4j
+public class Journal implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x464d534e;
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int SNAPSHOT_HEADER_SIZE = Integer.BYTES * 3 + Long.BYTES;
+
+    private static final int FRAME_HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+
+    private static final int CHUNK_SIZE = 10_000;
+
+    private static final String LOG_PREFIX = "wal-";
+
+    private static final String LOG_SUFFIX = ".log";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    private final long snapshotEvery;
+
+    private final int parallelism;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+
+    private FileChannel lockChannel;
+
+    private FileLock fileLock;
+
+    // guarded by writeLock
+    private FileChannel segment;
+
+    private long lastLsn;
+
+    private volatile long syncedLsn;
+
+    private volatile long snapshotLsn;
+
+    private volatile IOException failure;
+
+    private Runnable snapshotter;
+
+    private ExecutorService snapshotExecutor;
+
+    public Journal(Path directory, long snapshotEvery, int parallelism) {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Passes the chunks of the last snapshot to the loader from several threads at once.
+     */
+    public void loadSnapshot(Consumer<ByteBuffer> loader) throws IOException {
+        Files.createDirectories(directory);
+        lockDirectory();
+        for (Path tmp : list(TMP_SUFFIX)) {
+            log.warn("unfinished snapshot {} is removed", tmp);
+            Files.delete(tmp);
+        }
+        List<Path> snapshots = list(SNAPSHOT_SUFFIX);
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        Path snapshot = snapshots.get(snapshots.size() - 1);
+        long lsn;
+        List<ByteBuffer> chunks = new ArrayList<>();
+        List<Integer> checksums = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new IllegalStateException("snapshot " + snapshot + " has unknown format");
+            }
+            lsn = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                checksums.add(buffer.getInt());
+                ByteBuffer chunk = buffer.slice();
+                chunk.limit(length);
+                chunks.add(chunk);
+                buffer.position(buffer.position() + length);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("snapshot " + snapshot + " is damaged", e);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, chunks.size()).parallel().forEach(i -> {
+                ByteBuffer chunk = chunks.get(i);
+                if (checksum(chunk.duplicate()) != checksums.get(i)) {
+                    throw new IllegalStateException("chunk " + i + " of snapshot " + snapshot + " is damaged");
+                }
+                loader.accept(chunk.duplicate());
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        snapshotLsn = lsn;
+        lastLsn = lsn;
+        log.info("snapshot {} is loaded with {} chunks", snapshot, chunks.size());
+    }
+
+    /**
+     * Passes the records written after the loaded snapshot to the consumer in order.
+     */
+    public void replay(Consumer<ByteBuffer> consumer) throws IOException {
+        List<Path> logs = list(LOG_SUFFIX);
+        long replayed = 0;
+        for (int i = 0; i < logs.size(); i++) {
+            Path file = logs.get(i);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (size == 0) {
+                    continue;
+                }
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                CRC32C crc = new CRC32C();
+                while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+                    int start = buffer.position();
+                    int length = buffer.getInt(start);
+                    if (length < 0 || length > buffer.remaining() - FRAME_HEADER_SIZE) {
+                        break;
+                    }
+                    ByteBuffer frame = buffer.duplicate();
+                    frame.limit(start + FRAME_HEADER_SIZE + length).position(start + Integer.BYTES * 2);
+                    crc.reset();
+                    crc.update(frame);
+                    if ((int) crc.getValue() != buffer.getInt(start + Integer.BYTES)) {
+                        break;
+                    }
+                    long lsn = buffer.getLong(start + Integer.BYTES * 2);
+                    if (lsn > lastLsn + 1) {
+                        throw new IllegalStateException("records from " + (lastLsn + 1) + " to " + (lsn - 1)
+                                + " are missing in " + directory);
+                    }
+                    if (lsn > lastLsn) {
+                        frame.position(start + FRAME_HEADER_SIZE);
+                        consumer.accept(frame.slice());
+                        lastLsn = lsn;
+                        replayed++;
+                    }
+                    buffer.position(start + FRAME_HEADER_SIZE + length);
+                }
+                if (buffer.position() < size) {
+                    if (i < logs.size() - 1) {
+                        throw new IllegalStateException("log " + file + " is damaged at " + buffer.position());
+                    }
+                    log.warn("torn end of log {} is cut from {} to {} bytes", file, size, buffer.position());
+                    channel.truncate(buffer.position());
+                }
+            }
+        }
+        syncedLsn = lastLsn;
+        log.info("{} records are replayed from {}", replayed, directory);
+    }
+
+    /**
+     * Opens a new log file for writes, {@code snapshotter} is run in the background every {@code snapshotEvery}
+     * records.
+     */
+    public void start(Runnable snapshotter) throws IOException {
+        this.snapshotter = snapshotter;
+        segment = openLog(lastLsn + 1);
+        snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "journal-snapshot-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Appends the record to the log and returns its lsn, the record is durable after {@link #sync}.
+     */
+    public long write(byte[] record) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + record.length);
+        writeLock.lock();
+        try {
+            checkFailure();
+            long lsn = lastLsn + 1;
+            frame.putInt(record.length).putInt(0).putLong(lsn).put(record);
+            CRC32C crc = new CRC32C();
+            crc.update(frame.array(), Integer.BYTES * 2, frame.capacity() - Integer.BYTES * 2);
+            frame.putInt(Integer.BYTES, (int) crc.getValue());
+            frame.flip();
+            while (frame.hasRemaining()) {
+                segment.write(frame);
+            }
+            lastLsn = lsn;
+            if (lsn - snapshotLsn >= snapshotEvery && snapshotScheduled.compareAndSet(false, true)) {
+                snapshotExecutor.execute(this::runSnapshotter);
+            }
+            return lsn;
+        } catch (IOException e) {
+            // a partly written frame would hide the records after it, so nothing is written anymore
+            failure = e;
+            throw new DataAccessResourceFailureException("can not write to the log in " + directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record with the lsn is on disk.
+     */
+    public void sync(long lsn) {
+        if (syncedLsn >= lsn) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (syncedLsn >= lsn) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            writeLock.lock();
+            try {
+                checkFailure();
+                channel = segment;
+                target = lastLsn;
+            } finally {
+                writeLock.unlock();
+            }
+            channel.force(false);
+            syncedLsn = target;
+        } catch (IOException e) {
+            failure = e;
+            throw new DataAccessResourceFailureException("can not sync the log in " + directory, e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new log file and returns the lsn of the last record, a snapshot of the state taken before the next
+     * write covers exactly the records up to it.
+     */
+    public long checkpoint() {
+        syncLock.lock();
+        try {
+            writeLock.lock();
+            try {
+                checkFailure();
+                segment.force(false);
+                segment.close();
+                syncedLsn = lastLsn;
+                segment = openLog(lastLsn + 1);
+                return lastLsn;
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new DataAccessResourceFailureException("can not start a new log in " + directory, e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the snapshot of the state at the lsn returned by {@link #checkpoint}, encoding chunks of items in
+     * parallel, and deletes the log files and the snapshot it replaces.
+     */
+    public <T> void writeSnapshot(long lsn, List<T> items, Function<List<T>, byte[]> encoder) throws IOException {
+        snapshotLock.lock();
+        try {
+            if (lsn <= snapshotLsn) {
+                return;
+            }
+            List<byte[]> chunks;
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                chunks = pool.submit(() -> IntStream.range(0, (items.size() + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                        .parallel()
+                        .mapToObj(i -> encoder.apply(items.subList(i * CHUNK_SIZE,
+                                Math.min(items.size(), (i + 1) * CHUNK_SIZE))))
+                        .collect(Collectors.toList()))
+                        .join();
+            } finally {
+                pool.shutdown();
+            }
+
+            Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, lsn, SNAPSHOT_SUFFIX));
+            Path tmp = directory.resolve(snapshot.getFileName() + TMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(channel, ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE)
+                        .putInt(SNAPSHOT_MAGIC)
+                        .putInt(SNAPSHOT_VERSION)
+                        .putLong(lsn)
+                        .putInt(chunks.size())
+                        .flip());
+                for (byte[] chunk : chunks) {
+                    writeFully(channel, ByteBuffer.allocate(Integer.BYTES * 2)
+                            .putInt(chunk.length)
+                            .putInt(checksum(ByteBuffer.wrap(chunk)))
+                            .flip());
+                    writeFully(channel, ByteBuffer.wrap(chunk));
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+            snapshotLsn = lsn;
+
+            for (Path old : list(SNAPSHOT_SUFFIX)) {
+                if (startLsn(old, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < lsn) {
+                    Files.delete(old);
+                }
+            }
+            // a log file ends where the next one starts, the last one is being written
+            List<Path> logs = list(LOG_SUFFIX);
+            for (int i = 0; i < logs.size() - 1; i++) {
+                if (startLsn(logs.get(i + 1), LOG_PREFIX, LOG_SUFFIX) - 1 <= lsn) {
+                    Files.delete(logs.get(i));
+                }
+            }
+            log.info("snapshot {} is written with {} items", snapshot, items.size());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdown();
+            try {
+                snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        syncLock.lock();
+        writeLock.lock();
+        try {
+            if (segment != null && segment.isOpen()) {
+                if (failure == null) {
+                    segment.force(false);
+                }
+                segment.close();
+            }
+            if (fileLock != null) {
+                fileLock.release();
+                lockChannel.close();
+                fileLock = null;
+            }
+        } finally {
+            writeLock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    private void runSnapshotter() {
+        try {
+            snapshotter.run();
+        } catch (RuntimeException e) {
+            log.error("snapshot of {} failed", directory, e);
+        } finally {
+            snapshotScheduled.set(false);
+        }
+    }
+
+    private void lockDirectory() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("journal " + directory + " is used by another process");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("journal " + directory + " failed before", failure);
+        }
+    }
+
+    private FileChannel openLog(long startLsn) throws IOException {
+        return FileChannel.open(directory.resolve(fileName(LOG_PREFIX, startLsn, LOG_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Returns the files with the suffix in the order of their lsn.
+     */
+    private List<Path> list(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix))
+                    .sorted(Comparator.comparing(file -> file.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String fileName(String prefix, long lsn, String suffix) {
+        return String.format("%s%020d%s", prefix, lsn, suffix);
+    }
+
+    private static long startLsn(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static int checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.dao.inMemory;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Binary encoding of films and users for the {@link Journal}, a null string or collection is written as length -1.
+ */
+class Records {
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private Records() {
+    }
+
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static byte[] encode(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static void writeFilm(DataOutputStream out, Film film) throws IOException {
+        out.writeInt(film.getId());
+        writeString(out, film.getName());
+        writeString(out, film.getDescription());
+        writeDate(out, film.getReleaseDate());
+        out.writeInt(film.getDuration());
+        Rating mpa = film.getMpa();
+        out.writeBoolean(mpa != null);
+        if (mpa != null) {
+            out.writeInt(mpa.getId());
+            writeString(out, mpa.getName());
+        }
+        LinkedHashSet<Genre> genres = film.getGenres();
+        out.writeInt(genres == null ? -1 : genres.size());
+        if (genres != null) {
+            for (Genre genre : genres) {
+                out.writeInt(genre.getId());
+                writeString(out, genre.getName());
+            }
+        }
+        Set<Integer> likedUsers = film.getLikedUsers();
+        out.writeInt(likedUsers.size());
+        for (int userId : likedUsers) {
+            out.writeInt(userId);
+        }
+    }
+
+    static Film readFilm(ByteBuffer in) {
+        Film.FilmBuilder film = Film.builder()
+                .id(in.getInt())
+                .name(readString(in))
+                .description(readString(in))
+                .releaseDate(readDate(in))
+                .duration(in.getInt());
+        if (in.get() != 0) {
+            film.mpa(new Rating(in.getInt(), readString(in)));
+        }
+        int genreCount = in.getInt();
+        if (genreCount >= 0) {
+            LinkedHashSet<Genre> genres = new LinkedHashSet<>();
+            for (int i = 0; i < genreCount; i++) {
+                genres.add(new Genre(in.getInt(), readString(in)));
+            }
+            film.genres(genres);
+        }
+        int likeCount = in.getInt();
+        Set<Integer> likedUsers = new HashSet<>(Math.max(16, likeCount * 2));
+        for (int i = 0; i < likeCount; i++) {
+            likedUsers.add(in.getInt());
+        }
+        return film.likedUsers(likedUsers).build();
+    }
+
+    static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeInt(user.getId());
+        writeString(out, user.getEmail());
+        writeString(out, user.getLogin());
+        writeString(out, user.getName());
+        writeDate(out, user.getBirthday());
+    }
+
+    static User readUser(ByteBuffer in) {
+        return User.builder()
+                .id(in.getInt())
+                .email(readString(in))
+                .login(readString(in))
+                .name(readString(in))
+                .birthday(readDate(in))
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+        out.writeLong(date == null ? NO_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate readDate(ByteBuffer in) {
+        long epochDay = in.getLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
@@ -1,22 +1,65 @@
 package ru.yandex.practicum.filmorate.dao.interfaces;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.HourlyLikes;
+import ru.yandex.practicum.filmorate.model.Like;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmDao {
     List<Film> getAll();
 
+    List<Film> getPage(int afterId, int limit);
+
+    void streamAll(Consumer<Film> consumer);
+
     Film add(Film film);
 
+    List<Film> addAll(List<Film> films);
+
     Optional<Film> update(Film film);
 
     Optional<Film> addLike(int filmId, int userId);
 
     Optional<Film> deleteLike(int filmId, int userId);
 
+    boolean saveLike(int filmId, int userId);
+
+    /**
+     * Returns when the removed like was made, empty when there was no like.
+     */
+    Optional<LocalDateTime> removeLike(int filmId, int userId);
+
+    List<Boolean> saveLikes(List<Like> likes);
+
+    List<Boolean> removeLikes(List<Like> likes);
+
+    boolean hasLike(int filmId, int userId);
+
     List<Film> getPopularFilms(int count);
 
+    List<Film> getPopularFilms(int count, Integer genreId, Integer year);
+
+    void rebuildLikesCount();
+
     Optional<Film> get(int filmId);
+
+    /**
+     * Returns the existing films in the order of the ids.
+     */
+    List<Film> getByIds(Collection<Integer> filmIds);
+
+    Set<Integer> getExistingIds(Collection<Integer> filmIds);
+
+    Map<Integer, Integer> getLikesCount();
+
+    void streamLikes(Consumer<Like> consumer);
+
+    List<HourlyLikes> getHourlyLikesSince(LocalDateTime since);
 }
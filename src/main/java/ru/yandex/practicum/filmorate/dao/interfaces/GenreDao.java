@@ -4,6 +4,7 @@ import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
 
 public interface GenreDao {
@@ -13,5 +14,9 @@ public interface GenreDao {
 
     Film addFilmGenre(Film film);
 
+    void addFilmGenres(List<Film> films);
+
     void deleteFilmGenre(Film film);
+
+    void refresh();
 }
@@ -10,4 +10,6 @@ public interface RatingDao {
     Optional<Rating> get(int ratingId);
 
     LinkedHashSet<Rating> getAll();
+
+    void refresh();
 }
@@ -2,24 +2,44 @@ package ru.yandex.practicum.filmorate.dao.interfaces;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public interface UserDao {
     List<User> getAll();
 
+    List<User> getPage(int afterId, int limit);
+
     Optional<User> get(int userId);
 
+    Set<Integer> getExistingIds(Collection<Integer> userIds);
+
+    Set<String> getExistingLogins(Collection<String> logins);
+
+    Set<String> getExistingEmails(Collection<String> emails);
+
     User add(User user);
 
+    List<User> addAll(List<User> users);
+
     Optional<User> update(User user);
 
-    Optional<User> addFriend(int userId, int friendId);
+    /**
+     * Returns whether the friendship was created, empty when either user does not exist.
+     */
+    Optional<Boolean> addFriend(int userId, int friendId);
 
-    void deleteFriend(int userId, int friendId);
+    /**
+     * Returns whether the friendship existed and was deleted.
+     */
+    boolean deleteFriend(int userId, int friendId);
 
     Optional<List<User>> getFriends(int userId);
 
     Optional<List<User>> getCommonFriends(int userId, int otherId);
 
+    Optional<List<User>> getFriendSuggestions(int userId, int limit);
+
 }
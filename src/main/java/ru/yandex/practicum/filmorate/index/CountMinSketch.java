@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch over film ids: a fixed {@code depth x width} table of counters.
+ * With total count N an estimate is never below the true count and exceeds it by at most
+ * {@code e / width * N} with probability {@code 1 - e^-depth}.
+ * Sketches with the same width, depth and seed can be merged by adding their counters, also when one of them is
+ * restored from the counters of another instance.
+ */
+public class CountMinSketch {
+    private static final long PRIME = (1L << 31) - 1;
+
+    private final int width;
+    private final int depth;
+    private final long seed;
+    private final long[] hashA;
+    private final long[] hashB;
+    private final AtomicLongArray counters;
+    private final AtomicLong total = new AtomicLong();
+
+    public CountMinSketch(int width, int depth, long seed) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth should be positive");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.seed = seed;
+        this.hashA = new long[depth];
+        this.hashB = new long[depth];
+        this.counters = new AtomicLongArray(width * depth);
+        Random random = new Random(seed);
+        for (int i = 0; i < depth; i++) {
+            hashA[i] = 1 + random.nextInt((int) PRIME - 1);
+            hashB[i] = random.nextInt((int) PRIME);
+        }
+    }
+
+    /**
+     * Restores a sketch from its counters, rows of {@code width} counters one after another.
+     */
+    public CountMinSketch(int width, int depth, long seed, long[] counters, long total) {
+        this(width, depth, seed);
+        if (counters == null || counters.length != width * depth) {
+            throw new IllegalArgumentException("a sketch of width " + width + " and depth " + depth
+                    + " should have " + width * depth + " counters");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            this.counters.set(i, counters[i]);
+        }
+        this.total.set(total);
+    }
+
+    public long add(int filmId, long count) {
+        total.addAndGet(count);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(i, filmId), count));
+        }
+        return Math.max(estimate, 0);
+    }
+
+    public long estimate(int filmId) {
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counters.get(index(i, filmId)));
+        }
+        return Math.max(estimate, 0);
+    }
+
+    public void merge(CountMinSketch other) {
+        if (width != other.width || depth != other.depth || seed != other.seed) {
+            throw new IllegalArgumentException("only sketches with the same width, depth and seed can be merged");
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.addAndGet(i, other.counters.get(i));
+        }
+        total.addAndGet(other.total.get());
+    }
+
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        total.set(0);
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long[] getCounters() {
+        long[] values = new long[counters.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = counters.get(i);
+        }
+        return values;
+    }
+
+    public double getEpsilon() {
+        return Math.E / width;
+    }
+
+    public double getConfidence() {
+        return 1 - Math.exp(-depth);
+    }
+
+    public long getErrorBound() {
+        return (long) Math.ceil(getEpsilon() * Math.max(total.get(), 0));
+    }
+
+    public long getMemoryBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+
+    private int index(int row, int filmId) {
+        long hash = (hashA[row] * (filmId & PRIME) + hashB[row]) % PRIME;
+        return row * width + (int) (hash % width);
+    }
+}
@@ -0,0 +1,383 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Type-ahead over film names. Names are packed into one char array sorted by their case folded form, so films with
+ * a prefix are a binary searched range, and a max segment tree over the like counts in that order yields the most
+ * liked films of the range in O(limit * log n) without visiting the rest of it. A film takes about 40 bytes plus two
+ * bytes per char of its name. New and renamed films go to a small sorted overlay that is merged into the table once
+ * it holds {@link #MAX_OVERLAY_SIZE} films. Reads take no locks, writes are serialized.
+ */
+@Component
+public class FilmAutocomplete {
+    private static final int MAX_OVERLAY_SIZE = 4096;
+
+    private static final Comparator<Entry> ENTRY_ORDER = (a, b) -> {
+        int result = compare(a.name, 0, a.name.length, b.name, 0, b.name.length);
+        return result != 0 ? result : Integer.compare(a.filmId, b.filmId);
+    };
+
+    private static final Comparator<FilmSuggestion> SUGGESTION_ORDER = Comparator
+            .comparingInt(FilmSuggestion::getLikes).reversed()
+            .thenComparing((a, b) -> compare(a.getName().toCharArray(), 0, a.getName().length(),
+                    b.getName().toCharArray(), 0, b.getName().length()))
+            .thenComparingInt(FilmSuggestion::getId);
+
+    private final ConcurrentSkipListSet<Entry> overlay = new ConcurrentSkipListSet<>(ENTRY_ORDER);
+
+    private final ConcurrentMap<Integer, Entry> overlayById = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile Table table = new TableBuilder(0).build();
+
+    public void rebuild(Consumer<Consumer<Film>> films, IntUnaryOperator likes) {
+        lock.lock();
+        try {
+            List<Entry> entries = new ArrayList<>();
+            films.accept(film -> entries.add(new Entry(film.getId(), film.getName().strip().toCharArray(),
+                    likes.applyAsInt(film.getId()))));
+            entries.sort(ENTRY_ORDER);
+            TableBuilder builder = new TableBuilder(entries.size());
+            entries.forEach(entry -> builder.add(entry.filmId, entry.name, 0, entry.name.length, entry.likes));
+            table = builder.build();
+            overlayById.clear();
+            overlay.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the film or replaces its previous name, the like count of the film is kept.
+     */
+    public void index(Film film) {
+        lock.lock();
+        try {
+            Entry previous = overlayById.get(film.getId());
+            int likes;
+            if (previous != null) {
+                likes = previous.likes;
+                overlay.remove(previous);
+            } else {
+                int position = table.positionOf(film.getId());
+                likes = position < 0 ? 0 : table.likes[position];
+            }
+            Entry entry = new Entry(film.getId(), film.getName().strip().toCharArray(), likes);
+            overlayById.put(entry.filmId, entry);
+            overlay.add(entry);
+            if (overlayById.size() >= MAX_OVERLAY_SIZE) {
+                compact();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void updateLikes(int filmId, int delta) {
+        lock.lock();
+        try {
+            Entry entry = overlayById.get(filmId);
+            if (entry != null) {
+                entry.likes += delta;
+                return;
+            }
+            int position = table.positionOf(filmId);
+            if (position >= 0) {
+                table.updateLikes(position, delta);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} films whose case folded name starts with the case folded prefix, ranked by likes
+     * desc, name and film id asc.
+     */
+    public List<FilmSuggestion> complete(String prefix, int limit) {
+        char[] key = prefix.stripLeading().toCharArray();
+        for (int i = 0; i < key.length; i++) {
+            key[i] = fold(key[i]);
+        }
+        List<FilmSuggestion> suggestions = new ArrayList<>();
+        // the overlay is read before the table, so a compaction in between can only make a film appear twice
+        for (Entry entry : overlay.tailSet(new Entry(Integer.MIN_VALUE, key, 0))) {
+            if (compareToPrefix(entry.name, 0, entry.name.length, key) != 0) {
+                break;
+            }
+            suggestions.add(new FilmSuggestion(entry.filmId, new String(entry.name), entry.likes));
+        }
+        Table current = table;
+        int from = current.search(key, false);
+        int to = current.search(key, true);
+        IntPredicate latest = position -> !overlayById.containsKey(current.filmIds[position]);
+        for (int position : current.getTop(from, to, limit, latest)) {
+            suggestions.add(new FilmSuggestion(current.filmIds[position], current.getName(position),
+                    current.likes[position]));
+        }
+        Set<Integer> seen = new HashSet<>();
+        return suggestions.stream()
+                .sorted(SUGGESTION_ORDER)
+                .filter(suggestion -> seen.add(suggestion.getId()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        Table current = table;
+        int added = (int) overlayById.keySet()
+                .stream()
+                .filter(filmId -> current.positionOf(filmId) < 0)
+                .count();
+        return current.filmIds.length + added;
+    }
+
+    private void compact() {
+        Table current = table;
+        TableBuilder builder = new TableBuilder(current.filmIds.length + overlayById.size());
+        Iterator<Entry> added = overlay.iterator();
+        Entry next = added.hasNext() ? added.next() : null;
+        for (int position = 0; position < current.filmIds.length; position++) {
+            int filmId = current.filmIds[position];
+            if (overlayById.containsKey(filmId)) {
+                continue;
+            }
+            int from = current.offsets[position];
+            int to = current.offsets[position + 1];
+            while (next != null && isBefore(next, current.names, from, to, filmId)) {
+                builder.add(next.filmId, next.name, 0, next.name.length, next.likes);
+                next = added.hasNext() ? added.next() : null;
+            }
+            builder.add(filmId, current.names, from, to, current.likes[position]);
+        }
+        while (next != null) {
+            builder.add(next.filmId, next.name, 0, next.name.length, next.likes);
+            next = added.hasNext() ? added.next() : null;
+        }
+        table = builder.build();
+        overlayById.clear();
+        overlay.clear();
+    }
+
+    private static boolean isBefore(Entry entry, char[] names, int from, int to, int filmId) {
+        int result = compare(entry.name, 0, entry.name.length, names, from, to);
+        return result < 0 || result == 0 && entry.filmId < filmId;
+    }
+
+    private static char fold(char c) {
+        char lowerCase = Character.toLowerCase(c);
+        return lowerCase == 'ё' ? 'е' : lowerCase;
+    }
+
+    private static int compare(char[] a, int aFrom, int aTo, char[] b, int bFrom, int bTo) {
+        int length = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < length; i++) {
+            int result = Character.compare(fold(a[aFrom + i]), fold(b[bFrom + i]));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(aTo - aFrom, bTo - bFrom);
+    }
+
+    // negative when the name sorts before all names with the prefix, zero when it has the prefix, positive after
+    private static int compareToPrefix(char[] name, int from, int to, char[] prefix) {
+        int length = Math.min(to - from, prefix.length);
+        for (int i = 0; i < length; i++) {
+            int result = Character.compare(fold(name[from + i]), prefix[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return to - from < prefix.length ? -1 : 0;
+    }
+
+    private static class Entry {
+        private final int filmId;
+
+        private final char[] name;
+
+        private volatile int likes;
+
+        private Entry(int filmId, char[] name, int likes) {
+            this.filmId = filmId;
+            this.name = name;
+            this.likes = likes;
+        }
+    }
+
+    /**
+     * Immutable sorted names with mutable like counts. Leaf {@code leaves + p} of the segment tree is position
+     * {@code p}, every node keeps the position with the most likes below it, the lower position on ties.
+     */
+    private static class Table {
+        private final char[] names;
+
+        private final int[] offsets;
+
+        private final int[] filmIds;
+
+        private final int[] likes;
+
+        private final int[] best;
+
+        private final int leaves;
+
+        private final int[] sortedFilmIds;
+
+        private final int[] positions;
+
+        private Table(char[] names, int[] offsets, int[] filmIds, int[] likes) {
+            this.names = names;
+            this.offsets = offsets;
+            this.filmIds = filmIds;
+            this.likes = likes;
+            leaves = Integer.highestOneBit(Math.max(filmIds.length, 1) * 2 - 1);
+            best = new int[leaves * 2];
+            Arrays.fill(best, -1);
+            for (int position = 0; position < filmIds.length; position++) {
+                best[leaves + position] = position;
+            }
+            for (int node = leaves - 1; node > 0; node--) {
+                best[node] = better(best[node * 2], best[node * 2 + 1]);
+            }
+            long[] byFilmId = new long[filmIds.length];
+            for (int position = 0; position < filmIds.length; position++) {
+                byFilmId[position] = (long) filmIds[position] << 32 | position;
+            }
+            Arrays.sort(byFilmId);
+            sortedFilmIds = new int[filmIds.length];
+            positions = new int[filmIds.length];
+            for (int i = 0; i < byFilmId.length; i++) {
+                sortedFilmIds[i] = (int) (byFilmId[i] >>> 32);
+                positions[i] = (int) byFilmId[i];
+            }
+        }
+
+        private int positionOf(int filmId) {
+            int i = Arrays.binarySearch(sortedFilmIds, filmId);
+            return i < 0 ? -1 : positions[i];
+        }
+
+        private String getName(int position) {
+            return new String(names, offsets[position], offsets[position + 1] - offsets[position]);
+        }
+
+        private void updateLikes(int position, int delta) {
+            likes[position] += delta;
+            for (int node = (leaves + position) / 2; node > 0; node /= 2) {
+                best[node] = better(best[node * 2], best[node * 2 + 1]);
+            }
+        }
+
+        // first position whose name has the prefix or sorts after it, or after it only
+        private int search(char[] prefix, boolean after) {
+            int low = 0;
+            int high = filmIds.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int result = compareToPrefix(names, offsets[middle], offsets[middle + 1], prefix);
+                if (result < 0 || after && result == 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns up to {@code limit} accepted positions of {@code [from, to)} by likes desc and position asc.
+         * The range is split into O(log n) subtrees, then the subtree with the best position is expanded first.
+         */
+        private List<Integer> getTop(int from, int to, int limit, IntPredicate accept) {
+            PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(b[0], a[0]));
+            for (int low = from + leaves, high = to + leaves; low < high; low /= 2, high /= 2) {
+                if ((low & 1) == 1) {
+                    push(queue, low++);
+                }
+                if ((high & 1) == 1) {
+                    push(queue, --high);
+                }
+            }
+            List<Integer> top = new ArrayList<>(limit);
+            while (!queue.isEmpty() && top.size() < limit) {
+                int node = (int) queue.poll()[1];
+                if (node < leaves) {
+                    push(queue, node * 2);
+                    push(queue, node * 2 + 1);
+                } else if (accept.test(node - leaves)) {
+                    top.add(node - leaves);
+                }
+            }
+            return top;
+        }
+
+        private void push(PriorityQueue<long[]> queue, int node) {
+            int position = best[node];
+            if (position >= 0) {
+                // likes in the high half and the inverted position in the low half, so bigger is better
+                queue.add(new long[]{(long) likes[position] << 32 | (Integer.MAX_VALUE - position), node});
+            }
+        }
+
+        private int better(int left, int right) {
+            if (left < 0 || right < 0) {
+                return left < 0 ? right : left;
+            }
+            return likes[right] > likes[left] ? right : left;
+        }
+    }
+
+    private static class TableBuilder {
+        private char[] names;
+
+        private int namesSize;
+
+        private final int[] offsets;
+
+        private final int[] filmIds;
+
+        private final int[] likes;
+
+        private int size;
+
+        private TableBuilder(int capacity) {
+            names = new char[Math.max(capacity * 16, 16)];
+            offsets = new int[capacity + 1];
+            filmIds = new int[capacity];
+            likes = new int[capacity];
+        }
+
+        private void add(int filmId, char[] name, int from, int to, int filmLikes) {
+            int length = to - from;
+            if (namesSize + length > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, namesSize + length));
+            }
+            System.arraycopy(name, from, names, namesSize, length);
+            namesSize += length;
+            filmIds[size] = filmId;
+            likes[size] = filmLikes;
+            offsets[++size] = namesSize;
+        }
+
+        private Table build() {
+            return new Table(Arrays.copyOf(names, namesSize), Arrays.copyOf(offsets, size + 1),
+                    Arrays.copyOf(filmIds, size), Arrays.copyOf(likes, size));
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Item-item collaborative filtering over the LIKES matrix. Users and films are kept as sorted int arrays of each
+ * other, every film keeps its most similar films by cosine similarity of the sets of users that liked them.
+ * {@link #rebuild} computes all neighbor lists on a fork-join pool, a like or unlike recomputes only the pairs of
+ * the film with the other films of that user, so a recommendation is a merge of the neighbor lists of liked films.
+ */
+@Component
+public class FilmRecommender {
+    private static final int[] EMPTY = new int[0];
+
+    private static final int MAX_FAN_OUT = 1000;
+
+    private final ConcurrentMap<Integer, int[]> filmsByUser = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Integer, int[]> usersByFilm = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Integer, Neighbors> neighbors = new ConcurrentHashMap<>();
+
+    // not a monitor: rebuild holds it while likes stream from JDBC, which would pin a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final int maxNeighbors;
+
+    private final int parallelism;
+
+    public FilmRecommender(@Value("${filmorate.recommendations.neighbors:50}") int maxNeighbors,
+                           @Value("${filmorate.recommendations.parallelism:0}") int parallelism) {
+        this.maxNeighbors = maxNeighbors;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void rebuild(Consumer<Consumer<Like>> likes) {
+        lock.lock();
+        try {
+            Map<Integer, List<Integer>> films = new HashMap<>();
+            Map<Integer, List<Integer>> users = new HashMap<>();
+            likes.accept(like -> {
+                films.computeIfAbsent(like.getUserId(), id -> new ArrayList<>()).add(like.getFilmId());
+                users.computeIfAbsent(like.getFilmId(), id -> new ArrayList<>()).add(like.getUserId());
+            });
+            filmsByUser.clear();
+            usersByFilm.clear();
+            neighbors.clear();
+            films.forEach((userId, filmIds) -> filmsByUser.put(userId, toSortedArray(filmIds)));
+            users.forEach((filmId, userIds) -> usersByFilm.put(filmId, toSortedArray(userIds)));
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.submit(() -> usersByFilm.keySet()
+                        .parallelStream()
+                        .forEach(filmId -> neighbors.put(filmId, computeNeighbors(filmId))))
+                        .join();
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void like(int userId, int filmId) {
+        lock.lock();
+        try {
+            int[] films = filmsByUser.getOrDefault(userId, EMPTY);
+            if (Arrays.binarySearch(films, filmId) >= 0) {
+                return;
+            }
+            filmsByUser.put(userId, insert(films, filmId));
+            usersByFilm.put(filmId, insert(usersByFilm.getOrDefault(filmId, EMPTY), userId));
+            updatePairs(filmId, films);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unlike(int userId, int filmId) {
+        lock.lock();
+        try {
+            int[] films = filmsByUser.getOrDefault(userId, EMPTY);
+            int position = Arrays.binarySearch(films, filmId);
+            if (position < 0) {
+                return;
+            }
+            int[] remaining = remove(films, position);
+            filmsByUser.put(userId, remaining);
+            int[] users = usersByFilm.get(filmId);
+            usersByFilm.put(filmId, remove(users, Arrays.binarySearch(users, userId)));
+            updatePairs(filmId, remaining);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} films the user has not liked, ranked by the sum of their similarities to the films
+     * the user liked desc and film id asc.
+     */
+    public List<Integer> recommend(int userId, int limit) {
+        int[] liked = filmsByUser.getOrDefault(userId, EMPTY);
+        Map<Integer, Double> scores = new HashMap<>();
+        for (int filmId : liked) {
+            Neighbors similar = neighbors.get(filmId);
+            if (similar == null) {
+                continue;
+            }
+            for (int i = 0; i < similar.filmIds.length; i++) {
+                if (Arrays.binarySearch(liked, similar.filmIds[i]) < 0) {
+                    scores.merge(similar.filmIds[i], (double) similar.similarities[i], Double::sum);
+                }
+            }
+        }
+        return scores.entrySet()
+                .stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns ids of the films most similar to the film, the most similar first.
+     */
+    public int[] getSimilarFilms(int filmId) {
+        Neighbors similar = neighbors.get(filmId);
+        return similar == null ? EMPTY : similar.filmIds.clone();
+    }
+
+    public int size() {
+        return usersByFilm.size();
+    }
+
+    private Neighbors computeNeighbors(int filmId) {
+        int[] users = usersByFilm.get(filmId);
+        // a sampled user stands for the users skipped between two samples
+        int userStep = step(users.length);
+        IntCounter coLikes = new IntCounter(Math.min(users.length * 8, 1 << 16));
+        for (int i = 0; i < users.length; i += userStep) {
+            int[] films = filmsByUser.get(users[i]);
+            int filmStep = step(films.length);
+            for (int j = 0; j < films.length; j += filmStep) {
+                if (films[j] != filmId) {
+                    coLikes.increment(films[j], userStep * filmStep);
+                }
+            }
+        }
+        // bits of a positive float keep its order, the inverted id in the low half puts lower ids first
+        long[] ranks = new long[coLikes.capacity()];
+        int size = 0;
+        for (int slot = 0; slot < coLikes.capacity(); slot++) {
+            int otherId = coLikes.keyAt(slot);
+            if (otherId >= 0) {
+                float similarity = similarity(coLikes.countAt(slot), users.length, usersByFilm.get(otherId).length);
+                ranks[size++] = (long) Float.floatToIntBits(similarity) << 32 | (Integer.MAX_VALUE - otherId);
+            }
+        }
+        Arrays.sort(ranks, 0, size);
+        int count = Math.min(size, maxNeighbors);
+        int[] filmIds = new int[count];
+        float[] similarities = new float[count];
+        for (int i = 0; i < count; i++) {
+            long rank = ranks[size - 1 - i];
+            filmIds[i] = Integer.MAX_VALUE - (int) (rank & 0xFFFFFFFFL);
+            similarities[i] = Float.intBitsToFloat((int) (rank >>> 32));
+        }
+        return new Neighbors(filmIds, similarities);
+    }
+
+    private void updatePairs(int filmId, int[] otherFilms) {
+        int[] users = usersByFilm.get(filmId);
+        int filmStep = step(otherFilms.length);
+        for (int i = 0; i < otherFilms.length; i += filmStep) {
+            int otherId = otherFilms[i];
+            int[] otherUsers = usersByFilm.get(otherId);
+            float similarity = similarity(intersectionSize(users, otherUsers), users.length, otherUsers.length);
+            neighbors.put(filmId, neighbors.getOrDefault(filmId, Neighbors.NONE).with(otherId, similarity, maxNeighbors));
+            neighbors.put(otherId, neighbors.getOrDefault(otherId, Neighbors.NONE).with(filmId, similarity, maxNeighbors));
+        }
+    }
+
+    private static float similarity(int coLikes, int likes, int otherLikes) {
+        return likes == 0 || otherLikes == 0 ? 0 : (float) (coLikes / Math.sqrt((double) likes * otherLikes));
+    }
+
+    private static int step(int size) {
+        return size > MAX_FAN_OUT ? (size + MAX_FAN_OUT - 1) / MAX_FAN_OUT : 1;
+    }
+
+    private static int intersectionSize(int[] a, int[] b) {
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                size++;
+                i++;
+                j++;
+            }
+        }
+        return size;
+    }
+
+    private static int[] toSortedArray(List<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    private static int[] insert(int[] array, int value) {
+        int insertAt = -Arrays.binarySearch(array, value) - 1;
+        int[] updated = new int[array.length + 1];
+        System.arraycopy(array, 0, updated, 0, insertAt);
+        updated[insertAt] = value;
+        System.arraycopy(array, insertAt, updated, insertAt + 1, array.length - insertAt);
+        return updated;
+    }
+
+    private static int[] remove(int[] array, int position) {
+        int[] updated = new int[array.length - 1];
+        System.arraycopy(array, 0, updated, 0, position);
+        System.arraycopy(array, position + 1, updated, position, array.length - position - 1);
+        return updated;
+    }
+
+    /**
+     * Immutable neighbor list ordered by similarity desc and film id asc.
+     */
+    private static class Neighbors {
+        private static final Neighbors NONE = new Neighbors(EMPTY, new float[0]);
+
+        private final int[] filmIds;
+
+        private final float[] similarities;
+
+        private Neighbors(int[] filmIds, float[] similarities) {
+            this.filmIds = filmIds;
+            this.similarities = similarities;
+        }
+
+        private Neighbors with(int filmId, float similarity, int maxSize) {
+            int size = 0;
+            int[] ids = new int[Math.min(filmIds.length + 1, maxSize)];
+            float[] values = new float[ids.length];
+            boolean inserted = similarity <= 0;
+            for (int i = 0; i < filmIds.length && size < ids.length; i++) {
+                if (filmIds[i] == filmId) {
+                    continue;
+                }
+                if (!inserted && (similarity > similarities[i]
+                        || similarity == similarities[i] && filmId < filmIds[i])) {
+                    ids[size] = filmId;
+                    values[size++] = similarity;
+                    inserted = true;
+                    if (size == ids.length) {
+                        break;
+                    }
+                }
+                ids[size] = filmIds[i];
+                values[size++] = similarities[i];
+            }
+            if (!inserted && size < ids.length) {
+                ids[size] = filmId;
+                values[size++] = similarity;
+            }
+            return size == ids.length ? new Neighbors(ids, values)
+                    : new Neighbors(Arrays.copyOf(ids, size), Arrays.copyOf(values, size));
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Inverted index over film names and descriptions ranked by BM25. Every term keeps its postings as a sorted array of
+ * film ids with term frequencies, a word of the name counts as {@link #NAME_WEIGHT} words of the description.
+ * Postings are copy-on-write, so searches take no locks and writes are serialized. A batch of films is merged into
+ * the postings of every term once.
+ */
+@Component
+public class FilmSearchIndex {
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private static final int NAME_WEIGHT = 3;
+
+    private static final double POPULARITY_WEIGHT = 0.1;
+
+    private final ConcurrentMap<String, Postings> postings = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Integer, Document> documents = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final int parallelism;
+
+    private volatile long totalLength;
+
+    public FilmSearchIndex(@Value("${filmorate.search.parallelism:0}") int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void rebuild(Consumer<Consumer<Film>> films) {
+        lock.lock();
+        try {
+            List<Film> all = new ArrayList<>();
+            films.accept(all::add);
+            List<Document> parsed;
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                parsed = pool.submit(() -> all.parallelStream()
+                        .map(FilmSearchIndex::parse)
+                        .sorted(Comparator.comparingInt(document -> document.filmId))
+                        .collect(Collectors.toList()))
+                        .join();
+            } finally {
+                pool.shutdown();
+            }
+
+            // documents come in id order, so appending keeps every posting list sorted
+            Map<String, PostingsBuilder> builders = new HashMap<>();
+            long length = 0;
+            for (Document document : parsed) {
+                for (int i = 0; i < document.terms.length; i++) {
+                    PostingsBuilder builder = builders.computeIfAbsent(document.terms[i], PostingsBuilder::new);
+                    builder.add(document.filmId, document.frequencies[i]);
+                    // documents share one string per term instead of keeping their own copies
+                    document.terms[i] = builder.term;
+                }
+                length += document.length;
+            }
+            postings.clear();
+            documents.clear();
+            builders.forEach((term, builder) -> postings.put(term, builder.build()));
+            parsed.forEach(document -> documents.put(document.filmId, document));
+            totalLength = length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the film or replaces the terms of its previous version.
+     */
+    public void index(Film film) {
+        index(List.of(film));
+    }
+
+    /**
+     * Adds the films or replaces the terms of their previous versions, the last version of a film in the batch wins.
+     */
+    public void index(Collection<Film> films) {
+        Map<Integer, Document> parsed = new TreeMap<>();
+        films.forEach(film -> parsed.put(film.getId(), parse(film)));
+        lock.lock();
+        try {
+            // documents come in id order, so the ids added to and removed from every term are sorted
+            Map<String, PostingsBuilder> added = new HashMap<>();
+            Map<String, PostingsBuilder> removed = new HashMap<>();
+            long length = totalLength;
+            for (Document document : parsed.values()) {
+                Document previous = documents.put(document.filmId, document);
+                if (previous != null) {
+                    for (String term : previous.terms) {
+                        removed.computeIfAbsent(term, PostingsBuilder::new).add(previous.filmId, 0);
+                    }
+                    length -= previous.length;
+                }
+                for (int i = 0; i < document.terms.length; i++) {
+                    added.computeIfAbsent(document.terms[i], PostingsBuilder::new).add(document.filmId, document.frequencies[i]);
+                }
+                length += document.length;
+            }
+            Set<String> terms = new HashSet<>(added.keySet());
+            terms.addAll(removed.keySet());
+            for (String term : terms) {
+                PostingsBuilder termAdded = added.get(term);
+                PostingsBuilder termRemoved = removed.get(term);
+                postings.compute(term, (key, list) -> Postings.merge(list,
+                        termRemoved == null ? Postings.EMPTY : termRemoved.build(),
+                        termAdded == null ? Postings.EMPTY : termAdded.build()));
+            }
+            totalLength = length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Integer> search(String query, int limit) {
+        return search(query, limit, filmId -> 0);
+    }
+
+    /**
+     * Returns ids of up to {@code limit} films matching any term of the query, ranked by BM25 score multiplied by
+     * {@code 1 + 0.1 * ln(1 + likes)} desc and film id asc.
+     */
+    public List<Integer> search(String query, int limit, IntUnaryOperator likes) {
+        int documentCount = documents.size();
+        if (documentCount == 0) {
+            return List.of();
+        }
+        double averageLength = Math.max(1, (double) totalLength / documentCount);
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (documentCount - list.filmIds.length + 0.5) / (list.filmIds.length + 0.5));
+            for (int i = 0; i < list.filmIds.length; i++) {
+                Document document = documents.get(list.filmIds[i]);
+                if (document == null) {
+                    continue;
+                }
+                double frequency = list.frequencies[i];
+                double norm = K1 * (1 - B + B * document.length / averageLength);
+                scores.merge(list.filmIds[i], idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+            }
+        }
+        scores.replaceAll((filmId, score) -> score * (1 + POPULARITY_WEIGHT * Math.log1p(likes.applyAsInt(filmId))));
+        return scores.entrySet()
+                .stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Splits the text into lower case runs of letters and digits of any script, {@code ё} is folded into {@code е}.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                int lowerCase = Character.toLowerCase(codePoint);
+                token.appendCodePoint(lowerCase == 'ё' ? 'е' : lowerCase);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static Document parse(Film film) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        tokenize(film.getName()).forEach(term -> frequencies.merge(term, NAME_WEIGHT, Integer::sum));
+        tokenize(film.getDescription()).forEach(term -> frequencies.merge(term, 1, Integer::sum));
+        String[] terms = new String[frequencies.size()];
+        int[] counts = new int[frequencies.size()];
+        int length = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            terms[i] = entry.getKey();
+            counts[i++] = entry.getValue();
+            length += entry.getValue();
+        }
+        return new Document(film.getId(), terms, counts, length);
+    }
+
+    private static class Document {
+        private final int filmId;
+
+        private final String[] terms;
+
+        private final int[] frequencies;
+
+        private final int length;
+
+        private Document(int filmId, String[] terms, int[] frequencies, int length) {
+            this.filmId = filmId;
+            this.terms = terms;
+            this.frequencies = frequencies;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Immutable posting list sorted by film id, {@link #merge} returns null instead of an empty list so that
+     * {@code compute} drops terms no film has anymore.
+     */
+    private static class Postings {
+        private static final Postings EMPTY = new Postings(new int[0], new int[0]);
+
+        private final int[] filmIds;
+
+        private final int[] frequencies;
+
+        private Postings(int[] filmIds, int[] frequencies) {
+            this.filmIds = filmIds;
+            this.frequencies = frequencies;
+        }
+
+        /**
+         * Returns the postings without the removed films and with the added ones, in one pass over each list.
+         * A film that is removed and added again keeps the added frequency.
+         */
+        private static Postings merge(Postings list, Postings removed, Postings added) {
+            Postings current = list == null ? EMPTY : list;
+            int[] ids = new int[current.filmIds.length + added.filmIds.length];
+            int[] counts = new int[ids.length];
+            int size = 0;
+            int r = 0;
+            int a = 0;
+            for (int c = 0; c < current.filmIds.length; c++) {
+                int filmId = current.filmIds[c];
+                while (a < added.filmIds.length && added.filmIds[a] < filmId) {
+                    ids[size] = added.filmIds[a];
+                    counts[size++] = added.frequencies[a++];
+                }
+                while (r < removed.filmIds.length && removed.filmIds[r] < filmId) {
+                    r++;
+                }
+                boolean isRemoved = r < removed.filmIds.length && removed.filmIds[r] == filmId;
+                boolean isAdded = a < added.filmIds.length && added.filmIds[a] == filmId;
+                if (!isRemoved && !isAdded) {
+                    ids[size] = filmId;
+                    counts[size++] = current.frequencies[c];
+                }
+            }
+            while (a < added.filmIds.length) {
+                ids[size] = added.filmIds[a];
+                counts[size++] = added.frequencies[a++];
+            }
+            if (size == 0) {
+                return null;
+            }
+            return new Postings(Arrays.copyOf(ids, size), Arrays.copyOf(counts, size));
+        }
+    }
+
+    private static class PostingsBuilder {
+        private final String term;
+
+        private int[] filmIds = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int size;
+
+        private PostingsBuilder(String term) {
+            this.term = term;
+        }
+
+        private void add(int filmId, int frequency) {
+            if (size == filmIds.length) {
+                filmIds = Arrays.copyOf(filmIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            filmIds[size] = filmId;
+            frequencies[size++] = frequency;
+        }
+
+        private Postings build() {
+            return new Postings(Arrays.copyOf(filmIds, size), Arrays.copyOf(frequencies, size));
+        }
+    }
+}
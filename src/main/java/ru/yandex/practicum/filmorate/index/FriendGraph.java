@@ -0,0 +1,279 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Directed friend graph kept as compressed sparse rows: friends of user {@code u} are the sorted slice
+ * {@code targets[offsets[u]..offsets[u + 1])}, so an edge takes 4 bytes and a user 4 bytes of offsets.
+ * A write copies the changed row into an overlay, the overlay is merged into new rows once it holds more than
+ * an eighth of all edges. Reads take no locks, writes are serialized.
+ */
+public class FriendGraph {
+    public static final int MAX_FAN_OUT = 1000;
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final int MIN_COMPACTION_EDGES = 1024;
+
+    private final ConcurrentMap<Integer, int[]> overlay = new ConcurrentHashMap<>();
+
+    private volatile Rows rows = new Rows(new int[1], EMPTY);
+
+    private volatile int edgeCount;
+
+    private int overlayEdges;
+
+    public synchronized void rebuild(Edges edges) {
+        int users = 0;
+        for (int i = 0; i < edges.size; i++) {
+            users = Math.max(users, edges.userIds[i] + 1);
+        }
+        int[] offsets = new int[users + 1];
+        for (int i = 0; i < edges.size; i++) {
+            offsets[edges.userIds[i] + 1]++;
+        }
+        for (int user = 0; user < users; user++) {
+            offsets[user + 1] += offsets[user];
+        }
+        int[] targets = new int[edges.size];
+        int[] next = Arrays.copyOf(offsets, users);
+        for (int i = 0; i < edges.size; i++) {
+            targets[next[edges.userIds[i]]++] = edges.friendIds[i];
+        }
+        for (int user = 0; user < users; user++) {
+            Arrays.sort(targets, offsets[user], offsets[user + 1]);
+        }
+        rows = new Rows(offsets, targets);
+        overlay.clear();
+        overlayEdges = 0;
+        edgeCount = targets.length;
+    }
+
+    public synchronized boolean add(int userId, int friendId) {
+        int[] row = getFriends(userId);
+        int position = Arrays.binarySearch(row, friendId);
+        if (position >= 0) {
+            return false;
+        }
+        int insertAt = -position - 1;
+        int[] updated = new int[row.length + 1];
+        System.arraycopy(row, 0, updated, 0, insertAt);
+        updated[insertAt] = friendId;
+        System.arraycopy(row, insertAt, updated, insertAt + 1, row.length - insertAt);
+        putRow(userId, updated);
+        edgeCount++;
+        return true;
+    }
+
+    public synchronized boolean remove(int userId, int friendId) {
+        int[] row = getFriends(userId);
+        int position = Arrays.binarySearch(row, friendId);
+        if (position < 0) {
+            return false;
+        }
+        int[] updated = new int[row.length - 1];
+        System.arraycopy(row, 0, updated, 0, position);
+        System.arraycopy(row, position + 1, updated, position, row.length - position - 1);
+        putRow(userId, updated);
+        edgeCount--;
+        return true;
+    }
+
+    public boolean contains(int userId, int friendId) {
+        Slice row = getRow(userId);
+        return Arrays.binarySearch(row.array, row.from, row.to, friendId) >= 0;
+    }
+
+    /**
+     * Returns friend ids of the user in ascending order.
+     */
+    public int[] getFriends(int userId) {
+        Slice row = getRow(userId);
+        return Arrays.copyOfRange(row.array, row.from, row.to);
+    }
+
+    /**
+     * Returns ids of users that both users are friends with in ascending order, merging the two sorted rows.
+     */
+    public int[] getCommonFriends(int userId, int otherId) {
+        Slice a = getRow(userId);
+        Slice b = getRow(otherId);
+        int[] common = new int[Math.min(a.size(), b.size())];
+        int size = 0;
+        int i = a.from;
+        int j = b.from;
+        while (i < a.to && j < b.to) {
+            if (a.array[i] < b.array[j]) {
+                i++;
+            } else if (a.array[i] > b.array[j]) {
+                j++;
+            } else {
+                common[size++] = a.array[i];
+                i++;
+                j++;
+            }
+        }
+        return size == common.length ? common : Arrays.copyOf(common, size);
+    }
+
+    /**
+     * Returns up to {@code limit} users that are not friends of the user yet, ranked by the number of mutual friends
+     * desc and id asc. A friend with more than {@code maxFanOut} friends adds an evenly strided sample of them, so
+     * celebrities can not make one request walk most of the graph.
+     */
+    public int[] getSuggestions(int userId, int limit, int maxFanOut) {
+        Slice friends = getRow(userId);
+        IntCounter mutualFriends = new IntCounter(Math.min(friends.size() * 8, 1 << 16));
+        for (int i = friends.from; i < friends.to; i++) {
+            Slice row = getRow(friends.array[i]);
+            int step = row.size() > maxFanOut ? (row.size() + maxFanOut - 1) / maxFanOut : 1;
+            for (int j = row.from; j < row.to; j += step) {
+                if (row.array[j] != userId) {
+                    mutualFriends.increment(row.array[j], 1);
+                }
+            }
+        }
+
+        // rank is the count in the high half and the inverted id in the low half, so bigger is better
+        PriorityQueue<Long> top = new PriorityQueue<>(limit + 1);
+        for (int slot = 0; slot < mutualFriends.capacity(); slot++) {
+            int candidate = mutualFriends.keyAt(slot);
+            if (candidate < 0) {
+                continue;
+            }
+            long rank = (long) mutualFriends.countAt(slot) << 32 | (Integer.MAX_VALUE - candidate);
+            if (top.size() == limit && rank <= top.peek()) {
+                continue;
+            }
+            if (Arrays.binarySearch(friends.array, friends.from, friends.to, candidate) >= 0) {
+                continue;
+            }
+            top.add(rank);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        int[] suggestions = new int[top.size()];
+        for (int i = suggestions.length - 1; i >= 0; i--) {
+            suggestions[i] = Integer.MAX_VALUE - (int) (top.poll() & 0xFFFFFFFFL);
+        }
+        return suggestions;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    // the overlay is read before the base rows, a row missing from the overlay is then already merged into them
+    private Slice getRow(int userId) {
+        int[] row = overlay.get(userId);
+        if (row != null) {
+            return new Slice(row, 0, row.length);
+        }
+        Rows base = rows;
+        return new Slice(base.targets, base.from(userId), base.to(userId));
+    }
+
+    private void putRow(int userId, int[] row) {
+        int[] previous = overlay.put(userId, row);
+        overlayEdges += row.length - (previous == null ? 0 : previous.length);
+        if (overlayEdges > Math.max(MIN_COMPACTION_EDGES, edgeCount / 8)) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        Rows base = rows;
+        Map<Integer, int[]> changed = Map.copyOf(overlay);
+        int users = base.offsets.length - 1;
+        for (int userId : changed.keySet()) {
+            users = Math.max(users, userId + 1);
+        }
+        int[] offsets = new int[users + 1];
+        for (int user = 0; user < users; user++) {
+            int[] row = changed.get(user);
+            offsets[user + 1] = offsets[user] + (row != null ? row.length : base.to(user) - base.from(user));
+        }
+        int[] targets = new int[offsets[users]];
+        for (int user = 0; user < users; user++) {
+            int[] row = changed.get(user);
+            if (row != null) {
+                System.arraycopy(row, 0, targets, offsets[user], row.length);
+            } else {
+                System.arraycopy(base.targets, base.from(user), targets, offsets[user], base.to(user) - base.from(user));
+            }
+        }
+        // publish the rows first so that readers never see a row that is neither in the overlay nor in the rows
+        rows = new Rows(offsets, targets);
+        changed.forEach(overlay::remove);
+        overlayEdges = 0;
+    }
+
+    /**
+     * Growable list of edges to build the graph from, two ints per edge.
+     */
+    public static class Edges {
+        private int[] userIds = new int[16];
+
+        private int[] friendIds = new int[16];
+
+        private int size;
+
+        public void add(int userId, int friendId) {
+            if (size == userIds.length) {
+                userIds = Arrays.copyOf(userIds, size * 2);
+                friendIds = Arrays.copyOf(friendIds, size * 2);
+            }
+            userIds[size] = userId;
+            friendIds[size] = friendId;
+            size++;
+        }
+
+        public void addAll(Edges edges) {
+            for (int i = 0; i < edges.size; i++) {
+                add(edges.userIds[i], edges.friendIds[i]);
+            }
+        }
+    }
+
+    private static class Slice {
+        private final int[] array;
+
+        private final int from;
+
+        private final int to;
+
+        private Slice(int[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        private int size() {
+            return to - from;
+        }
+    }
+
+    private static class Rows {
+        private final int[] offsets;
+
+        private final int[] targets;
+
+        private Rows(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        private int from(int userId) {
+            return userId >= 0 && userId < offsets.length - 1 ? offsets[userId] : 0;
+        }
+
+        private int to(int userId) {
+            return userId >= 0 && userId < offsets.length - 1 ? offsets[userId + 1] : 0;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.SketchSnapshot;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Approximate most liked films: a {@link CountMinSketch} for the counts and a small ordered set
+ * of the top-K candidates. Memory is fixed by the sketch size and K, whatever the number of films.
+ * The sketch of another instance is merged from its {@link SketchSnapshot}.
+ */
+@Component
+public class HeavyHitters {
+    public static final String ERROR_HEADER = "X-Approximate-Error";
+    public static final String CONFIDENCE_HEADER = "X-Approximate-Confidence";
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::getEstimate)
+            .thenComparing(Entry::getFilmId, Comparator.reverseOrder());
+
+    private final CountMinSketch sketch;
+    private final int capacity;
+    private final Map<Integer, Long> estimates = new HashMap<>();
+    private final TreeSet<Entry> candidates = new TreeSet<>(ORDER);
+
+    public HeavyHitters(@Value("${filmorate.popular.sketch.width:2048}") int width,
+                        @Value("${filmorate.popular.sketch.depth:5}") int depth,
+                        @Value("${filmorate.popular.sketch.top-k:100}") int capacity) {
+        this.sketch = new CountMinSketch(width, depth, 0);
+        this.capacity = capacity;
+    }
+
+    public synchronized void rebuild(Map<Integer, Integer> likesCount) {
+        sketch.clear();
+        estimates.clear();
+        candidates.clear();
+        likesCount.forEach((filmId, count) -> {
+            if (count > 0) {
+                offer(filmId, sketch.add(filmId, count));
+            }
+        });
+    }
+
+    // the estimate is taken under the lock, so an older estimate never replaces a newer one of the same film
+    public synchronized void update(int filmId, int delta) {
+        offer(filmId, sketch.add(filmId, delta));
+    }
+
+    public void merge(HeavyHitters other) {
+        merge(other.snapshot());
+    }
+
+    /**
+     * Adds the counters of the snapshot and ranks the candidates of both sketches by the merged estimates.
+     *
+     * @throws IllegalArgumentException if the width, depth or seed of the snapshot differ
+     */
+    public synchronized void merge(SketchSnapshot snapshot) {
+        sketch.merge(new CountMinSketch(snapshot.getWidth(), snapshot.getDepth(), snapshot.getSeed(),
+                snapshot.getCounters(), snapshot.getTotal()));
+        Set<Integer> filmIds = new HashSet<>(estimates.keySet());
+        if (snapshot.getCandidates() != null) {
+            filmIds.addAll(snapshot.getCandidates());
+        }
+        estimates.clear();
+        candidates.clear();
+        filmIds.forEach(filmId -> offer(filmId, sketch.estimate(filmId)));
+    }
+
+    public synchronized SketchSnapshot snapshot() {
+        return new SketchSnapshot(sketch.getWidth(), sketch.getDepth(), sketch.getSeed(), sketch.getTotal(),
+                sketch.getCounters(), new ArrayList<>(estimates.keySet()));
+    }
+
+    public synchronized List<Integer> getTop(int count) {
+        return candidates.descendingSet().stream()
+                .limit(count)
+                .map(Entry::getFilmId)
+                .collect(Collectors.toList());
+    }
+
+    public long estimate(int filmId) {
+        return sketch.estimate(filmId);
+    }
+
+    public long getErrorBound() {
+        return sketch.getErrorBound();
+    }
+
+    public double getConfidence() {
+        return sketch.getConfidence();
+    }
+
+    private void offer(int filmId, long estimate) {
+        Long previous = estimates.get(filmId);
+        if (previous != null) {
+            candidates.remove(new Entry(previous, filmId));
+        } else if (estimates.size() >= capacity) {
+            Entry min = candidates.first();
+            if (estimate <= min.getEstimate()) {
+                return;
+            }
+            candidates.pollFirst();
+            estimates.remove(min.getFilmId());
+        }
+        if (estimate <= 0) {
+            estimates.remove(filmId);
+            return;
+        }
+        estimates.put(filmId, estimate);
+        candidates.add(new Entry(estimate, filmId));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Entry {
+        private final long estimate;
+        private final int filmId;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory leaderboard of films ordered by likes count (desc) and film id (asc),
+ * the same order as {@code FilmDao.getPopularFilms}.
+ * Updates are O(log n) per film, reads are a lock-free walk over the skip list.
+ */
+@Component
+public class PopularityIndex {
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::getLikes).reversed()
+            .thenComparingInt(Entry::getFilmId);
+
+    private final ConcurrentMap<Integer, Integer> likes = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(ORDER);
+
+    public void rebuild(Map<Integer, Integer> likesCount) {
+        likes.clear();
+        ranking.clear();
+        likesCount.forEach((filmId, count) -> {
+            likes.put(filmId, count);
+            ranking.add(new Entry(count, filmId));
+        });
+    }
+
+    public void addFilm(int filmId) {
+        update(filmId, 0);
+    }
+
+    public void update(int filmId, int delta) {
+        likes.compute(filmId, (id, current) -> {
+            int previous = current == null ? 0 : current;
+            int next = Math.max(previous + delta, 0);
+            // add before remove so that readers never miss the film, duplicates are skipped in getTop
+            ranking.add(new Entry(next, id));
+            if (current != null && previous != next) {
+                ranking.remove(new Entry(previous, id));
+            }
+            return next;
+        });
+    }
+
+    public List<Integer> getTop(int count) {
+        List<Integer> top = new ArrayList<>(Math.min(count, likes.size()));
+        Set<Integer> seen = new HashSet<>();
+        for (Entry entry : ranking) {
+            if (top.size() >= count) {
+                break;
+            }
+            if (seen.add(entry.getFilmId())) {
+                top.add(entry.getFilmId());
+            }
+        }
+        return top;
+    }
+
+    public int getLikes(int filmId) {
+        return likes.getOrDefault(filmId, 0);
+    }
+
+    public int size() {
+        return likes.size();
+    }
+
+    @Value
+    private static class Entry {
+        int likes;
+        int filmId;
+    }
+}
@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.HourlyLikes;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-film ring buffers of hourly like counters covering the last {@link #MAX_WINDOW_HOURS} hours.
+ * Ranking sums at most one bucket per hour of the window for every film liked within the max window,
+ * so its cost does not depend on the total number of likes.
+ */
+@Component
+public class TrendingIndex {
+    public static final int MAX_WINDOW_HOURS = 168;
+
+    private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+    private static final Comparator<Map.Entry<Integer, Integer>> ORDER =
+            Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey());
+
+    private final ConcurrentMap<Integer, Buckets> films = new ConcurrentHashMap<>();
+    private final Clock clock;
+
+    public TrendingIndex() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public TrendingIndex(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void rebuild(List<HourlyLikes> hourlyLikes) {
+        films.clear();
+        long oldestHour = currentHour() - MAX_WINDOW_HOURS + 1;
+        hourlyLikes.forEach(likes -> {
+            long hour = toHour(likes.getHour());
+            if (hour >= oldestHour) {
+                films.computeIfAbsent(likes.getFilmId(), id -> new Buckets())
+                        .add(hour, likes.getCount());
+            }
+        });
+    }
+
+    public LocalDateTime getOldestHour() {
+        long hour = currentHour() - MAX_WINDOW_HOURS + 1;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(hour * HOUR_MILLIS), clock.getZone());
+    }
+
+    public void like(int filmId) {
+        long hour = currentHour();
+        films.compute(filmId, (id, buckets) -> {
+            Buckets current = buckets == null ? new Buckets() : buckets;
+            current.add(hour, 1);
+            return current;
+        });
+    }
+
+    /**
+     * Takes back a like made at {@code likedAt} from the bucket of its hour, likes older than the max window are
+     * not counted anymore.
+     */
+    public void unlike(int filmId, LocalDateTime likedAt) {
+        if (likedAt.isBefore(getOldestHour())) {
+            return;
+        }
+        long hour = toHour(likedAt);
+        films.computeIfPresent(filmId, (id, buckets) -> {
+            buckets.remove(hour);
+            return buckets;
+        });
+    }
+
+    public List<Integer> getTop(int windowHours, int count) {
+        long toHour = currentHour();
+        long fromHour = toHour - windowHours + 1;
+        PriorityQueue<Map.Entry<Integer, Integer>> top = new PriorityQueue<>(ORDER.reversed());
+        films.forEach((filmId, buckets) -> {
+            int score = buckets.sum(fromHour, toHour);
+            if (score > 0) {
+                top.add(Map.entry(filmId, score));
+                if (top.size() > count) {
+                    top.poll();
+                }
+            }
+        });
+        List<Map.Entry<Integer, Integer>> sorted = new ArrayList<>(top);
+        sorted.sort(ORDER);
+        List<Integer> filmIds = new ArrayList<>(sorted.size());
+        sorted.forEach(entry -> filmIds.add(entry.getKey()));
+        return filmIds;
+    }
+
+    @Scheduled(fixedRate = 10, timeUnit = TimeUnit.MINUTES)
+    public void expire() {
+        long oldestHour = currentHour() - MAX_WINDOW_HOURS + 1;
+        films.keySet().forEach(filmId ->
+                films.computeIfPresent(filmId, (id, buckets) -> buckets.isExpired(oldestHour) ? null : buckets));
+    }
+
+    public int size() {
+        return films.size();
+    }
+
+    private long currentHour() {
+        return clock.millis() / HOUR_MILLIS;
+    }
+
+    private long toHour(LocalDateTime dateTime) {
+        return dateTime.atZone(clock.getZone()).toInstant().toEpochMilli() / HOUR_MILLIS;
+    }
+
+    private static class Buckets {
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(MAX_WINDOW_HOURS);
+        private final AtomicLongArray hours = new AtomicLongArray(MAX_WINDOW_HOURS);
+
+        // mutations are serialized by ConcurrentHashMap.compute for the film
+        void add(long hour, int delta) {
+            int index = (int) (hour % MAX_WINDOW_HOURS);
+            if (hours.get(index) != hour) {
+                counts.set(index, 0);
+                hours.set(index, hour);
+            }
+            counts.addAndGet(index, delta);
+        }
+
+        void remove(long hour) {
+            int index = (int) (hour % MAX_WINDOW_HOURS);
+            if (hours.get(index) == hour && counts.get(index) > 0) {
+                counts.decrementAndGet(index);
+            }
+        }
+
+        int sum(long fromHour, long toHour) {
+            int sum = 0;
+            for (long hour = Math.max(fromHour, toHour - MAX_WINDOW_HOURS + 1); hour <= toHour; hour++) {
+                int index = (int) (hour % MAX_WINDOW_HOURS);
+                if (hours.get(index) == hour) {
+                    sum += counts.get(index);
+                }
+            }
+            return sum;
+        }
+
+        boolean isExpired(long oldestHour) {
+            for (int i = 0; i < MAX_WINDOW_HOURS; i++) {
+                if (hours.get(i) >= oldestHour && counts.get(i) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+@Component
+@ConditionalOnProperty(value = "filmorate.jdbc.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class DataSourceInstrumentation implements BeanPostProcessor {
+    private final ObjectProvider<StatementMetrics> statementMetrics;
+
+    public DataSourceInstrumentation(ObjectProvider<StatementMetrics> statementMetrics) {
+        this.statementMetrics = statementMetrics;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !InstrumentedDataSource.isInstrumented(bean)) {
+            return InstrumentedDataSource.wrap((DataSource) bean, statementMetrics.getObject());
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps a {@link DataSource} so that every statement executed through its connections,
+ * and so through every {@code JdbcTemplate} built on it, is timed and recorded in {@link StatementMetrics}.
+ * Statements slower than the threshold are logged with their bound parameters.
+ */
+@Slf4j
+public final class InstrumentedDataSource {
+
+    private InstrumentedDataSource() {
+    }
+
+    public static DataSource wrap(DataSource dataSource, StatementMetrics metrics) {
+        return proxy(DataSource.class, dataSource, (method, args, invocation) -> {
+            Object result = invocation.proceed();
+            return "getConnection".equals(method.getName()) ? wrapConnection((Connection) result, metrics) : result;
+        });
+    }
+
+    public static boolean isInstrumented(Object dataSource) {
+        return Proxy.isProxyClass(dataSource.getClass())
+                && Proxy.getInvocationHandler(dataSource) instanceof Handler;
+    }
+
+    private static Connection wrapConnection(Connection connection, StatementMetrics metrics) {
+        return proxy(Connection.class, connection, (method, args, invocation) -> {
+            Object result = invocation.proceed();
+            String name = method.getName();
+            if (result instanceof Statement && (name.startsWith("prepare") || "createStatement".equals(name))) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return wrapStatement(method.getReturnType(), (Statement) result, sql, metrics);
+            }
+            return result;
+        });
+    }
+
+    private static Object wrapStatement(Class<?> type, Statement statement, String preparedSql, StatementMetrics metrics) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+        int[] batchSize = new int[1];
+        return proxy(type, statement, (method, args, invocation) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                return invocation.proceed();
+            }
+            if ("clearParameters".equals(name)) {
+                parameters.clear();
+                return invocation.proceed();
+            }
+            if ("addBatch".equals(name)) {
+                batchSize[0]++;
+                return invocation.proceed();
+            }
+            if (!name.startsWith("execute")) {
+                return invocation.proceed();
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            String statementName = sql == null ? "other" : StatementMetrics.statementName(sql);
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invocation.proceed();
+                failed = false;
+                metrics.addRows(statementName, countUpdatedRows(result));
+                return result instanceof ResultSet ? wrapResultSet((ResultSet) result, statementName, metrics) : result;
+            } finally {
+                long nanos = System.nanoTime() - start;
+                metrics.record(statementName, nanos, failed);
+                if (metrics.isSlow(nanos)) {
+                    log.warn("slow statement {} took {} ms, batch size {}, parameters {}: {}", statementName,
+                            TimeUnit.NANOSECONDS.toMillis(nanos), batchSize[0], parameters, sql);
+                }
+                batchSize[0] = 0;
+            }
+        });
+    }
+
+    private static ResultSet wrapResultSet(ResultSet resultSet, String statementName, StatementMetrics metrics) {
+        long[] rows = new long[1];
+        boolean[] closed = new boolean[1];
+        return proxy(ResultSet.class, resultSet, (method, args, invocation) -> {
+            Object result = invocation.proceed();
+            if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                rows[0]++;
+            } else if ("close".equals(method.getName()) && !closed[0]) {
+                closed[0] = true;
+                metrics.addRows(statementName, rows[0]);
+            }
+            return result;
+        });
+    }
+
+    private static long countUpdatedRows(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(count, 0);
+            }
+        } else if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, Interceptor interceptor) {
+        return (T) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class[]{type},
+                new Handler(target, interceptor));
+    }
+
+    private interface Invocation {
+        Object proceed() throws Throwable;
+    }
+
+    private interface Interceptor {
+        Object intercept(Method method, Object[] args, Invocation invocation) throws Throwable;
+    }
+
+    private static class Handler implements InvocationHandler {
+        private final Object target;
+        private final Interceptor interceptor;
+
+        private Handler(Object target, Interceptor interceptor) {
+            this.target = target;
+            this.interceptor = interceptor;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            }
+            if ("unwrap".equals(method.getName()) && args[0] instanceof Class && ((Class<?>) args[0]).isInstance(target)) {
+                return target;
+            }
+            return interceptor.intercept(method, args, () -> {
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            });
+        }
+    }
+}
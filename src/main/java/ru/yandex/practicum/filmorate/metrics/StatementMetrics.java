@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.StatementStats;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Call count, error count, row count and latency histogram per named SQL statement.
+ * A statement is named by a leading block comment holding its name, e.g. {@code film.getPopular};
+ * unnamed statements are grouped by verb and table, e.g. {@code insert.users}.
+ */
+@Component
+public class StatementMetrics {
+    private static final Pattern NAME_PATTERN = Pattern.compile("^\\s*/\\*\\s*([\\w.\\-]+)\\s*\\*/");
+    private static final Pattern TABLE_PATTERN = Pattern.compile(
+            "^\\s*(insert\\s+into|update|delete\\s+from|merge\\s+into|select\\b.*?\\bfrom)\\s+\"?(\\w+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final long slowThresholdNanos;
+    private final ConcurrentMap<String, Stats> statements = new ConcurrentHashMap<>();
+
+    public StatementMetrics(@Value("${filmorate.jdbc.slow-statement-threshold-ms:200}") long slowThresholdMs) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+    }
+
+    public void record(String statement, long nanos, boolean failed) {
+        Stats stats = statements.computeIfAbsent(statement, name -> new Stats());
+        stats.calls.increment();
+        if (failed) {
+            stats.errors.increment();
+        }
+        stats.latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void addRows(String statement, long rows) {
+        statements.computeIfAbsent(statement, name -> new Stats()).rows.add(rows);
+    }
+
+    public boolean isSlow(long nanos) {
+        return nanos >= slowThresholdNanos;
+    }
+
+    public List<StatementStats> getStats() {
+        return statements.entrySet()
+                .stream()
+                .map(entry -> {
+                    Stats stats = entry.getValue();
+                    return new StatementStats(entry.getKey(),
+                            stats.calls.sum(),
+                            stats.errors.sum(),
+                            stats.rows.sum(),
+                            toMillis(stats.latency.getPercentile(0.5)),
+                            toMillis(stats.latency.getPercentile(0.99)),
+                            toMillis(stats.latency.getPercentile(0.999)),
+                            toMillis(stats.latency.getMax()));
+                })
+                .sorted(Comparator.comparing(StatementStats::getStatement))
+                .collect(Collectors.toList());
+    }
+
+    public static String statementName(String sql) {
+        Matcher name = NAME_PATTERN.matcher(sql);
+        if (name.find()) {
+            return name.group(1);
+        }
+        Matcher table = TABLE_PATTERN.matcher(sql);
+        if (table.find()) {
+            return table.group(1).split("\\s+")[0].toLowerCase() + "." + table.group(2).toLowerCase();
+        }
+        return "other";
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static class Stats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
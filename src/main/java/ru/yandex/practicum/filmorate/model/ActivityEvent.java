@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityEvent {
+    private long offset;
+
+    private ActivityType type;
+
+    private int userId;
+
+    // film id for likes, friend id for friends
+    private int targetId;
+
+    private Instant time;
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Codes are stored in the activity log, so they must never change.
+ */
+@Getter
+@AllArgsConstructor
+public enum ActivityType {
+    LIKE(1),
+    UNLIKE(2),
+    FRIEND_ADD(3),
+    FRIEND_REMOVE(4);
+
+    private final int code;
+
+    public static ActivityType of(int code) {
+        for (ActivityType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+@Value
+public class CacheStats {
+    long size;
+
+    long hitCount;
+
+    long missCount;
+
+    double hitRate;
+
+    long evictionCount;
+}
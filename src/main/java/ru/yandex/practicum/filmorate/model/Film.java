@@ -42,14 +42,4 @@ public class Film {
     public int getLikes() {
         return likedUsers.size();
     }
-
-    public Map<String, Object> toInsertMap() {
-        Map<String, Object> map = new HashMap<>();
-        map.put("name", name);
-        map.put("description", description);
-        map.put("release_date", releaseDate);
-        map.put("duration", duration);
-        map.put("rating_id", mpa.getId());
-        return map;
-    }
 }
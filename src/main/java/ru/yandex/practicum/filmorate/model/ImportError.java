@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+@Value
+public class ImportError {
+    long line;
+
+    String message;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.nio.file.Path;
+
+public enum ImportFormat {
+    NDJSON,
+    CSV;
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    public static ImportFormat of(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : NDJSON;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class ImportReport {
+    long imported;
+
+    long failed;
+
+    long durationMs;
+
+    long rowsPerSecond;
+
+    List<ImportError> errors;
+
+    boolean errorsTruncated;
+}
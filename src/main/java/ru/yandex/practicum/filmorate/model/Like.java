@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Positive;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Like {
+    @Positive(message = "filmId should be positive")
+    private int filmId;
+
+    @Positive(message = "userId should be positive")
+    private int userId;
+}
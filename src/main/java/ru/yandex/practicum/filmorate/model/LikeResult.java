@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LikeResult {
+    private int filmId;
+
+    private int userId;
+
+    private Status status;
+
+    public enum Status {
+        CREATED,
+        ALREADY_EXISTS,
+        FILM_NOT_FOUND,
+        USER_NOT_FOUND
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class Page<T> {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    public static final int DEFAULT_SIZE = 100;
+
+    public static final int MAX_SIZE = 1000;
+
+    private List<T> items;
+
+    private Integer nextCursor;
+}
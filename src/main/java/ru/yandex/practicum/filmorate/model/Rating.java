@@ -3,21 +3,19 @@ package ru.yandex.practicum.filmorate.model;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 import lombok.extern.jackson.Jacksonized;
 
 import javax.validation.constraints.NotNull;
 
-@Data
+@Value
 @Jacksonized
 @Builder
 @AllArgsConstructor
-@NoArgsConstructor
 public class Rating {
     @NotNull
-    private int id;
+    int id;
 
     @JsonInclude(JsonInclude.Include.NON_NULL)
-    private String name;
+    String name;
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Counters of the approximate most liked films of one instance, rows of {@code width} counters one after another.
+ * Only a sketch with the same width, depth and seed can be merged into another.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SketchSnapshot {
+    private int width;
+
+    private int depth;
+
+    private long seed;
+
+    private long total;
+
+    private long[] counters;
+
+    private List<Integer> candidates;
+}
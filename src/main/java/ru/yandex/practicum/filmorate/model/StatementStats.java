@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+@Value
+public class StatementStats {
+    String statement;
+
+    long calls;
+
+    long errors;
+
+    long rows;
+
+    double p50Ms;
+
+    double p99Ms;
+
+    double p999Ms;
+
+    double maxMs;
+}
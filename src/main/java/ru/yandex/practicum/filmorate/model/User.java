@@ -1,19 +1,11 @@
 package ru.yandex.practicum.filmorate.model;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.jackson.Jacksonized;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 
 @Data
 @Builder
@@ -33,17 +25,4 @@ public class User {
     @PastOrPresent(message = "birthday can not be in the future")
     @NotNull(message = "birthday can not be null")
     private LocalDate birthday;
-
-    @JsonIgnore
-    @Builder.Default
-    private Set<Integer> friends = new HashSet<>();
-
-    public Map<String, Object> toMap() {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
-        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        return objectMapper.convertValue(this, new TypeReference<>() {
-        });
-    }
-
 }
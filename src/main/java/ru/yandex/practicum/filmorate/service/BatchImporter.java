@@ -0,0 +1,219 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.ImportError;
+import ru.yandex.practicum.filmorate.model.ImportFormat;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Imports rows from a stream, one row per line. Rows are validated one by one and saved in batches, every batch is
+ * committed in its own transaction, so only the current batch and a capped list of errors are kept in memory.
+ */
+@Slf4j
+public abstract class BatchImporter<T> {
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final Class<T> type;
+
+    private final Validator validator;
+
+    private final ObjectMapper objectMapper;
+
+    private final int batchSize;
+
+    protected BatchImporter(Class<T> type, Validator validator, ObjectMapper objectMapper, int batchSize) {
+        this.type = type;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    public ImportReport importFrom(InputStream input, ImportFormat format) throws IOException {
+        long start = System.nanoTime();
+        Progress progress = new Progress();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Map<String, Integer> columns = format == ImportFormat.CSV ? readCsvHeader(reader) : Map.of();
+        long lineNumber = format == ImportFormat.CSV ? 1 : 0;
+        List<T> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                T row = format == ImportFormat.CSV ? parseCsvRow(new CsvRow(columns, parseCsvLine(line))) : parseJsonRow(line);
+                validate(row);
+                batch.add(row);
+                batchLines.add(lineNumber);
+            } catch (ValidationException | ObjectNotFoundException e) {
+                progress.fail(lineNumber, e.getMessage());
+            }
+            if (batch.size() >= batchSize) {
+                save(batch, batchLines, progress);
+            }
+        }
+        save(batch, batchLines, progress);
+
+        long durationMs = Math.max((System.nanoTime() - start) / 1_000_000, 1);
+        long rowsPerSecond = progress.imported * 1000 / durationMs;
+        log.debug("imported {} rows of {}, {} rows failed in {} ms ({} rows/s)",
+                progress.imported, type.getSimpleName(), progress.failed, durationMs, rowsPerSecond);
+        return new ImportReport(progress.imported, progress.failed, durationMs, rowsPerSecond,
+                progress.errors, progress.failed > progress.errors.size());
+    }
+
+    protected abstract List<String> getRequiredCsvColumns();
+
+    protected abstract T parseCsvRow(CsvRow row);
+
+    /**
+     * Saves the batch in one transaction and returns errors of the rows that were skipped, keyed by their index in
+     * the batch.
+     */
+    protected abstract Map<Integer, String> saveBatch(List<T> batch);
+
+    protected void validate(T row) {
+        Set<ConstraintViolation<T>> violations = validator.validate(row);
+        if (!violations.isEmpty()) {
+            throw new ValidationException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+    }
+
+    private void save(List<T> batch, List<Long> batchLines, Progress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            Map<Integer, String> skipped = saveBatch(batch);
+            skipped.forEach((index, message) -> progress.fail(batchLines.get(index), message));
+            progress.imported += batch.size() - skipped.size();
+            log.debug("imported {} rows of {} so far", progress.imported, type.getSimpleName());
+        } catch (DataAccessException e) {
+            String message = "batch is rolled back: " + e.getMostSpecificCause().getMessage();
+            batchLines.forEach(line -> progress.fail(line, message));
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private T parseJsonRow(String line) {
+        try {
+            return objectMapper.readValue(line, type);
+        } catch (JsonProcessingException e) {
+            throw new ValidationException(e.getOriginalMessage());
+        }
+    }
+
+    private Map<String, Integer> readCsvHeader(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            return Map.of();
+        }
+        List<String> names = parseCsvLine(header.startsWith("\uFEFF") ? header.substring(1) : header);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim(), i);
+        }
+        List<String> missing = getRequiredCsvColumns().stream()
+                .filter(column -> !columns.containsKey(column))
+                .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            throw new ValidationException("csv header misses columns " + missing);
+        }
+        return columns;
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new ValidationException("quoted value is not closed");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    protected static class CsvRow {
+        private final Map<String, Integer> columns;
+
+        private final List<String> values;
+
+        private CsvRow(Map<String, Integer> columns, List<String> values) {
+            if (values.size() < columns.size()) {
+                throw new ValidationException("expected " + columns.size() + " columns but found " + values.size());
+            }
+            this.columns = columns;
+            this.values = values;
+        }
+
+        protected String get(String column) {
+            Integer index = columns.get(column);
+            return index == null ? null : values.get(index);
+        }
+
+        protected int getInt(String column) {
+            String value = get(column);
+            try {
+                return Integer.parseInt(value == null ? "" : value.trim());
+            } catch (NumberFormatException e) {
+                throw new ValidationException(column + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Progress {
+        private final List<ImportError> errors = new ArrayList<>();
+
+        private long imported;
+
+        private long failed;
+
+        private void fail(long line, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ImportError(line, message));
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import javax.validation.Validator;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+public class FilmImportService extends BatchImporter<Film> {
+    private static final List<String> REQUIRED_CSV_COLUMNS = List.of("name", "description", "releaseDate", "duration", "mpa");
+
+    private final FilmService filmService;
+
+    private final GenreService genreService;
+
+    private final RatingService ratingService;
+
+    public FilmImportService(FilmService filmService, GenreService genreService, RatingService ratingService,
+                             Validator validator, ObjectMapper objectMapper,
+                             @Value("${filmorate.films.import.batch-size:1000}") int batchSize) {
+        super(Film.class, validator, objectMapper, batchSize);
+        this.filmService = filmService;
+        this.genreService = genreService;
+        this.ratingService = ratingService;
+    }
+
+    @Override
+    protected List<String> getRequiredCsvColumns() {
+        return REQUIRED_CSV_COLUMNS;
+    }
+
+    @Override
+    protected Film parseCsvRow(CsvRow row) {
+        Film.FilmBuilder film = Film.builder()
+                .name(row.get("name"))
+                .description(row.get("description"))
+                .duration(row.getInt("duration"))
+                .mpa(new Rating(row.getInt("mpa"), null));
+        try {
+            String releaseDate = row.get("releaseDate");
+            film.releaseDate(releaseDate == null || releaseDate.isBlank() ? null : LocalDate.parse(releaseDate.trim()));
+        } catch (DateTimeParseException e) {
+            throw new ValidationException("releaseDate: " + e.getMessage());
+        }
+        String genres = row.get("genres");
+        if (genres != null && !genres.isBlank()) {
+            LinkedHashSet<Genre> filmGenres = new LinkedHashSet<>();
+            for (String genreId : genres.split("\\|")) {
+                try {
+                    filmGenres.add(new Genre(Integer.parseInt(genreId.trim()), null));
+                } catch (NumberFormatException e) {
+                    throw new ValidationException("genres: " + e.getMessage());
+                }
+            }
+            film.genres(filmGenres);
+        }
+        return film.build();
+    }
+
+    @Override
+    protected void validate(Film film) {
+        super.validate(film);
+        if (film.getReleaseDate() == null) {
+            throw new ValidationException("releaseDate: must not be null");
+        }
+        filmService.checkFilmMaxDate(film);
+        film.setMpa(ratingService.get(film.getMpa().getId()));
+        if (film.getGenres() != null) {
+            film.setGenres(film.getGenres().stream()
+                    .map(genre -> genreService.get(genre.getId()))
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
+        }
+    }
+
+    @Override
+    protected Map<Integer, String> saveBatch(List<Film> batch) {
+        filmService.addAll(batch);
+        return Map.of();
+    }
+}
@@ -2,17 +2,44 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
 import ru.yandex.practicum.filmorate.dao.interfaces.GenreDao;
 import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
 import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.index.FilmAutocomplete;
+import ru.yandex.practicum.filmorate.index.FilmRecommender;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.HeavyHitters;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LikeResult;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.PopularFilm;
+import ru.yandex.practicum.filmorate.model.SketchSnapshot;
 
+import javax.annotation.PostConstruct;
+import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -23,18 +50,94 @@ public class FilmService {
 
     private final GenreDao genreDao;
 
+    private final PopularityIndex popularityIndex;
+
+    private final TrendingIndex trendingIndex;
+
+    private final HeavyHitters heavyHitters;
+
+    private final FilmRecommender filmRecommender;
+
+    private final FilmSearchIndex filmSearchIndex;
+
+    private final FilmAutocomplete filmAutocomplete;
+
+    private final ApplicationEventPublisher eventPublisher;
+
     private static final LocalDate MAX_DATE = LocalDate.of(1895, 12, 12);
 
-    public FilmService(@Qualifier("FilmDaoImpl") FilmDao filmDao, @Qualifier("UserDaoImpl") UserDao userDao, @Qualifier("GenreDaoImpl") GenreDao genreDao) {
+    // 23506 is how H2 reports a missing parent row
+    private static final Set<String> FOREIGN_KEY_STATES = Set.of("23503", "23506");
+
+    private static final Pattern WINDOW_PATTERN = Pattern.compile("(\\d{1,4})([hd])");
+
+    public FilmService(@Qualifier("FilmDaoImpl") FilmDao filmDao, @Qualifier("UserDaoImpl") UserDao userDao, @Qualifier("GenreDaoImpl") GenreDao genreDao,
+                       PopularityIndex popularityIndex, TrendingIndex trendingIndex, HeavyHitters heavyHitters,
+                       FilmRecommender filmRecommender, FilmSearchIndex filmSearchIndex, FilmAutocomplete filmAutocomplete,
+                       ApplicationEventPublisher eventPublisher) {
         this.filmDao = filmDao;
         this.userDao = userDao;
         this.genreDao = genreDao;
+        this.popularityIndex = popularityIndex;
+        this.trendingIndex = trendingIndex;
+        this.heavyHitters = heavyHitters;
+        this.filmRecommender = filmRecommender;
+        this.filmSearchIndex = filmSearchIndex;
+        this.filmAutocomplete = filmAutocomplete;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void initPopularityIndex() {
+        Map<Integer, Integer> likesCount = filmDao.getLikesCount();
+        popularityIndex.rebuild(likesCount);
+        heavyHitters.rebuild(likesCount);
+        log.debug("popularity index is loaded with {} films", popularityIndex.size());
+    }
+
+    @PostConstruct
+    public void initTrendingIndex() {
+        trendingIndex.rebuild(filmDao.getHourlyLikesSince(trendingIndex.getOldestHour()));
+        log.debug("trending index is loaded with {} films", trendingIndex.size());
+    }
+
+    @PostConstruct
+    public void rebuildRecommendations() {
+        filmRecommender.rebuild(filmDao::streamLikes);
+        log.debug("film recommendations are built for {} films", filmRecommender.size());
+    }
+
+    @PostConstruct
+    public void rebuildSearchIndex() {
+        filmSearchIndex.rebuild(filmDao::streamAll);
+        log.debug("search index is built for {} films", filmSearchIndex.size());
+    }
+
+    @PostConstruct
+    public void rebuildAutocomplete() {
+        Map<Integer, Integer> likesCount = filmDao.getLikesCount();
+        filmAutocomplete.rebuild(filmDao::streamAll, filmId -> likesCount.getOrDefault(filmId, 0));
+        log.debug("autocomplete is built for {} films", filmAutocomplete.size());
     }
 
     public List<Film> getAll() {
         return filmDao.getAll();
     }
 
+    public void streamAll(Consumer<Film> consumer) {
+        log.debug("stream all films");
+        filmDao.streamAll(consumer);
+    }
+
+    public Page<Film> getPage(int afterId, int limit) {
+        List<Film> films = filmDao.getPage(afterId, limit + 1);
+        if (films.size() <= limit) {
+            return new Page<>(films, null);
+        }
+        List<Film> items = films.subList(0, limit);
+        return new Page<>(items, items.get(limit - 1).getId());
+    }
+
     public Film getFilm(int filmId) {
         return filmDao.get(filmId)
                 .orElseThrow(() -> new ObjectNotFoundException("Film is not found"));
@@ -46,43 +149,272 @@ public class FilmService {
         log.debug("add new film: {}", film);
         Film addedFilm = filmDao.add(film);
         film.setId(addedFilm.getId());
+        afterCommit(() -> {
+            popularityIndex.addFilm(film.getId());
+            filmSearchIndex.index(film);
+            filmAutocomplete.index(film);
+        });
         return genreDao.addFilmGenre(film);
     }
 
+    @Transactional
+    public List<Film> addAll(List<Film> films) {
+        log.debug("add {} films in batch", films.size());
+        films.forEach(this::checkFilmMaxDate);
+        filmDao.addAll(films);
+        genreDao.addFilmGenres(films);
+        afterCommit(() -> {
+            films.forEach(film -> {
+                popularityIndex.addFilm(film.getId());
+                filmAutocomplete.index(film);
+            });
+            filmSearchIndex.index(films);
+        });
+        return films;
+    }
+
     @Transactional
     public Film update(Film film) {
         checkFilmMaxDate(film);
         log.debug("update film: {}", film);
         filmDao.update(film)
                 .orElseThrow(() -> new ObjectNotFoundException("Film is not found"));
+        afterCommit(() -> {
+            filmSearchIndex.index(film);
+            filmAutocomplete.index(film);
+        });
         genreDao.deleteFilmGenre(film);
         return genreDao.addFilmGenre(film);
     }
 
+    @Transactional
     public Film addLike(int filmId, int userId) {
+        like(filmId, userId);
+        Film film = getFilm(filmId);
+        film.getLikedUsers().add(userId);
+        return film;
+    }
+
+    @Transactional
+    public void like(int filmId, int userId) {
         log.debug("add like by userId = {} to film with id = {}", userId, filmId);
-        if (userDao.get(userId).isEmpty()) {
-            throw new ObjectNotFoundException("User not found");
+        boolean created;
+        try {
+            created = filmDao.saveLike(filmId, userId);
+        } catch (DuplicateKeyException e) {
+            // a concurrent like of the same pair won the insert
+            created = false;
+        } catch (DataIntegrityViolationException e) {
+            if (!isMissingTarget(e)) {
+                throw e;
+            }
+            throw new ObjectNotFoundException("Wrong film or userId is provided");
+        }
+        if (created) {
+            eventPublisher.publishEvent(new LikesChangedEvent(this, List.of(new Like(filmId, userId)), false));
         }
-        return filmDao.addLike(filmId, userId)
-                .orElseThrow(() -> new ObjectNotFoundException("Wrong film or userId is provided"));
     }
 
+    @Transactional
     public void deleteLike(int filmId, int userId) {
         log.debug("delete like by userId = {} from film with id = {}", userId, filmId);
+        Optional<LocalDateTime> likedAt = filmDao.removeLike(filmId, userId);
+        if (likedAt.isPresent()) {
+            Like like = new Like(filmId, userId);
+            eventPublisher.publishEvent(new LikesChangedEvent(this, List.of(like), true, Map.of(like, likedAt.get())));
+            return;
+        }
         if (userDao.get(userId).isEmpty()) {
             throw new ObjectNotFoundException("User not found");
         }
-        filmDao.deleteLike(filmId, userId)
-                .orElseThrow(() -> new ObjectNotFoundException("Wrong film or userId is presented"));
+        if (filmDao.getExistingIds(List.of(filmId)).isEmpty()) {
+            throw new ObjectNotFoundException("Wrong film or userId is presented");
+        }
+    }
+
+    @Transactional
+    public List<LikeResult> addLikes(List<Like> likes) {
+        log.debug("add {} likes in batch", likes.size());
+        Set<Integer> filmIds = filmDao.getExistingIds(likes.stream()
+                .map(Like::getFilmId)
+                .collect(Collectors.toSet()));
+        Set<Integer> userIds = userDao.getExistingIds(likes.stream()
+                .map(Like::getUserId)
+                .collect(Collectors.toSet()));
+        List<Like> validLikes = likes.stream()
+                .filter(like -> filmIds.contains(like.getFilmId()) && userIds.contains(like.getUserId()))
+                .collect(Collectors.toList());
+        Iterator<Boolean> created = filmDao.saveLikes(validLikes).iterator();
+
+        List<LikeResult> results = new ArrayList<>(likes.size());
+        List<Like> createdLikes = new ArrayList<>();
+        for (Like like : likes) {
+            LikeResult.Status status;
+            if (!filmIds.contains(like.getFilmId())) {
+                status = LikeResult.Status.FILM_NOT_FOUND;
+            } else if (!userIds.contains(like.getUserId())) {
+                status = LikeResult.Status.USER_NOT_FOUND;
+            } else if (created.next()) {
+                status = LikeResult.Status.CREATED;
+                createdLikes.add(like);
+            } else {
+                status = LikeResult.Status.ALREADY_EXISTS;
+            }
+            results.add(new LikeResult(like.getFilmId(), like.getUserId(), status));
+        }
+        if (!createdLikes.isEmpty()) {
+            eventPublisher.publishEvent(new LikesChangedEvent(this, createdLikes, false));
+        }
+        return results;
+    }
+
+    /**
+     * Applies committed likes to the in-memory indexes before any other listener reads them. Events of another
+     * service instance, like the one a test configuration builds next to this one, belong to its own indexes.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLikesChanged(LikesChangedEvent event) {
+        if (event.getSource() != this) {
+            return;
+        }
+        int delta = event.isRemoved() ? -1 : 1;
+        for (Like like : event.getLikes()) {
+            popularityIndex.update(like.getFilmId(), delta);
+            heavyHitters.update(like.getFilmId(), delta);
+            filmAutocomplete.updateLikes(like.getFilmId(), delta);
+            if (event.isRemoved()) {
+                LocalDateTime likedAt = event.getLikedAt().get(like);
+                if (likedAt != null) {
+                    trendingIndex.unlike(like.getFilmId(), likedAt);
+                }
+                filmRecommender.unlike(like.getUserId(), like.getFilmId());
+            } else {
+                trendingIndex.like(like.getFilmId());
+                filmRecommender.like(like.getUserId(), like.getFilmId());
+            }
+        }
     }
 
     public List<Film> getPopularFilms(int count) {
         log.debug("Get popular films with limit = {}", count);
-        return filmDao.getPopularFilms(count);
+        return getFilms(popularityIndex.getTop(count));
+    }
+
+    public List<PopularFilm> getLeaderboard(int count) {
+        return getPopularFilms(count).stream()
+                .map(film -> new PopularFilm(film.getId(), film.getName(), popularityIndex.getLikes(film.getId())))
+                .collect(Collectors.toList());
+    }
+
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        if (genreId == null && year == null) {
+            return getPopularFilms(count);
+        }
+        log.debug("Get popular films with limit = {}, genreId = {}, year = {}", count, genreId, year);
+        if (genreId != null && genreDao.get(genreId).isEmpty()) {
+            throw new ObjectNotFoundException("Genre is not found");
+        }
+        return filmDao.getPopularFilms(count, genreId, year);
+    }
+
+    public List<Film> getApproximatePopularFilms(int count) {
+        log.debug("Get approximate popular films with limit = {}", count);
+        return getFilms(heavyHitters.getTop(count));
+    }
+
+    public long getApproximateErrorBound() {
+        return heavyHitters.getErrorBound();
+    }
+
+    public double getApproximateConfidence() {
+        return heavyHitters.getConfidence();
+    }
+
+    public SketchSnapshot getSketch() {
+        return heavyHitters.snapshot();
+    }
+
+    public void mergeSketch(SketchSnapshot snapshot) {
+        log.debug("merge sketch of width = {}, depth = {}, seed = {}", snapshot.getWidth(), snapshot.getDepth(), snapshot.getSeed());
+        try {
+            heavyHitters.merge(snapshot);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e.getMessage());
+        }
+    }
+
+    public List<Film> getRecommendations(int userId, int limit) {
+        log.debug("Get {} recommended films for user with id = {}", limit, userId);
+        if (userDao.get(userId).isEmpty()) {
+            throw new ObjectNotFoundException("User not found");
+        }
+        return getFilms(filmRecommender.recommend(userId, limit));
+    }
+
+    public List<Film> searchFilms(String query, int limit, boolean boostPopular) {
+        log.debug("Search {} films by query = {}, boostPopular = {}", limit, query, boostPopular);
+        return getFilms(boostPopular ? filmSearchIndex.search(query, limit, popularityIndex::getLikes)
+                : filmSearchIndex.search(query, limit));
+    }
+
+    public List<FilmSuggestion> autocomplete(String prefix, int limit) {
+        log.debug("Autocomplete {} films by prefix = {}", limit, prefix);
+        return filmAutocomplete.complete(prefix, limit);
+    }
+
+    public List<Film> getTrendingFilms(String window, int count) {
+        log.debug("Get trending films for window = {} with limit = {}", window, count);
+        return getFilms(trendingIndex.getTop(parseWindowHours(window), count));
+    }
+
+    @Transactional
+    public void rebuildLikesCount() {
+        log.debug("rebuild films likes count");
+        filmDao.rebuildLikesCount();
+    }
+
+    private List<Film> getFilms(List<Integer> filmIds) {
+        return filmDao.getByIds(filmIds);
+    }
+
+    /**
+     * Runs the action once the current transaction commits, so in-memory indexes never serve a rolled back film.
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * The in-memory and write-behind DAOs report a missing film or user without a SQL cause.
+     */
+    private static boolean isMissingTarget(DataIntegrityViolationException e) {
+        Throwable cause = e.getMostSpecificCause();
+        return !(cause instanceof SQLException) || FOREIGN_KEY_STATES.contains(((SQLException) cause).getSQLState());
+    }
+
+    private int parseWindowHours(String window) {
+        Matcher matcher = WINDOW_PATTERN.matcher(window);
+        if (!matcher.matches()) {
+            throw new ValidationException("window should look like 24h or 7d");
+        }
+        int hours = Integer.parseInt(matcher.group(1)) * ("d".equals(matcher.group(2)) ? 24 : 1);
+        if (hours < 1 || hours > TrendingIndex.MAX_WINDOW_HOURS) {
+            throw new ValidationException("window can not be more than " + TrendingIndex.MAX_WINDOW_HOURS + "h");
+        }
+        return hours;
     }
 
-    private void checkFilmMaxDate(Film film) {
+    public void checkFilmMaxDate(Film film) {
         if (film.getReleaseDate().isBefore(MAX_DATE)) {
             throw new ValidationException("date can not be more than " + MAX_DATE.toString());
         }
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published by {@link UserService} when a friend is added or removed.
+ */
+@Getter
+@AllArgsConstructor
+public class FriendsChangedEvent {
+    private final int userId;
+
+    private final int friendId;
+
+    private final boolean removed;
+}
@@ -29,4 +29,9 @@ public class GenreService {
         return genreDao.get(genreId)
                 .orElseThrow(() -> new ObjectNotFoundException("Genre is not found"));
     }
+
+    public void refresh() {
+        log.debug("refresh genres");
+        genreDao.refresh();
+    }
 }
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Published by {@link FilmService} when likes are created or removed, the source is the publishing service.
+ */
+@Getter
+public class LikesChangedEvent extends ApplicationEvent {
+    private final List<Like> likes;
+
+    private final boolean removed;
+
+    // when each removed like was made, likes without a time are older than any window
+    private final Map<Like, LocalDateTime> likedAt;
+
+    public LikesChangedEvent(Object source, List<Like> likes, boolean removed) {
+        this(source, likes, removed, Map.of());
+    }
+
+    public LikesChangedEvent(Object source, List<Like> likes, boolean removed, Map<Like, LocalDateTime> likedAt) {
+        super(source);
+        this.likes = likes;
+        this.removed = removed;
+        this.likedAt = likedAt;
+    }
+}
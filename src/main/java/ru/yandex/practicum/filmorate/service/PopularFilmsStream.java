@@ -0,0 +1,220 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.config.VirtualThreadsConfig;
+import ru.yandex.practicum.filmorate.model.PopularFilm;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes the top {@code size} popular films to SSE subscribers. Committed likes schedule a refresh after
+ * {@code delay-ms}, so a burst of likes costs one refresh, and an event is sent only when the order of film ids
+ * changes. The payload is serialized once and queued to every subscriber, a subscriber with {@code buffer-size}
+ * unsent events is disconnected and gets the current leaderboard again when it reconnects.
+ * <p>
+ * A subscriber with queued events sends them on a thread of its own, a virtual one on Java 21 and newer, so a
+ * send blocked by a slow client holds no other subscriber; it ends when the client reads or with the write timeout
+ * of the servlet container. Disconnecting waits for that send, so it runs on threads of its own as well.
+ */
+@Slf4j
+@Component
+public class PopularFilmsStream {
+    public static final String EVENT_NAME = "popular";
+
+    private final FilmService filmService;
+
+    private final ObjectMapper objectMapper;
+
+    private final int size;
+
+    private final int bufferSize;
+
+    private final long delayMs;
+
+    private final long timeoutMs;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    // written by the scheduler thread only
+    private List<Integer> rankedIds;
+
+    private String payload;
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService senders;
+
+    private ExecutorService completions;
+
+    public PopularFilmsStream(FilmService filmService, ObjectMapper objectMapper,
+                              @Value("${filmorate.popular.stream.size:10}") int size,
+                              @Value("${filmorate.popular.stream.buffer-size:16}") int bufferSize,
+                              @Value("${filmorate.popular.stream.delay-ms:100}") long delayMs,
+                              @Value("${filmorate.popular.stream.timeout-ms:1800000}") long timeoutMs) {
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.size = size;
+        this.bufferSize = bufferSize;
+        this.delayMs = delayMs;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "popular-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        senders = newThreadPerTaskExecutor("popular-stream-sender-");
+        completions = newThreadPerTaskExecutor("popular-stream-completion-");
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+        completions.shutdownNow();
+        subscribers.clear();
+    }
+
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(timeoutMs));
+    }
+
+    SseEmitter subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        scheduler.execute(() -> {
+            try {
+                refresh();
+                subscribers.add(subscriber);
+                subscriber.offer(payload);
+            } catch (RuntimeException e) {
+                log.warn("can not subscribe to popular films", e);
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLikesChanged(LikesChangedEvent event) {
+        if (!subscribers.isEmpty() && refreshScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::publish, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void publish() {
+        refreshScheduled.set(false);
+        try {
+            if (refresh()) {
+                subscribers.forEach(subscriber -> subscriber.offer(payload));
+            }
+        } catch (RuntimeException e) {
+            log.warn("can not publish popular films", e);
+        }
+    }
+
+    // threads of a cached pool are created for busy subscribers only and are reused by the next ones
+    private static ExecutorService newThreadPerTaskExecutor(String name) {
+        if (VirtualThreadsConfig.isSupported()) {
+            return VirtualThreadsConfig.newVirtualThreadPerTaskExecutor();
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private boolean refresh() {
+        List<PopularFilm> films = filmService.getLeaderboard(size);
+        List<Integer> ids = films.stream()
+                .map(PopularFilm::getId)
+                .collect(Collectors.toList());
+        if (ids.equals(rankedIds)) {
+            return false;
+        }
+        try {
+            payload = objectMapper.writeValueAsString(films);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        rankedIds = ids;
+        return true;
+    }
+
+    /**
+     * Events of one subscriber are sent in order by at most one sender at a time.
+     */
+    private class Subscriber {
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<String> buffer = new ArrayBlockingQueue<>(bufferSize);
+
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(String event) {
+            if (!buffer.offer(event)) {
+                if (subscribers.remove(this)) {
+                    log.debug("popular films subscriber is dropped with {} unsent events", buffer.size());
+                    // completion waits for a blocked send, so it runs neither on the scheduler nor on a sender
+                    completions.execute(emitter::complete);
+                }
+                return;
+            }
+            if (sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                for (String event = buffer.poll(); event != null; event = buffer.poll()) {
+                    emitter.send(SseEmitter.event()
+                            .name(EVENT_NAME)
+                            .data(event, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+                buffer.clear();
+                return;
+            } finally {
+                sending.set(false);
+            }
+            // an event offered after the last poll but before the flag was reset
+            if (!buffer.isEmpty() && subscribers.contains(this) && sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+    }
+}
@@ -29,4 +29,9 @@ public class RatingService {
         return ratingDao.get(ratingId)
                 .orElseThrow(() -> new ObjectNotFoundException("Rating is not found"));
     }
+
+    public void refresh() {
+        log.debug("refresh ratings");
+        ratingDao.refresh();
+    }
 }
@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.validation.Validator;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Imports users skipping rows whose login or email is already taken, either by a stored user or by an earlier row of
+ * the same batch. Taken logins and emails are looked up once per batch, the unique constraints of USERS still guard
+ * against users added concurrently.
+ */
+@Service
+public class UserImportService extends BatchImporter<User> {
+    private static final List<String> REQUIRED_CSV_COLUMNS = List.of("email", "login", "birthday");
+
+    private final UserService userService;
+
+    public UserImportService(UserService userService, Validator validator, ObjectMapper objectMapper,
+                             @Value("${filmorate.users.import.batch-size:5000}") int batchSize) {
+        super(User.class, validator, objectMapper, batchSize);
+        this.userService = userService;
+    }
+
+    @Override
+    protected List<String> getRequiredCsvColumns() {
+        return REQUIRED_CSV_COLUMNS;
+    }
+
+    @Override
+    protected User parseCsvRow(CsvRow row) {
+        User.UserBuilder user = User.builder()
+                .email(row.get("email"))
+                .login(row.get("login"))
+                .name(row.get("name"));
+        try {
+            String birthday = row.get("birthday");
+            user.birthday(birthday == null || birthday.isBlank() ? null : LocalDate.parse(birthday.trim()));
+        } catch (DateTimeParseException e) {
+            throw new ValidationException("birthday: " + e.getMessage());
+        }
+        return user.build();
+    }
+
+    @Override
+    protected void validate(User user) {
+        super.validate(user);
+        if (user.getEmail() != null && user.getEmail().isBlank()) {
+            user.setEmail(null);
+        }
+    }
+
+    @Override
+    protected Map<Integer, String> saveBatch(List<User> batch) {
+        Set<String> takenLogins = new HashSet<>(userService.getExistingLogins(batch.stream()
+                .map(User::getLogin)
+                .collect(Collectors.toSet())));
+        Set<String> takenEmails = new HashSet<>(userService.getExistingEmails(batch.stream()
+                .map(User::getEmail)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet())));
+        Map<Integer, String> skipped = new HashMap<>();
+        List<User> users = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            User user = batch.get(i);
+            if (takenLogins.contains(user.getLogin())) {
+                skipped.put(i, "login " + user.getLogin() + " is already used");
+            } else if (user.getEmail() != null && takenEmails.contains(user.getEmail())) {
+                skipped.put(i, "email " + user.getEmail() + " is already used");
+            } else {
+                takenLogins.add(user.getLogin());
+                if (user.getEmail() != null) {
+                    takenEmails.add(user.getEmail());
+                }
+                users.add(user);
+            }
+        }
+        userService.addAll(users);
+        return skipped;
+    }
+}
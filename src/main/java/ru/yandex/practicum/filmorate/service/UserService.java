@@ -2,13 +2,18 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
 import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 @Service
 @Slf4j
@@ -16,14 +21,26 @@ public class UserService {
 
     private final UserDao userDao;
 
-    public UserService(@Qualifier("UserDaoImpl") UserDao userDao) {
+    private final ApplicationEventPublisher eventPublisher;
+
+    public UserService(@Qualifier("UserDaoImpl") UserDao userDao, ApplicationEventPublisher eventPublisher) {
         this.userDao = userDao;
+        this.eventPublisher = eventPublisher;
     }
 
     public List<User> getAll() {
         return userDao.getAll();
     }
 
+    public Page<User> getPage(int afterId, int limit) {
+        List<User> users = userDao.getPage(afterId, limit + 1);
+        if (users.size() <= limit) {
+            return new Page<>(users, null);
+        }
+        List<User> items = users.subList(0, limit);
+        return new Page<>(items, items.get(limit - 1).getId());
+    }
+
     public User get(int userId) {
         return userDao.get(userId)
                 .orElseThrow(() -> new ObjectNotFoundException("User not found"));
@@ -35,6 +52,21 @@ public class UserService {
         return userDao.add(user);
     }
 
+    @Transactional
+    public List<User> addAll(List<User> users) {
+        users.forEach(this::checkUserName);
+        log.debug("add {} users in batch", users.size());
+        return userDao.addAll(users);
+    }
+
+    public Set<String> getExistingLogins(Collection<String> logins) {
+        return userDao.getExistingLogins(logins);
+    }
+
+    public Set<String> getExistingEmails(Collection<String> emails) {
+        return userDao.getExistingEmails(emails);
+    }
+
     public User update(User user) {
         checkUserName(user);
         log.debug("update user: {}", user);
@@ -47,12 +79,18 @@ public class UserService {
         if (userId == friendId) {
             throw new ValidationException("Provide different userId and friendId");
         }
-        return userDao.addFriend(userId, friendId)
+        boolean created = userDao.addFriend(userId, friendId)
                 .orElseThrow(() -> new ObjectNotFoundException("User not found"));
+        if (created) {
+            eventPublisher.publishEvent(new FriendsChangedEvent(userId, friendId, false));
+        }
+        return get(userId);
     }
 
     public void deleteFriend(int userId, int friendId) {
-        userDao.deleteFriend(userId, friendId);
+        if (userDao.deleteFriend(userId, friendId)) {
+            eventPublisher.publishEvent(new FriendsChangedEvent(userId, friendId, true));
+        }
     }
 
     public List<User> getFriends(int userId) {
@@ -68,6 +106,12 @@ public class UserService {
                 .orElseThrow(() -> new ObjectNotFoundException("User not found"));
     }
 
+    public List<User> getFriendSuggestions(int userId, int limit) {
+        log.debug("get {} friend suggestions for user with id = {}", limit, userId);
+        return userDao.getFriendSuggestions(userId, limit)
+                .orElseThrow(() -> new ObjectNotFoundException("User not found"));
+    }
+
     private void checkUserName(User user) {
         if (user.getName() == null || user.getName().isBlank()) {
             user.setName(user.getLogin());
@@ -20,7 +20,9 @@ CREATE TABLE IF NOT EXISTS  films  (
   description varchar(2000),
   release_date timestamp,
   duration integer,
-  rating_id integer
+  rating_id integer,
+  likes_count integer DEFAULT 0 NOT NULL,
+  release_year integer GENERATED ALWAYS AS (EXTRACT(YEAR FROM release_date))
 );
 
 CREATE TABLE IF NOT EXISTS  users  (
@@ -40,9 +42,32 @@ CREATE TABLE IF NOT EXISTS friends  (
 CREATE TABLE IF NOT EXISTS likes  (
     user_id  integer,
     film_id  integer,
+    created_at timestamp DEFAULT CURRENT_TIMESTAMP NOT NULL,
     PRIMARY KEY ( user_id ,  film_id )
 );
 
+-- columns added after the first release, the tables of an existing database were created without them
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count integer DEFAULT 0 NOT NULL;
+ALTER TABLE films ADD COLUMN IF NOT EXISTS release_year integer GENERATED ALWAYS AS (EXTRACT(YEAR FROM release_date));
+ALTER TABLE likes ADD COLUMN IF NOT EXISTS created_at timestamp DEFAULT CURRENT_TIMESTAMP NOT NULL;
+
+CREATE TABLE IF NOT EXISTS schema_migrations (
+    name varchar(100) PRIMARY KEY
+);
+
+-- the counters of films liked before likes_count existed, the same update as POST /admin/likes/rebuild
+UPDATE films f SET likes_count = (SELECT count(*) FROM likes l WHERE l.film_id = f.id)
+WHERE NOT EXISTS (SELECT 1 FROM schema_migrations WHERE name = 'likes_count');
+MERGE INTO schema_migrations KEY (name) VALUES ('likes_count');
+
+CREATE INDEX IF NOT EXISTS idx_films_likes_count ON films (likes_count DESC, id);
+CREATE INDEX IF NOT EXISTS idx_films_release_year_likes_count ON films (release_year, likes_count DESC, id);
+CREATE INDEX IF NOT EXISTS idx_films_rating_id ON films (rating_id);
+CREATE INDEX IF NOT EXISTS idx_film_genres_genre_id ON film_genres (genre_id, film_id);
+CREATE INDEX IF NOT EXISTS idx_friends_friend_id ON friends (friend_id, user_id);
+CREATE INDEX IF NOT EXISTS idx_likes_film_id ON likes (film_id, user_id);
+CREATE INDEX IF NOT EXISTS idx_likes_created_at ON likes (created_at);
+
 ALTER TABLE IF EXISTS films DROP CONSTRAINT IF EXISTS fk_film_rating;
 ALTER TABLE IF EXISTS friends DROP CONSTRAINT IF EXISTS fk_friends_user_id;
 ALTER TABLE IF EXISTS friends DROP CONSTRAINT IF EXISTS fk_friends_user_friend_id;
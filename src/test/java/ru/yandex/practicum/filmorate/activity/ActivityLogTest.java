@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.activity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.model.ActivityEvent;
+import ru.yandex.practicum.filmorate.model.ActivityType;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.service.FriendsChangedEvent;
+import ru.yandex.practicum.filmorate.service.LikesChangedEvent;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActivityLogTest {
+    private static final int SEGMENT_RECORDS = 10;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+
+    @TempDir
+    Path directory;
+
+    private ActivityLog activityLog;
+
+    private ActivityLog open() throws IOException {
+        activityLog = new ActivityLog(directory, SEGMENT_RECORDS * ActivityLog.FRAME_SIZE, Duration.ofHours(1), 1000,
+                100, clock);
+        activityLog.start();
+        return activityLog;
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        if (activityLog != null) {
+            activityLog.stop();
+        }
+    }
+
+    @Test
+    public void readsRecordsByOffsetAcrossSegments() throws Exception {
+        open();
+        activityLog.onLikesChanged(new LikesChangedEvent(this, List.of(new Like(7, 1), new Like(8, 1)), false));
+        activityLog.onLikesChanged(new LikesChangedEvent(this, List.of(new Like(7, 1)), true));
+        activityLog.onFriendsChanged(new FriendsChangedEvent(1, 2, false));
+        activityLog.onFriendsChanged(new FriendsChangedEvent(1, 2, true));
+        for (int i = 5; i < 25; i++) {
+            activityLog.append(ActivityType.LIKE, i, i * 10);
+        }
+        assertTrue(activityLog.flush(5000));
+
+        List<ActivityEvent> events = activityLog.read(0, 100);
+        assertEquals(25, events.size());
+        assertEquals(new ActivityEvent(0, ActivityType.LIKE, 1, 7, clock.instant()), events.get(0));
+        assertEquals(new ActivityEvent(1, ActivityType.LIKE, 1, 8, clock.instant()), events.get(1));
+        assertEquals(new ActivityEvent(2, ActivityType.UNLIKE, 1, 7, clock.instant()), events.get(2));
+        assertEquals(new ActivityEvent(3, ActivityType.FRIEND_ADD, 1, 2, clock.instant()), events.get(3));
+        assertEquals(new ActivityEvent(4, ActivityType.FRIEND_REMOVE, 1, 2, clock.instant()), events.get(4));
+        assertEquals(LongStream.range(0, 25).boxed().collect(Collectors.toList()), offsets(events));
+
+        assertEquals(List.of(9L, 10L, 11L), offsets(activityLog.read(9, 3)));
+        assertEquals(new ActivityEvent(24, ActivityType.LIKE, 24, 240, clock.instant()), activityLog.read(24, 10).get(0));
+        List<ActivityEvent> tail = new ArrayList<>();
+        assertEquals(25, activityLog.replay(23, 100, tail::add));
+        assertEquals(List.of(23L, 24L), offsets(tail));
+        assertEquals(25, activityLog.replay(40, 100, tail::add));
+        assertEquals(3, segmentFiles().size());
+    }
+
+    @Test
+    public void recoversAfterRestartWithoutTornFrame() throws Exception {
+        open();
+        for (int i = 0; i < 15; i++) {
+            activityLog.append(ActivityType.LIKE, i, i);
+        }
+        assertTrue(activityLog.flush(5000));
+        activityLog.stop();
+
+        // the last frame is half written
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(1).toFile(), "rw")) {
+            file.seek(4L * ActivityLog.FRAME_SIZE + 13);
+            file.writeInt(-1);
+        }
+        open();
+        assertEquals(14, activityLog.getEndOffset());
+
+        activityLog.append(ActivityType.FRIEND_ADD, 100, 200);
+        assertTrue(activityLog.flush(5000));
+        List<ActivityEvent> events = activityLog.read(0, 100);
+        assertEquals(15, events.size());
+        assertEquals(new ActivityEvent(14, ActivityType.FRIEND_ADD, 100, 200, clock.instant()), events.get(14));
+    }
+
+    @Test
+    public void retentionRemovesOldSegments() throws Exception {
+        open();
+        for (int i = 0; i < 25; i++) {
+            if (i == 20) {
+                assertTrue(activityLog.flush(5000));
+                clock.advance(Duration.ofMinutes(30));
+            }
+            activityLog.append(ActivityType.LIKE, i, i);
+        }
+        assertTrue(activityLog.flush(5000));
+
+        activityLog.applyRetention();
+        assertEquals(3, segmentFiles().size());
+
+        clock.advance(Duration.ofMinutes(31));
+        activityLog.applyRetention();
+        assertEquals(1, segmentFiles().size());
+        assertEquals(20, activityLog.getStartOffset());
+        assertEquals(LongStream.range(20, 25).boxed().collect(Collectors.toList()), offsets(activityLog.read(0, 100)));
+    }
+
+    @Test
+    public void directoryIsLockedByOneLog() throws Exception {
+        open();
+        ActivityLog other = new ActivityLog(directory, 1024, Duration.ofHours(1), 1000, 100, clock);
+        assertThrows(IllegalStateException.class, other::start);
+    }
+
+    @Test
+    public void replaysMillionRecords() throws Exception {
+        activityLog = new ActivityLog(directory, 4 << 20, Duration.ofHours(1), 1000, 65536, clock);
+        activityLog.start();
+        int records = 1_000_000;
+        for (int i = 0; i < records; i++) {
+            activityLog.append(ActivityType.LIKE, i, i);
+        }
+        assertTrue(activityLog.flush(30_000));
+
+        AtomicLong sum = new AtomicLong();
+        long start = System.nanoTime();
+        assertEquals(records, activityLog.replay(0, Long.MAX_VALUE, event -> sum.addAndGet(event.getUserId())));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals((long) records * (records - 1) / 2, sum.get());
+        assertTrue(millis < 2000, "replay of " + records + " records took " + millis + " ms");
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<Long> offsets(List<ActivityEvent> events) {
+        return events.stream()
+                .map(ActivityEvent::getOffset)
+                .collect(Collectors.toList());
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.config;
 
 import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryFilmDaoImpl;
@@ -9,6 +10,12 @@ import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryUserDaoImpl;
 import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
 import ru.yandex.practicum.filmorate.dao.interfaces.GenreDao;
 import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
+import ru.yandex.practicum.filmorate.index.FilmAutocomplete;
+import ru.yandex.practicum.filmorate.index.FilmRecommender;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.HeavyHitters;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
@@ -16,18 +23,18 @@ import ru.yandex.practicum.filmorate.service.UserService;
 public class TestConfig {
 
     UserDao userDao = new InMemoryUserDaoImpl();
-    FilmDao filmDao = new InMemoryFilmDaoImpl();
+    FilmDao filmDao = new InMemoryFilmDaoImpl(userDao);
     GenreDao genreDao = new InMemoryGenreDaoImpl();
 
     @Bean
     @Primary
-    public UserService testUserService() {
-        return new UserService(userDao);
+    public UserService testUserService(ApplicationEventPublisher eventPublisher) {
+        return new UserService(userDao, eventPublisher);
     }
 
     @Bean
     @Primary
-    public FilmService testFilmService() {
-        return new FilmService(filmDao, userDao, genreDao);
+    public FilmService testFilmService(ApplicationEventPublisher eventPublisher) {
+        return new FilmService(filmDao, userDao, genreDao, new PopularityIndex(), new TrendingIndex(), new HeavyHitters(2048, 5, 100), new FilmRecommender(50, 1), new FilmSearchIndex(1), new FilmAutocomplete(), eventPublisher);
     }
 }
@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.db;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
+import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmCacheTest {
+    private static final int UPDATES = 200;
+
+    private static final int READERS = 4;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private FilmCache filmCache;
+
+    private FilmDaoImpl filmDao;
+
+    private GenreDaoImpl genreDao;
+
+    private Film film;
+
+    @BeforeEach
+    public void beforeEach() {
+        filmCache = new FilmCache(100);
+        genreDao = new GenreDaoImpl(jdbcTemplate, filmCache);
+        filmDao = new FilmDaoImpl(jdbcTemplate, genreDao, new RatingDaoImpl(jdbcTemplate), filmCache);
+        film = filmDao.add(Film.builder()
+                .name("0")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>())
+                .build());
+    }
+
+    @AfterEach
+    public void afterEach() {
+        jdbcTemplate.update("delete from FILM_GENRES where FILM_ID = ?", film.getId());
+        jdbcTemplate.update("delete from FILMS where ID = ?", film.getId());
+    }
+
+    @Test
+    public void testCachedFilmIsInvalidatedOnChanges() {
+        long hits = filmCache.getStats().getHitCount();
+        filmDao.get(film.getId());
+        filmDao.get(film.getId());
+        assertEquals(hits + 2, filmCache.getStats().getHitCount());
+
+        film.setGenres(new LinkedHashSet<>(List.of(new Genre(2, null))));
+        genreDao.addFilmGenre(film);
+        assertEquals("Драма", filmDao.get(film.getId()).get().getGenres().iterator().next().getName());
+
+        film.setName("updated");
+        filmDao.update(film);
+        assertEquals("updated", filmDao.get(film.getId()).get().getName());
+
+        filmDao.get(film.getId()).get().getGenres().clear();
+        assertEquals(1, filmDao.get(film.getId()).get().getGenres().size());
+    }
+
+    @Test
+    public void testBulkReadsAreCachedCopiesInOrder() {
+        Film other = filmDao.add(film.toBuilder().id(0).name("other").build());
+        try {
+            filmCache.invalidate(other.getId());
+            filmDao.get(film.getId());
+            long hits = filmCache.getStats().getHitCount();
+            List<Film> films = filmDao.getByIds(List.of(other.getId(), film.getId()));
+            assertEquals(List.of("other", "0"), List.of(films.get(0).getName(), films.get(1).getName()));
+            assertEquals(hits + 1, filmCache.getStats().getHitCount());
+
+            films.get(0).setName("changed");
+            assertEquals("other", filmDao.getByIds(List.of(other.getId())).get(0).getName());
+            assertEquals(hits + 2, filmCache.getStats().getHitCount());
+        } finally {
+            jdbcTemplate.update("delete from FILMS where ID = ?", other.getId());
+        }
+    }
+
+    @Test
+    public void testRolledBackUpdateIsNotCached() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            film.setName("rolled back");
+            filmDao.update(film);
+            assertEquals("rolled back", filmDao.get(film.getId()).get().getName());
+            status.setRollbackOnly();
+        });
+
+        assertEquals("0", filmDao.get(film.getId()).get().getName());
+    }
+
+    @Test
+    public void testNoStaleReadsAfterCommittedUpdate() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger committedVersion = new AtomicInteger();
+        AtomicInteger staleReads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            readers.add(executor.submit(() -> {
+                // bulk reads go through the cache without its per-key lock, so they take turns with single reads
+                for (int j = 0; committedVersion.get() < UPDATES; j++) {
+                    int committed = committedVersion.get();
+                    Film current = j % 2 == 0 ? filmDao.get(film.getId()).get()
+                            : filmDao.getByIds(List.of(film.getId())).get(0);
+                    int read = Integer.parseInt(current.getName());
+                    if (read < committed) {
+                        staleReads.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        for (int version = 1; version <= UPDATES; version++) {
+            String name = String.valueOf(version);
+            transactionTemplate.executeWithoutResult(status -> {
+                Film updated = filmDao.get(film.getId()).get();
+                updated.setName(name);
+                filmDao.update(updated);
+            });
+            committedVersion.set(version);
+        }
+        for (Future<?> reader : readers) {
+            reader.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(0, staleReads.get());
+        assertEquals(String.valueOf(UPDATES), filmDao.get(film.getId()).get().getName());
+        assertTrue(filmCache.getStats().getHitCount() > 0);
+    }
+}
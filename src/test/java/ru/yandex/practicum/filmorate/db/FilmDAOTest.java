@@ -11,22 +11,31 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
 import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
 import ru.yandex.practicum.filmorate.dao.UserDaoImpl;
 import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
+import ru.yandex.practicum.filmorate.dao.interfaces.GenreDao;
 import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.HourlyLikes;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @JdbcTest
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
@@ -34,19 +43,26 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 class FilmDAOTest {
     private final JdbcTemplate jdbcTemplate;
 
+    private final FilmCache filmCache = new FilmCache(1000);
+
     @Qualifier("FilmDaoImpl")
     private FilmDao filmDao;
 
     @Qualifier("UserDaoImpl")
     private UserDao userDao;
 
+    @Qualifier("GenreDaoImpl")
+    private GenreDao genreDao;
+
     private Film film;
     private User user;
 
 
     @BeforeAll
     public void beforeAll() {
-        filmDao = new FilmDaoImpl(jdbcTemplate);
+        GenreDaoImpl genreDaoImpl = new GenreDaoImpl(jdbcTemplate, filmCache);
+        genreDao = genreDaoImpl;
+        filmDao = new FilmDaoImpl(jdbcTemplate, genreDaoImpl, new RatingDaoImpl(jdbcTemplate), filmCache);
         userDao = new UserDaoImpl(jdbcTemplate);
 
         User newUser = User.builder()
@@ -157,4 +173,172 @@ class FilmDAOTest {
         assertEquals(film.getId(), popularFilms.get(0).getId());
         assertEquals(newFilm.getId(), popularFilms.get(1).getId());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRebuildLikesCount() {
+        Film newFilm = Film.builder()
+                .name("James Bond 3")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>())
+                .build();
+        newFilm = filmDao.add(newFilm);
+        filmDao.addLike(newFilm.getId(), user.getId());
+
+        jdbcTemplate.update("update FILMS set LIKES_COUNT = 0");
+        assertEquals(film.getId(), filmDao.getPopularFilms(1).get(0).getId());
+
+        filmDao.rebuildLikesCount();
+        assertEquals(newFilm.getId(), filmDao.getPopularFilms(1).get(0).getId());
+    }
+
+    @Test
+    public void testGetPopularFilmsByGenreAndYear() {
+        Film newFilm = Film.builder()
+                .name("James Bond 4")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"))))
+                .build();
+        int newFilmId = filmDao.add(newFilm).getId();
+        genreDao.addFilmGenre(film.toBuilder().genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия")))).build());
+        genreDao.addFilmGenre(newFilm.toBuilder().id(newFilmId).build());
+        newFilm = filmDao.get(newFilmId).get();
+        filmDao.addLike(newFilm.getId(), user.getId());
+
+        List<Film> comedies = filmDao.getPopularFilms(10, 1, null);
+        assertEquals(2, comedies.size());
+        assertEquals(newFilm.getId(), comedies.get(0).getId());
+        assertEquals(film.getId(), comedies.get(1).getId());
+        assertEquals(2, comedies.get(0).getGenres().size());
+
+        assertEquals(List.of(newFilm.getId()), filmDao.getPopularFilms(10, 2, null).stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(List.of(film.getId()), filmDao.getPopularFilms(10, null, 2000).stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(List.of(newFilm.getId()), filmDao.getPopularFilms(10, 1, 2001).stream().map(Film::getId).collect(Collectors.toList()));
+        assertTrue(filmDao.getPopularFilms(10, 2, 2000).isEmpty());
+    }
+
+    @Test
+    public void testGetHourlyLikesSince() {
+        filmDao.saveLike(film.getId(), user.getId());
+
+        List<HourlyLikes> hourlyLikes = filmDao.getHourlyLikesSince(LocalDateTime.now().minusHours(1));
+        assertEquals(1, hourlyLikes.size());
+        assertEquals(film.getId(), hourlyLikes.get(0).getFilmId());
+        assertEquals(1, hourlyLikes.get(0).getCount());
+        assertEquals(0, filmDao.getHourlyLikesSince(LocalDateTime.now().plusHours(1)).size());
+    }
+
+    @Test
+    public void testRemoveLikeReturnsWhenLikeWasMade() {
+        filmDao.saveLike(film.getId(), user.getId());
+        LocalDateTime likedAt = jdbcTemplate.queryForObject("select CREATED_AT from LIKES where FILM_ID = ? and USER_ID = ?",
+                LocalDateTime.class, film.getId(), user.getId());
+
+        assertEquals(Optional.of(likedAt), filmDao.removeLike(film.getId(), user.getId()));
+        assertEquals(Optional.empty(), filmDao.removeLike(film.getId(), user.getId()));
+    }
+
+    @Test
+    public void testGetPage() {
+        Film newFilm = Film.builder()
+                .name("James Bond 4")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>())
+                .build();
+        newFilm = filmDao.add(newFilm);
+
+        List<Film> firstPage = filmDao.getPage(film.getId() - 1, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(film.getId(), firstPage.get(0).getId());
+        assertEquals(film.getGenres(), firstPage.get(0).getGenres());
+
+        List<Film> secondPage = filmDao.getPage(film.getId(), 10);
+        assertEquals(1, secondPage.size());
+        assertEquals(newFilm.getId(), secondPage.get(0).getId());
+    }
+
+    @Test
+    public void testStreamAllFilms() {
+        Film newFilm = Film.builder()
+                .name("James Bond 5")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(2, "PG"))
+                .build();
+        newFilm = filmDao.add(newFilm).toBuilder()
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"))))
+                .build();
+        new GenreDaoImpl(jdbcTemplate, filmCache).addFilmGenre(newFilm);
+
+        List<Film> streamed = new ArrayList<>();
+        filmDao.streamAll(streamed::add);
+
+        assertThat(streamed)
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(filmDao.getAll());
+        int newFilmId = newFilm.getId();
+        assertThat(streamed)
+                .filteredOn(f -> f.getId() == newFilmId)
+                .singleElement()
+                .extracting(Film::getGenres)
+                .isEqualTo(newFilm.getGenres());
+    }
+
+    @Test
+    public void testSaveLikesInBatch() {
+        filmDao.saveLike(film.getId(), user.getId());
+        User user2 = userDao.add(User.builder()
+                .name("Rayan Buc")
+                .email("batch@mail.ru")
+                .birthday(LocalDate.of(1991, 11, 11))
+                .login("batch")
+                .build());
+
+        List<Boolean> created = filmDao.saveLikes(List.of(
+                new Like(film.getId(), user.getId()),
+                new Like(film.getId(), user2.getId()),
+                new Like(film.getId(), user2.getId())));
+
+        assertEquals(List.of(false, true, false), created);
+        assertEquals(2, filmDao.getLikesCount().get(film.getId()));
+        assertEquals(Set.of(film.getId()), filmDao.getExistingIds(List.of(film.getId(), 9999)));
+        assertEquals(Set.of(user.getId(), user2.getId()), userDao.getExistingIds(List.of(user.getId(), user2.getId(), 9999)));
+    }
+
+    @Test
+    public void testAddFilmsInBatch() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            films.add(Film.builder()
+                    .name("Imported " + i)
+                    .description("Good film")
+                    .duration(2)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .mpa(new Rating(2, "PG"))
+                    .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(i + 2, null))))
+                    .build());
+        }
+
+        filmDao.addAll(films);
+        genreDao.addFilmGenres(films);
+
+        assertEquals(3, films.stream().map(Film::getId).distinct().count());
+        for (int i = 0; i < 3; i++) {
+            Film savedFilm = filmDao.get(films.get(i).getId()).get();
+            assertEquals("Imported " + i, savedFilm.getName());
+            assertEquals("PG", savedFilm.getMpa().getName());
+            assertThat(savedFilm.getGenres())
+                    .extracting(Genre::getId)
+                    .containsExactly(1, i + 2);
+        }
+    }
+}
@@ -10,8 +10,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
 import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
 import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
 import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
 import ru.yandex.practicum.filmorate.dao.interfaces.GenreDao;
 import ru.yandex.practicum.filmorate.model.Film;
@@ -26,6 +30,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @JdbcTest
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
@@ -33,6 +39,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 class GenreDAOTest {
     private final JdbcTemplate jdbcTemplate;
 
+    private final FilmCache filmCache = new FilmCache(1000);
+
     @Qualifier("GenreDaoImpl")
     private GenreDao genreDao;
 
@@ -41,8 +49,9 @@ class GenreDAOTest {
 
     @BeforeAll
     public void beforeAll() {
-        filmDao = new FilmDaoImpl(jdbcTemplate);
-        genreDao = new GenreDaoImpl(jdbcTemplate);
+        GenreDaoImpl genreDaoImpl = new GenreDaoImpl(jdbcTemplate, filmCache);
+        genreDao = genreDaoImpl;
+        filmDao = new FilmDaoImpl(jdbcTemplate, genreDaoImpl, new RatingDaoImpl(jdbcTemplate), filmCache);
     }
 
     @Test
@@ -132,4 +141,68 @@ class GenreDAOTest {
         Film savedFilm = filmDao.get(createdFilm.getId()).get();
         assertEquals(0, savedFilm.getGenres().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void filmsShareGenreInstances() {
+        Film newFilm = Film.builder()
+                .name("James Bond")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .build();
+        Film first = filmDao.add(newFilm);
+        Film second = filmDao.add(newFilm);
+        genreDao.addFilmGenre(first.toBuilder().genres(new LinkedHashSet<>(List.of(new Genre(1, null)))).build());
+        genreDao.addFilmGenre(second.toBuilder().genres(new LinkedHashSet<>(List.of(new Genre(1, null)))).build());
+
+        Genre firstGenre = filmDao.get(first.getId()).get().getGenres().iterator().next();
+        Genre secondGenre = filmDao.get(second.getId()).get().getGenres().iterator().next();
+        assertSame(genreDao.get(1).get(), firstGenre);
+        assertSame(firstGenre, secondGenre);
+        assertEquals("Комедия", firstGenre.getName());
+    }
+
+    @Test
+    public void refreshLoadsNewGenres() {
+        GenreDao refreshedGenreDao = new GenreDaoImpl(jdbcTemplate, filmCache);
+        assertTrue(refreshedGenreDao.get(100).isEmpty());
+        jdbcTemplate.update("insert into GENRES (ID, NAME) values (100, 'Вестерн')");
+        assertTrue(refreshedGenreDao.get(100).isEmpty());
+
+        refreshedGenreDao.refresh();
+
+        assertEquals("Вестерн", refreshedGenreDao.get(100).get().getName());
+    }
+
+    // films changed in a transaction are read past the cache, so this one is committed and deleted after the test
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void refreshRebindsCachedFilms() {
+        FilmCache refreshedFilmCache = new FilmCache(1000);
+        GenreDaoImpl refreshedGenreDao = new GenreDaoImpl(jdbcTemplate, refreshedFilmCache);
+        FilmDao refreshedFilmDao = new FilmDaoImpl(jdbcTemplate, refreshedGenreDao, new RatingDaoImpl(jdbcTemplate), refreshedFilmCache);
+        Film film = refreshedFilmDao.add(Film.builder()
+                .name("James Bond")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .build());
+        refreshedGenreDao.addFilmGenre(film.toBuilder().genres(new LinkedHashSet<>(List.of(new Genre(1, null)))).build());
+        assertEquals("Комедия", refreshedFilmDao.get(film.getId()).get().getGenres().iterator().next().getName());
+
+        try {
+            jdbcTemplate.update("update GENRES set NAME = 'Комедия положений' where ID = 1");
+            refreshedGenreDao.refresh();
+
+            Genre genre = refreshedFilmDao.get(film.getId()).get().getGenres().iterator().next();
+            assertEquals("Комедия положений", genre.getName());
+            assertSame(refreshedGenreDao.get(1).get(), genre);
+        } finally {
+            jdbcTemplate.update("update GENRES set NAME = 'Комедия' where ID = 1");
+            jdbcTemplate.update("delete from FILM_GENRES where FILM_ID = ?", film.getId());
+            jdbcTemplate.update("delete from FILMS where ID = ?", film.getId());
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package ru.yandex.practicum.filmorate.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryFilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryUserDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.Journal;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Restarts of the journaled in-memory DAOs. Closing a journal writes no snapshot, so every restart recovers the way
+ * it does after a crash, from the last snapshot and the log.
+ */
+class InMemoryJournalTest {
+    @TempDir
+    Path directory;
+
+    private final List<Journal> journals = new ArrayList<>();
+
+    /**
+     * The likes of these tests are given by users that are never created.
+     */
+    private final InMemoryUserDaoImpl anyUser = new InMemoryUserDaoImpl() {
+        @Override
+        public Optional<User> get(int userId) {
+            return Optional.of(User.builder().id(userId).login("user" + userId).build());
+        }
+    };
+
+    private static Film newFilm(String name) {
+        return Film.builder()
+                .name(name)
+                .description("description of " + name)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(2, "Драма"), new Genre(1, "Комедия"))))
+                .build();
+    }
+
+    private static User newUser(String login) {
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private static List<Film> sorted(List<Film> films) {
+        films.sort(Comparator.comparing(Film::getId));
+        return films;
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException {
+        for (Journal journal : journals) {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void recoverFromLogOnly() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1000);
+        InMemoryUserDaoImpl userDao = openUsers(1000);
+        Film first = filmDao.add(newFilm("first"));
+        Film second = filmDao.add(newFilm("second"));
+        filmDao.update(newFilm("second updated").toBuilder().id(second.getId()).build());
+        filmDao.saveLikes(List.of(new Like(first.getId(), 1), new Like(first.getId(), 2), new Like(second.getId(), 1)));
+        filmDao.removeLike(first.getId(), 2);
+        User user = userDao.add(newUser("user"));
+        User friend = userDao.add(newUser("friend"));
+        User other = userDao.add(newUser("other"));
+        userDao.addFriend(user.getId(), friend.getId());
+        userDao.addFriend(user.getId(), other.getId());
+        userDao.deleteFriend(user.getId(), other.getId());
+        List<Film> films = sorted(filmDao.getAll());
+        restart();
+
+        InMemoryFilmDaoImpl recoveredFilms = openFilms(1000);
+        InMemoryUserDaoImpl recoveredUsers = openUsers(1000);
+        assertEquals(films, sorted(recoveredFilms.getAll()));
+        assertEquals("second updated", recoveredFilms.get(second.getId()).orElseThrow().getName());
+        assertEquals(Set.of(1), recoveredFilms.get(first.getId()).orElseThrow().getLikedUsers());
+        assertEquals(List.of(friend), recoveredUsers.getFriends(user.getId()).orElseThrow());
+        assertEquals(List.of(user), recoveredUsers.getFriends(friend.getId()).orElseThrow());
+        assertEquals(List.of(), recoveredUsers.getFriends(other.getId()).orElseThrow());
+        assertEquals(3, recoveredFilms.add(newFilm("third")).getId());
+        assertEquals(4, recoveredUsers.add(newUser("fourth")).getId());
+    }
+
+    @Test
+    public void recoverFromSnapshotAndLogTail() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1_000_000);
+        InMemoryUserDaoImpl userDao = openUsers(1_000_000);
+        for (int i = 0; i < 25_000; i++) {
+            Film film = filmDao.add(newFilm("film " + i));
+            filmDao.saveLike(film.getId(), i % 100);
+        }
+        for (int i = 0; i < 100; i++) {
+            userDao.add(newUser("user" + i));
+        }
+        for (int i = 2; i <= 100; i++) {
+            userDao.addFriend(1, i);
+        }
+        filmDao.snapshot();
+        userDao.snapshot();
+        filmDao.removeLike(1, 0);
+        filmDao.saveLike(2, 99);
+        filmDao.add(newFilm("after snapshot"));
+        userDao.deleteFriend(1, 2);
+        List<Film> films = sorted(filmDao.getAll());
+        restart();
+
+        assertEquals(List.of("snapshot-00000000000000050000.bin", "wal-00000000000000050001.log"),
+                files("films"));
+        InMemoryFilmDaoImpl recoveredFilms = openFilms(1_000_000);
+        InMemoryUserDaoImpl recoveredUsers = openUsers(1_000_000);
+        assertEquals(films, sorted(recoveredFilms.getAll()));
+        assertEquals(Set.of(), recoveredFilms.get(1).orElseThrow().getLikedUsers());
+        assertEquals(Set.of(1, 99), recoveredFilms.get(2).orElseThrow().getLikedUsers());
+        assertEquals(98, recoveredUsers.getFriends(1).orElseThrow().size());
+        assertEquals(List.of(), recoveredUsers.getFriends(2).orElseThrow());
+        assertEquals(25_002, recoveredFilms.add(newFilm("next")).getId());
+    }
+
+    @Test
+    public void cutTornEndOfLog() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1000);
+        Film film = filmDao.add(newFilm("film"));
+        filmDao.saveLike(film.getId(), 1);
+        restart();
+        // the header of a frame that was not written to the end
+        Path log = directory.resolve("films").resolve(files("films").get(0));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(30).putInt(100).putInt(12345).putLong(3).rewind());
+        }
+        long size = Files.size(log);
+
+        InMemoryFilmDaoImpl recovered = openFilms(1000);
+        assertEquals(size - 30, Files.size(log));
+        assertEquals(Set.of(1), recovered.get(film.getId()).orElseThrow().getLikedUsers());
+        recovered.saveLike(film.getId(), 2);
+        restart();
+
+        assertEquals(Set.of(1, 2), openFilms(1000).get(film.getId()).orElseThrow().getLikedUsers());
+    }
+
+    @Test
+    public void ignoreUnfinishedSnapshot() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1000);
+        filmDao.add(newFilm("film"));
+        restart();
+        Files.write(directory.resolve("films").resolve("snapshot-00000000000000000001.bin.tmp"), new byte[]{1, 2, 3});
+
+        assertEquals(1, openFilms(1000).getAll().size());
+        assertFalse(files("films").stream().anyMatch(file -> file.endsWith(".tmp")));
+    }
+
+    @Test
+    public void skipLogRecordsCoveredBySnapshot() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1000);
+        Film film = filmDao.add(newFilm("film"));
+        filmDao.saveLike(film.getId(), 1);
+        filmDao.removeLike(film.getId(), 1);
+        filmDao.saveLike(film.getId(), 2);
+        Path films = directory.resolve("films");
+        Path log = films.resolve(files("films").get(0));
+        byte[] logged = Files.readAllBytes(log);
+        filmDao.snapshot();
+        filmDao.removeLike(film.getId(), 2);
+        restart();
+        // as if the process died after the snapshot was renamed but before the log was deleted
+        Files.write(log, logged);
+
+        assertEquals(Set.of(), openFilms(1000).get(film.getId()).orElseThrow().getLikedUsers());
+    }
+
+    @Test
+    public void failOnDamagedSnapshot() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1000);
+        filmDao.add(newFilm("film"));
+        filmDao.snapshot();
+        restart();
+        Path snapshot = directory.resolve("films").resolve(files("films").get(0));
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 10] ^= 1;
+        Files.write(snapshot, bytes);
+
+        assertThrows(IllegalStateException.class, () -> openFilms(1000));
+    }
+
+    @Test
+    public void updateKeepsLikes() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1000);
+        Film film = filmDao.add(newFilm("film"));
+        filmDao.saveLikes(List.of(new Like(film.getId(), 1), new Like(film.getId(), 2)));
+
+        // as it comes from the request body, without likes
+        Film updated = filmDao.update(newFilm("film updated").toBuilder().id(film.getId()).build()).orElseThrow();
+        assertEquals(Set.of(1, 2), updated.getLikedUsers());
+        assertEquals(Set.of(1, 2), filmDao.get(film.getId()).orElseThrow().getLikedUsers());
+        filmDao.saveLike(film.getId(), 3);
+        restart();
+
+        Film recovered = openFilms(1000).get(film.getId()).orElseThrow();
+        assertEquals("film updated", recovered.getName());
+        assertEquals(Set.of(1, 2, 3), recovered.getLikedUsers());
+    }
+
+    @Test
+    public void applyNothingAfterJournalFailure() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(1000);
+        InMemoryUserDaoImpl userDao = openUsers(1000);
+        Film film = filmDao.add(newFilm("film"));
+        User user = userDao.add(newUser("user"));
+        User friend = userDao.add(newUser("friend"));
+        // a closed log channel fails the next write like a full disk would
+        for (Journal journal : journals) {
+            journal.close();
+        }
+
+        assertThrows(DataAccessResourceFailureException.class, () -> filmDao.saveLike(film.getId(), 1));
+        assertThrows(DataAccessResourceFailureException.class, () -> filmDao.add(newFilm("other")));
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> userDao.addFriend(user.getId(), friend.getId()));
+        assertEquals(Set.of(), filmDao.get(film.getId()).orElseThrow().getLikedUsers());
+        assertEquals(List.of(film), filmDao.getAll());
+        assertEquals(List.of(), userDao.getFriends(user.getId()).orElseThrow());
+    }
+
+    @Test
+    public void keepLikesOfConcurrentWriters() throws Exception {
+        InMemoryFilmDaoImpl filmDao = openFilms(1_000_000);
+        for (int i = 0; i < 20; i++) {
+            filmDao.add(newFilm("film " + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int firstUser = thread * 1000;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        assertTrue(filmDao.saveLike(i % 20 + 1, firstUser + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        restart();
+
+        InMemoryFilmDaoImpl recovered = openFilms(1_000_000);
+        assertEquals(1600, recovered.getLikesCount().values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(80, recovered.get(1).orElseThrow().getLikes());
+    }
+
+    @Test
+    public void snapshotInBackground() throws Exception {
+        InMemoryFilmDaoImpl filmDao = openFilms(100);
+        for (int i = 0; i < 250; i++) {
+            filmDao.add(newFilm("film " + i));
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (files("films").stream().noneMatch(file -> file.startsWith("snapshot-"))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        restart();
+
+        assertTrue(files("films").stream().anyMatch(file -> file.startsWith("snapshot-")), files("films").toString());
+        assertEquals(250, openFilms(100).getAll().size());
+    }
+
+    @Test
+    public void recoverLargeState() throws IOException {
+        InMemoryFilmDaoImpl filmDao = openFilms(10_000_000);
+        Random random = new Random(3);
+        for (int batch = 0; batch < 20; batch++) {
+            List<Film> films = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                films.add(newFilm("film " + batch + " " + i));
+            }
+            List<Like> likes = filmDao.addAll(films)
+                    .stream()
+                    .flatMap(film -> Stream.of(1, 2, 3).map(j -> new Like(film.getId(), random.nextInt(100_000))))
+                    .collect(Collectors.toList());
+            filmDao.saveLikes(likes);
+        }
+        filmDao.snapshot();
+        for (int i = 0; i < 10_000; i++) {
+            filmDao.saveLike(random.nextInt(200_000) + 1, 100_000 + i);
+        }
+        Map<Integer, Integer> likes = filmDao.getLikesCount();
+        restart();
+
+        long start = System.nanoTime();
+        InMemoryFilmDaoImpl recovered = openFilms(10_000_000);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(likes, recovered.getLikesCount());
+        assertTrue(millis < 10_000, "recovery took " + millis + " ms");
+    }
+
+    private InMemoryFilmDaoImpl openFilms(long snapshotEvery) {
+        Journal journal = new Journal(directory.resolve("films"), snapshotEvery, 2);
+        journals.add(journal);
+        return new InMemoryFilmDaoImpl(journal, anyUser);
+    }
+
+    private InMemoryUserDaoImpl openUsers(long snapshotEvery) {
+        Journal journal = new Journal(directory.resolve("users"), snapshotEvery, 2);
+        journals.add(journal);
+        return new InMemoryUserDaoImpl(journal);
+    }
+
+    private void restart() throws IOException {
+        afterEach();
+        journals.clear();
+    }
+
+    private List<String> files(String store) throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve(store))) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> !name.equals(".lock"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
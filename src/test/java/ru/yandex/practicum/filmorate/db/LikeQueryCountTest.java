@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate.db;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
+import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
+import ru.yandex.practicum.filmorate.dao.UserDaoImpl;
+import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.index.FilmAutocomplete;
+import ru.yandex.practicum.filmorate.index.FilmRecommender;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.HeavyHitters;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counts the statements sent to the database per like.
+ */
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class LikeQueryCountTest {
+    private final DataSource dataSource;
+
+    private final AtomicInteger statements = new AtomicInteger();
+
+    private FilmDaoImpl filmDao;
+
+    private UserDaoImpl userDao;
+
+    private FilmService filmService;
+
+    private Film film;
+
+    private User user;
+
+    @BeforeEach
+    public void beforeEach() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(countingDataSource(dataSource));
+        FilmCache filmCache = new FilmCache(1000);
+        GenreDaoImpl genreDao = new GenreDaoImpl(jdbcTemplate, filmCache);
+        filmDao = new FilmDaoImpl(jdbcTemplate, genreDao, new RatingDaoImpl(jdbcTemplate), filmCache);
+        userDao = new UserDaoImpl(jdbcTemplate);
+        filmService = new FilmService(filmDao, userDao, genreDao, new PopularityIndex(), new TrendingIndex(), new HeavyHitters(64, 2, 10), new FilmRecommender(50, 1), new FilmSearchIndex(1), new FilmAutocomplete(), event -> { });
+        film = filmDao.add(Film.builder()
+                .name("James Bond")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>())
+                .build());
+        user = userDao.add(User.builder()
+                .name("Rayan Buc")
+                .email("test@mail.ru")
+                .birthday(LocalDate.of(1991, 11, 11))
+                .login("test")
+                .build());
+        filmCache.invalidate(film.getId());
+    }
+
+    @Test
+    public void testLikeIsOneWriteRoundTrip() {
+        int before = countStatements(() -> {
+            userDao.get(user.getId());
+            filmDao.get(film.getId());
+            filmDao.saveLike(film.getId(), user.getId());
+        });
+        filmDao.removeLike(film.getId(), user.getId());
+
+        int like = countStatements(() -> filmService.like(film.getId(), user.getId()));
+        int repeatedLike = countStatements(() -> filmService.like(film.getId(), user.getId()));
+        int unlike = countStatements(() -> filmService.deleteLike(film.getId(), user.getId()));
+
+        assertTrue(before >= 5, "pre-read path: user, film, genres, insert, counter (" + before + ")");
+        assertEquals(2, like, "insert and counter update");
+        assertEquals(1, repeatedLike, "insert only");
+        assertEquals(2, unlike, "delete and counter update");
+    }
+
+    @Test
+    public void testMissingFilmOrUserIsDetectedByForeignKeys() {
+        int missingFilm = countStatements(() ->
+                assertThrows(ObjectNotFoundException.class, () -> filmService.like(film.getId() + 1000, user.getId())));
+        int missingUser = countStatements(() ->
+                assertThrows(ObjectNotFoundException.class, () -> filmService.like(film.getId(), user.getId() + 1000)));
+
+        assertEquals(1, missingFilm);
+        assertEquals(1, missingUser);
+    }
+
+    private int countStatements(Runnable runnable) {
+        statements.set(0);
+        runnable.run();
+        return statements.get();
+    }
+
+    private DataSource countingDataSource(DataSource target) {
+        DataSource transactionAware = new TransactionAwareDataSourceProxy(target);
+        return proxy(DataSource.class, transactionAware, (method, result) -> method.getName().equals("getConnection")
+                ? proxy(Connection.class, result, (connectionMethod, statement) -> {
+                    if (connectionMethod.getName().startsWith("prepare") || connectionMethod.getName().equals("createStatement")) {
+                        statements.incrementAndGet();
+                    }
+                    return statement;
+                })
+                : result);
+    }
+
+    private interface ResultDecorator {
+        Object decorate(Method method, Object result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, ResultDecorator decorator) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            try {
+                return decorator.decorate(method, method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.db;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
+import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
+import ru.yandex.practicum.filmorate.dao.UserDaoImpl;
+import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
+import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PopularityIndexTest {
+    private final JdbcTemplate jdbcTemplate;
+
+    private final FilmCache filmCache = new FilmCache(1000);
+
+    private FilmDao filmDao;
+
+    private UserDao userDao;
+
+    @BeforeAll
+    public void beforeAll() {
+        filmDao = new FilmDaoImpl(jdbcTemplate, new GenreDaoImpl(jdbcTemplate, filmCache), new RatingDaoImpl(jdbcTemplate), filmCache);
+        userDao = new UserDaoImpl(jdbcTemplate);
+    }
+
+    @Test
+    public void testIndexIsConsistentWithSql() {
+        Random random = new Random(42);
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            films.add(filmDao.add(Film.builder()
+                    .name("Film " + i)
+                    .description("Good film")
+                    .duration(2)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .mpa(new Rating(1, "G"))
+                    .genres(new LinkedHashSet<>())
+                    .build()));
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            users.add(userDao.add(User.builder()
+                    .name("user " + i)
+                    .email("popular" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1991, 11, 11))
+                    .login("popular" + i)
+                    .build()));
+        }
+        for (int i = 0; i < 200; i++) {
+            Film film = films.get(random.nextInt(films.size()));
+            filmDao.saveLike(film.getId(), users.get(random.nextInt(users.size())).getId());
+        }
+
+        PopularityIndex index = new PopularityIndex();
+        index.rebuild(filmDao.getLikesCount());
+        assertEquals(getPopularIds(10), index.getTop(10));
+
+        for (int i = 0; i < 200; i++) {
+            int filmId = films.get(random.nextInt(films.size())).getId();
+            int userId = users.get(random.nextInt(users.size())).getId();
+            if (random.nextBoolean()) {
+                if (filmDao.saveLike(filmId, userId)) {
+                    index.update(filmId, 1);
+                }
+            } else if (filmDao.removeLike(filmId, userId).isPresent()) {
+                index.update(filmId, -1);
+            }
+        }
+        assertEquals(getPopularIds(10), index.getTop(10));
+        assertEquals(getPopularIds(100), index.getTop(100));
+    }
+
+    private List<Integer> getPopularIds(int count) {
+        return filmDao.getPopularFilms(count)
+                .stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+}
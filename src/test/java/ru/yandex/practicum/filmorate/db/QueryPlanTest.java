@@ -0,0 +1,307 @@
+package ru.yandex.practicum.filmorate.db;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
+import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
+import ru.yandex.practicum.filmorate.dao.UserDaoImpl;
+import ru.yandex.practicum.filmorate.metrics.StatementMetrics;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every statement of the DAO implementations against a seeded database and checks with EXPLAIN
+ * that only the expected tables are scanned, the rest must be read through an index.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanTest {
+    private static final int USERS = 10_000;
+
+    private static final int FILMS = 10_000;
+
+    private static final Path DAO_SOURCES = Path.of("src/main/java/ru/yandex/practicum/filmorate/dao");
+
+    private static final Pattern STATEMENT_NAME = Pattern.compile("/\\* (\\w+\\.\\w+) \\*/");
+
+    // a table followed by the index it is read with, a scan when the index comment has no condition
+    private static final Pattern TABLE_ACCESS = Pattern.compile(
+            "\"?PUBLIC\"?\\.\"?(\\w+)\"?(?: \"\\w+\")?\\s*/\\* PUBLIC\\.\\w+(?:\\.tableScan)?( \\*/|:)");
+
+    // statements that read whole tables on purpose, the popular films read the top of the likes index
+    private static final Map<String, Set<String>> ALLOWED_SCANS = Map.ofEntries(
+            Map.entry("film.getAll", Set.of("FILMS", "RATINGS")),
+            Map.entry("film.streamAll", Set.of("FILMS")),
+            Map.entry("film.getPopular", Set.of("FILMS")),
+            Map.entry("film.getPopularByGenre", Set.of("FILMS")),
+            Map.entry("film.getLikesCount", Set.of("FILMS")),
+            Map.entry("film.rebuildLikesCount", Set.of("FILMS")),
+            Map.entry("film.streamLikes", Set.of("LIKES")),
+            Map.entry("genre.getAll", Set.of("GENRES")),
+            Map.entry("rating.getAll", Set.of("RATINGS")),
+            Map.entry("user.getAll", Set.of("USERS")),
+            Map.entry("user.getFriendEdges", Set.of("FRIENDS")));
+
+    // top-n statements that have to stop after n rows instead of sorting everything they match
+    private static final Set<String> INDEX_SORTED = Set.of(
+            "film.getPopular", "film.getPopularByGenre", "film.getPopularByYear", "film.getPopularByGenreAndYear");
+
+    private final Map<String, CapturedStatement> statements = new LinkedHashMap<>();
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    public void beforeAll() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .setScriptEncoding("UTF-8")
+                .addScripts("schema.sql", "data.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("insert into USERS (EMAIL, LOGIN, NAME, BIRTHDAY) "
+                + "select concat('user', X, '@mail.ru'), concat('user', X), concat('user', X), '1990-01-01' from SYSTEM_RANGE(1, ?)", USERS);
+        jdbcTemplate.update("insert into FILMS (NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) "
+                + "select concat('film', X), 'seed', DATEADD(DAY, -MOD(X * 7, 365 * 50), DATE '2020-01-01'), 90, MOD(X, 5) + 1 from SYSTEM_RANGE(1, ?)", FILMS);
+        jdbcTemplate.update("insert into FILM_GENRES (FILM_ID, GENRE_ID) "
+                + "select X, MOD(X, 6) + 1 from SYSTEM_RANGE(1, ?) union select X, MOD(X + 3, 6) + 1 from SYSTEM_RANGE(1, ?)", FILMS, FILMS);
+        jdbcTemplate.update("insert into FRIENDS (USER_ID, FRIEND_ID) "
+                + "select u.X, MOD(u.X + f.X, ?) + 1 from SYSTEM_RANGE(1, ?) u, SYSTEM_RANGE(1, 10) f", USERS, USERS);
+        jdbcTemplate.update("insert into LIKES (USER_ID, FILM_ID, CREATED_AT) "
+                + "select u.X, MOD(u.X * 31 + f.X, ?) + 1, DATEADD(MINUTE, -MOD(u.X * f.X, 60 * 24 * 60), CURRENT_TIMESTAMP) "
+                + "from SYSTEM_RANGE(1, ?) u, SYSTEM_RANGE(1, 10) f", FILMS, USERS);
+        jdbcTemplate.update("update FILMS f set LIKES_COUNT = (select count(*) from LIKES l where l.FILM_ID = f.ID)");
+        jdbcTemplate.execute("analyze");
+    }
+
+    @AfterAll
+    public void afterAll() {
+        database.shutdown();
+    }
+
+    @Test
+    public void statementsUseIndexes() throws Exception {
+        runDaoStatements(new JdbcTemplate(capturingDataSource(database)));
+
+        Set<String> missing = getStatementNames();
+        missing.removeAll(statements.keySet());
+        assertTrue(missing.isEmpty(), "statements are not covered by the test: " + missing);
+
+        List<String> failures = new ArrayList<>();
+        for (CapturedStatement statement : statements.values()) {
+            String plan = explain(statement);
+            Set<String> scanned = new TreeSet<>();
+            Matcher matcher = TABLE_ACCESS.matcher(plan);
+            while (matcher.find()) {
+                if (!matcher.group(2).equals(":")) {
+                    scanned.add(matcher.group(1));
+                }
+            }
+            scanned.removeAll(ALLOWED_SCANS.getOrDefault(statement.name, Set.of()));
+            if (!scanned.isEmpty()) {
+                failures.add(statement.name + " scans " + scanned + ":\n" + plan);
+            }
+            if (INDEX_SORTED.contains(statement.name) && !plan.contains("/* index sorted */")) {
+                failures.add(statement.name + " is not sorted by an index:\n" + plan);
+            }
+        }
+        assertTrue(failures.isEmpty(), String.join("\n\n", failures));
+    }
+
+    private void runDaoStatements(JdbcTemplate template) {
+        FilmCache filmCache = new FilmCache(1000);
+        GenreDaoImpl genreDao = new GenreDaoImpl(template, filmCache);
+        RatingDaoImpl ratingDao = new RatingDaoImpl(template);
+        FilmDaoImpl filmDao = new FilmDaoImpl(template, genreDao, ratingDao, filmCache);
+        UserDaoImpl userDao = new UserDaoImpl(template);
+        userDao.loadFriendGraph();
+        genreDao.refresh();
+        ratingDao.refresh();
+
+        Film film = filmDao.add(newFilm());
+        filmDao.addAll(List.of(newFilm(), newFilm()));
+        filmDao.update(film.toBuilder().genres(new LinkedHashSet<>(List.of(new Genre(1, null)))).build());
+        genreDao.addFilmGenre(film.toBuilder().genres(new LinkedHashSet<>(List.of(new Genre(1, null)))).build());
+        genreDao.addFilmGenres(List.of(filmDao.add(newFilm()).toBuilder().genres(new LinkedHashSet<>(List.of(new Genre(2, null)))).build()));
+        genreDao.deleteFilmGenre(film);
+        filmCache.invalidate(film.getId());
+        filmDao.getAll();
+        filmDao.getPage(FILMS / 2, 10);
+        filmDao.streamAll(streamed -> {
+        });
+        filmDao.get(FILMS / 2);
+        filmDao.getByIds(List.of(1, 2, 3));
+        filmDao.getExistingIds(List.of(1, 2, 3));
+        filmDao.getPopularFilms(10);
+        filmDao.getPopularFilms(10, 1, null);
+        filmDao.getPopularFilms(10, null, 2000);
+        filmDao.getPopularFilms(10, 1, 2000);
+        filmDao.getLikesCount();
+        filmDao.getLikesCount(List.of(1, 2, 3));
+        filmDao.streamLikes(like -> {
+        });
+        filmDao.getHourlyLikesSince(LocalDateTime.now().minusHours(24));
+        filmDao.rebuildLikesCount();
+
+        User user = userDao.add(newUser("plan"));
+        userDao.addAll(List.of(newUser("plan1"), newUser("plan2")));
+        userDao.update(user);
+        userDao.getAll();
+        userDao.getPage(USERS / 2, 10);
+        userDao.get(USERS / 2);
+        userDao.getExistingIds(List.of(1, 2, 3));
+        userDao.getExistingLogins(List.of("user1", "plan"));
+        userDao.getExistingEmails(List.of("user1@mail.ru"));
+        userDao.addFriend(user.getId(), 1);
+        userDao.deleteFriend(user.getId(), 1);
+        userDao.getFriends(1);
+        userDao.getCommonFriends(1, 2);
+
+        filmDao.saveLike(film.getId(), user.getId());
+        filmDao.hasLike(film.getId(), user.getId());
+        filmDao.likeTargetsExist(film.getId(), user.getId());
+        filmDao.getLikedAt(film.getId(), user.getId());
+        filmDao.removeLike(film.getId(), user.getId());
+        filmDao.saveLikes(List.of(new Like(film.getId(), user.getId())));
+        filmDao.removeLikes(List.of(new Like(film.getId(), user.getId())));
+    }
+
+    private Set<String> getStatementNames() throws IOException {
+        Set<String> names = new TreeSet<>();
+        try (Stream<Path> sources = Files.walk(DAO_SOURCES)) {
+            for (Path source : sources.filter(path -> path.toString().endsWith(".java")).collect(Collectors.toList())) {
+                Matcher matcher = STATEMENT_NAME.matcher(Files.readString(source));
+                while (matcher.find()) {
+                    names.add(matcher.group(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    private String explain(CapturedStatement statement) throws SQLException {
+        try (Connection connection = database.getConnection();
+             PreparedStatement ps = connection.prepareStatement("explain " + statement.sql)) {
+            for (Map.Entry<Integer, Object> parameter : statement.parameters.entrySet()) {
+                ps.setObject(parameter.getKey(), parameter.getValue());
+            }
+            try (ResultSet resultSet = ps.executeQuery()) {
+                StringBuilder plan = new StringBuilder();
+                while (resultSet.next()) {
+                    plan.append(resultSet.getString(1));
+                }
+                return plan.toString();
+            }
+        }
+    }
+
+    private static Film newFilm() {
+        return Film.builder()
+                .name("Plan")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .build();
+    }
+
+    private static User newUser(String login) {
+        return User.builder()
+                .name(login)
+                .email(login + "@mail.ru")
+                .birthday(LocalDate.of(1991, 11, 11))
+                .login(login)
+                .build();
+    }
+
+    private DataSource capturingDataSource(DataSource target) {
+        return proxy(DataSource.class, target, (method, args, result) -> "getConnection".equals(method.getName())
+                ? proxy(Connection.class, result, (connectionMethod, connectionArgs, statement) -> {
+                    if (statement instanceof PreparedStatement) {
+                        return capturingStatement(PreparedStatement.class, (Statement) statement, (String) connectionArgs[0]);
+                    }
+                    return statement instanceof Statement ? capturingStatement(Statement.class, (Statement) statement, null) : statement;
+                })
+                : result);
+    }
+
+    private <T extends Statement> T capturingStatement(Class<T> type, Statement statement, String preparedSql) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+        return proxy(type, statement, (method, args, result) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("addBatch") || name.startsWith("execute")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                String statementName = StatementMetrics.statementName(sql);
+                statements.putIfAbsent(statementName, new CapturedStatement(statementName, sql, new TreeMap<>(parameters)));
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, Interceptor interceptor) {
+        return (T) Proxy.newProxyInstance(QueryPlanTest.class.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            return interceptor.intercept(method, args, result);
+        });
+    }
+
+    private interface Interceptor {
+        Object intercept(Method method, Object[] args, Object result) throws Throwable;
+    }
+
+    private static class CapturedStatement {
+        private final String name;
+
+        private final String sql;
+
+        private final Map<Integer, Object> parameters;
+
+        private CapturedStatement(String name, String sql, Map<Integer, Object> parameters) {
+            this.name = name;
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Starts on a database created by the first release, like the file database of an existing installation.
+ */
+class SchemaMigrationTest {
+    private final SingleConnectionDataSource dataSource =
+            new SingleConnectionDataSource("jdbc:h2:mem:baseline", "sa", "password", true);
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    @AfterEach
+    public void afterEach() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void schemaUpgradesBaselineDatabase() {
+        new ResourceDatabasePopulator(new ClassPathResource("db/baseline-schema.sql")).execute(dataSource);
+        jdbcTemplate.update("insert into RATINGS (ID, NAME) values (1, 'G')");
+        jdbcTemplate.update("insert into FILMS (NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) "
+                + "values ('first', 'film', '1999-05-01', 90, 1), ('second', 'film', '2004-05-01', 90, 1)");
+        jdbcTemplate.update("insert into USERS (EMAIL, LOGIN, BIRTHDAY) "
+                + "values ('a@mail.ru', 'a', '1990-01-01'), ('b@mail.ru', 'b', '1990-01-01')");
+        jdbcTemplate.update("insert into LIKES (USER_ID, FILM_ID) values (1, 1), (2, 1), (1, 2)");
+
+        ResourceDatabasePopulator schema = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+        schema.execute(dataSource);
+
+        assertEquals(List.of(2, 1), jdbcTemplate.queryForList("select LIKES_COUNT from FILMS order by ID", Integer.class));
+        assertEquals(List.of(1999, 2004), jdbcTemplate.queryForList("select RELEASE_YEAR from FILMS order by ID", Integer.class));
+        assertEquals(3, jdbcTemplate.queryForObject("select count(*) from LIKES where CREATED_AT is not null", Integer.class));
+
+        // the backfill runs once, later counters are kept by the application
+        jdbcTemplate.update("update FILMS set LIKES_COUNT = 5 where ID = 2");
+        schema.execute(dataSource);
+        assertEquals(5, jdbcTemplate.queryForObject("select LIKES_COUNT from FILMS where ID = 2", Integer.class));
+    }
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.db;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
+import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
+import ru.yandex.practicum.filmorate.dao.UserDaoImpl;
+import ru.yandex.practicum.filmorate.metrics.InstrumentedDataSource;
+import ru.yandex.practicum.filmorate.metrics.LatencyHistogram;
+import ru.yandex.practicum.filmorate.metrics.StatementMetrics;
+import ru.yandex.practicum.filmorate.model.StatementStats;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class StatementMetricsTest {
+    private final DataSource dataSource;
+
+    private StatementMetrics metrics;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void beforeEach() {
+        metrics = new StatementMetrics(0);
+        jdbcTemplate = new JdbcTemplate(InstrumentedDataSource.wrap(new TransactionAwareDataSourceProxy(dataSource), metrics));
+    }
+
+    @Test
+    public void testStatementsAreRecordedByName() {
+        FilmCache filmCache = new FilmCache(10);
+        GenreDaoImpl genreDao = new GenreDaoImpl(jdbcTemplate, filmCache);
+        FilmDaoImpl filmDao = new FilmDaoImpl(jdbcTemplate, genreDao, new RatingDaoImpl(jdbcTemplate), filmCache);
+        UserDaoImpl userDao = new UserDaoImpl(jdbcTemplate);
+
+        userDao.add(User.builder()
+                .name("Rayan Buc")
+                .email("metrics@mail.ru")
+                .birthday(LocalDate.of(1991, 11, 11))
+                .login("metrics")
+                .build());
+        genreDao.refresh();
+        filmDao.getPopularFilms(10);
+        filmDao.getPopularFilms(10);
+
+        Map<String, StatementStats> stats = metrics.getStats()
+                .stream()
+                .collect(Collectors.toMap(StatementStats::getStatement, Function.identity()));
+        assertEquals(2, stats.get("film.getPopular").getCalls());
+        assertEquals(1, stats.get("user.add").getCalls());
+        assertEquals(1, stats.get("user.add").getRows());
+        assertEquals(6, stats.get("genre.getAll").getRows());
+        assertTrue(stats.get("film.getPopular").getP999Ms() >= stats.get("film.getPopular").getP50Ms());
+    }
+
+    @Test
+    public void testFailedStatementsAreCounted() {
+        try {
+            jdbcTemplate.update("/* broken */ insert into LIKES (USER_ID, FILM_ID) values (-1, -1)");
+        } catch (RuntimeException ignored) {
+        }
+
+        StatementStats stats = metrics.getStats().get(0);
+        assertEquals("broken", stats.getStatement());
+        assertEquals(1, stats.getErrors());
+    }
+
+    @Test
+    public void testStatementNames() {
+        assertEquals("user.commonFriends", StatementMetrics.statementName("/* user.commonFriends */ select * from USERS"));
+        assertEquals("select.films", StatementMetrics.statementName("select f.*, r.NAME from FILMS f join RATINGS r"));
+        assertEquals("delete.likes", StatementMetrics.statementName("DELETE FROM likes where ID = ?"));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100L);
+        }
+
+        assertEquals(50_000, histogram.getPercentile(0.5), 50_000 * 0.125);
+        assertEquals(99_000, histogram.getPercentile(0.99), 99_000 * 0.125);
+        assertEquals(100_000, histogram.getPercentile(1.0));
+        assertTrue(histogram.getPercentile(0.5) >= 50_000);
+    }
+}
@@ -19,6 +19,7 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasProperty;
@@ -168,4 +169,46 @@ class UserDAOTest {
                 hasProperty("id", is(friend.getId()))
         ));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetPage() {
+        User newUser = User.builder()
+                .name("user2")
+                .email("page@mail.ru")
+                .birthday(LocalDate.of(1991, 11, 11))
+                .login("page")
+                .build();
+        newUser = userDao.add(newUser);
+
+        List<User> firstPage = userDao.getPage(user.getId() - 1, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(user.getId(), firstPage.get(0).getId());
+
+        List<User> secondPage = userDao.getPage(user.getId(), 10);
+        assertEquals(1, secondPage.size());
+        assertEquals(newUser.getId(), secondPage.get(0).getId());
+    }
+
+    @Test
+    public void testAddUsersInBatch() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            users.add(User.builder()
+                    .name("Imported " + i)
+                    .email(i == 0 ? null : "imported" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1991, 11, 11))
+                    .login("imported" + i)
+                    .build());
+        }
+
+        userDao.addAll(users);
+
+        for (User importedUser : users) {
+            User savedUser = userDao.get(importedUser.getId()).get();
+            assertEquals(importedUser.getLogin(), savedUser.getLogin());
+            assertEquals(importedUser.getEmail(), savedUser.getEmail());
+        }
+        assertEquals(Set.of("test", "imported1"), userDao.getExistingLogins(List.of("test", "imported1", "unknown")));
+        assertEquals(Set.of("imported2@mail.ru"), userDao.getExistingEmails(List.of("imported2@mail.ru", "unknown@mail.ru")));
+    }
+}
@@ -0,0 +1,273 @@
+package ru.yandex.practicum.filmorate.db;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
+import ru.yandex.practicum.filmorate.dao.FilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.GenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.RatingDaoImpl;
+import ru.yandex.practicum.filmorate.dao.UserDaoImpl;
+import ru.yandex.practicum.filmorate.dao.WriteBehindFilmDao;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// flushes commit in transactions of their own, so the rows of a test are committed and deleted after it
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class WriteBehindFilmDaoTest {
+    private final JdbcTemplate jdbcTemplate;
+
+    private final FilmCache filmCache = new FilmCache(1000);
+
+    private final PlatformTransactionManager transactionManager;
+
+    private GenreDaoImpl genreDao;
+
+    private FilmDaoImpl filmDao;
+
+    private Film film;
+
+    private User user;
+
+    private User otherUser;
+
+    @BeforeEach
+    public void beforeEach() {
+        genreDao = new GenreDaoImpl(jdbcTemplate, filmCache);
+        filmDao = new FilmDaoImpl(jdbcTemplate, genreDao, new RatingDaoImpl(jdbcTemplate), filmCache);
+        UserDaoImpl userDao = new UserDaoImpl(jdbcTemplate);
+        film = filmDao.add(Film.builder()
+                .name("James Bond")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>())
+                .build());
+        user = userDao.add(newUser("first"));
+        otherUser = userDao.add(newUser("second"));
+    }
+
+    @AfterEach
+    public void afterEach() {
+        jdbcTemplate.update("delete from LIKES where FILM_ID in (select ID from FILMS where NAME like 'James Bond%')");
+        jdbcTemplate.update("delete from FILM_GENRES where FILM_ID in (select ID from FILMS where NAME like 'James Bond%')");
+        jdbcTemplate.update("delete from FILMS where NAME like 'James Bond%'");
+        jdbcTemplate.update("delete from USERS where LOGIN in ('first', 'second', 'third')");
+    }
+
+    @Test
+    public void testLikeIsWrittenOnFlush() {
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(filmDao, transactionManager, 1000, 100, 100);
+
+        assertTrue(writeBehindDao.saveLike(film.getId(), user.getId()));
+        assertFalse(writeBehindDao.saveLike(film.getId(), user.getId()));
+        assertTrue(writeBehindDao.hasLike(film.getId(), user.getId()));
+        assertFalse(filmDao.hasLike(film.getId(), user.getId()));
+
+        writeBehindDao.flush();
+
+        assertEquals(0, writeBehindDao.getPendingCount());
+        assertTrue(filmDao.hasLike(film.getId(), user.getId()));
+        assertEquals(1, likesCount());
+    }
+
+    @Test
+    public void testLikeAndUnlikeAreCoalesced() {
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(filmDao, transactionManager, 1000, 100, 100);
+
+        assertTrue(writeBehindDao.saveLike(film.getId(), user.getId()));
+        assertTrue(writeBehindDao.removeLike(film.getId(), user.getId()).isPresent());
+        assertFalse(writeBehindDao.removeLike(film.getId(), user.getId()).isPresent());
+
+        assertEquals(0, writeBehindDao.getPendingCount());
+        assertFalse(writeBehindDao.hasLike(film.getId(), user.getId()));
+    }
+
+    @Test
+    public void testUnlikeOfPersistedLike() {
+        filmDao.saveLike(film.getId(), user.getId());
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(filmDao, transactionManager, 1000, 100, 100);
+
+        assertFalse(writeBehindDao.saveLike(film.getId(), user.getId()));
+        assertEquals(0, writeBehindDao.getPendingCount());
+        assertEquals(filmDao.getLikedAt(film.getId(), user.getId()), writeBehindDao.removeLike(film.getId(), user.getId()));
+        assertFalse(writeBehindDao.hasLike(film.getId(), user.getId()));
+
+        assertEquals(0, writeBehindDao.getLikesCount().get(film.getId()));
+
+        assertFalse(filmDao.hasLike(film.getId(), user.getId()));
+        assertEquals(0, likesCount());
+    }
+
+    @Test
+    public void testBufferIsFlushedWhenFull() {
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(filmDao, transactionManager, 1000, 100, 2);
+
+        writeBehindDao.saveLike(film.getId(), user.getId());
+        assertEquals(1, writeBehindDao.getPendingCount());
+        writeBehindDao.saveLike(film.getId(), otherUser.getId());
+
+        assertEquals(0, writeBehindDao.getPendingCount());
+        assertEquals(2, likesCount());
+    }
+
+    @Test
+    public void testRejectedRowIsDroppedFromFailedBatch() {
+        Like rejected = new Like(film.getId(), otherUser.getId());
+        FilmDaoImpl rejectingDao = new FilmDaoImpl(jdbcTemplate, new GenreDaoImpl(jdbcTemplate, filmCache),
+                new RatingDaoImpl(jdbcTemplate), filmCache) {
+            @Override
+            public List<Boolean> saveLikes(List<Like> likes) {
+                if (likes.contains(rejected)) {
+                    throw new DataIntegrityViolationException("like is rejected");
+                }
+                return super.saveLikes(likes);
+            }
+        };
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(rejectingDao, transactionManager, 1000, 100, 100);
+
+        writeBehindDao.saveLike(film.getId(), user.getId());
+        writeBehindDao.saveLike(film.getId(), otherUser.getId());
+        writeBehindDao.flush();
+
+        assertEquals(0, writeBehindDao.getPendingCount());
+        assertEquals(1, writeBehindDao.getDroppedCount());
+        assertTrue(filmDao.hasLike(film.getId(), user.getId()));
+        assertFalse(filmDao.hasLike(film.getId(), otherUser.getId()));
+        assertEquals(1, likesCount());
+    }
+
+    @Test
+    public void testFullBufferRejectsLikesWhileDatabaseFails() {
+        User thirdUser = new UserDaoImpl(jdbcTemplate).add(newUser("third"));
+        AtomicBoolean failing = new AtomicBoolean(true);
+        FilmDaoImpl failingDao = new FilmDaoImpl(jdbcTemplate, new GenreDaoImpl(jdbcTemplate, filmCache),
+                new RatingDaoImpl(jdbcTemplate), filmCache) {
+            @Override
+            public List<Boolean> saveLikes(List<Like> likes) {
+                if (failing.get()) {
+                    throw new DataAccessResourceFailureException("database is down");
+                }
+                return super.saveLikes(likes);
+            }
+        };
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(failingDao, transactionManager, 60_000, 100, 2);
+
+        writeBehindDao.saveLike(film.getId(), user.getId());
+        // fills the buffer, the flush of the caller fails and the likes are kept
+        writeBehindDao.saveLike(film.getId(), otherUser.getId());
+        assertEquals(2, writeBehindDao.getPendingCount());
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> writeBehindDao.saveLike(film.getId(), thirdUser.getId()));
+        assertEquals(2, writeBehindDao.getPendingCount());
+        assertEquals(0, writeBehindDao.getDroppedCount());
+
+        failing.set(false);
+        writeBehindDao.flush();
+
+        assertEquals(0, writeBehindDao.getPendingCount());
+        assertTrue(writeBehindDao.saveLike(film.getId(), thirdUser.getId()));
+        writeBehindDao.flush();
+        assertEquals(3, likesCount());
+    }
+
+    @Test
+    public void testFlushOfRolledBackRequestIsCommitted() {
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(filmDao, transactionManager, 1000, 100, 2);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            writeBehindDao.saveLike(film.getId(), user.getId());
+            // fills the buffer, so this request flushes it
+            writeBehindDao.saveLike(film.getId(), otherUser.getId());
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, writeBehindDao.getPendingCount());
+        assertTrue(filmDao.hasLike(film.getId(), user.getId()));
+        assertTrue(filmDao.hasLike(film.getId(), otherUser.getId()));
+        assertEquals(2, likesCount());
+    }
+
+    @Test
+    public void testPopularFilmsMergeBufferedLikesWithoutFlush() {
+        Film first = addFilm("James Bond 2", 1901, 1);
+        Film second = addFilm("James Bond 3", 1901, 1);
+        Film otherGenre = addFilm("James Bond 4", 1901, 2);
+        filmDao.saveLike(first.getId(), user.getId());
+        WriteBehindFilmDao writeBehindDao = new WriteBehindFilmDao(filmDao, transactionManager, 60_000, 100, 100);
+
+        writeBehindDao.saveLike(second.getId(), user.getId());
+        writeBehindDao.saveLike(second.getId(), otherUser.getId());
+        writeBehindDao.saveLike(otherGenre.getId(), user.getId());
+        writeBehindDao.removeLike(first.getId(), user.getId());
+
+        assertEquals(List.of(second.getId()), ids(writeBehindDao.getPopularFilms(1, 1, 1901)));
+        assertEquals(List.of(second.getId(), first.getId()), ids(writeBehindDao.getPopularFilms(10, 1, 1901)));
+        assertEquals(List.of(second.getId(), otherGenre.getId(), first.getId()),
+                ids(writeBehindDao.getPopularFilms(10, null, 1901)));
+        assertEquals(4, writeBehindDao.getPendingCount());
+
+        writeBehindDao.flush();
+        assertEquals(List.of(second.getId(), otherGenre.getId(), first.getId()),
+                ids(writeBehindDao.getPopularFilms(10, null, 1901)));
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+
+    private Film addFilm(String name, int year, int genreId) {
+        Film newFilm = Film.builder()
+                .name(name)
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(year, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(genreId, null))))
+                .build();
+        filmDao.add(newFilm);
+        return genreDao.addFilmGenre(newFilm);
+    }
+
+    private int likesCount() {
+        return jdbcTemplate.queryForObject("select LIKES_COUNT from FILMS where ID = ?", Integer.class, film.getId());
+    }
+
+    private static User newUser(String login) {
+        return User.builder()
+                .name(login)
+                .email(login + "@mail.ru")
+                .birthday(LocalDate.of(1991, 11, 11))
+                .login(login)
+                .build();
+    }
+}
@@ -12,12 +12,17 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 import ru.yandex.practicum.filmorate.config.TestConfig;
+import ru.yandex.practicum.filmorate.index.HeavyHitters;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.PopularFilm;
 import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.SketchSnapshot;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
@@ -29,6 +34,7 @@ import java.util.stream.IntStream;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -306,6 +312,43 @@ public class FilmControllerTest {
                 .andExpect(jsonPath("$.likes", is(1)));
     }
 
+    @Test
+    public void addLikeWithMinimalResponse() throws Exception {
+        Film film = Film.builder()
+                .name("James Bond")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        String json = objectMapper.writeValueAsString(film);
+
+        String createdFilm = this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        film = objectMapper.readValue(createdFilm, Film.class);
+
+        this.mockMvc.perform(put("/films/{filmId}/like/{userId}", film.getId(), user.getId())
+                .header("Prefer", "return=minimal"))
+                .andDo(print())
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("Preference-Applied", "return=minimal"))
+                .andExpect(content().string(""));
+
+        this.mockMvc.perform(put("/films/{filmId}/like/{userId}", 999, user.getId())
+                .header("Prefer", "return=minimal"))
+                .andExpect(status().isNotFound());
+
+        this.mockMvc.perform(delete("/films/{filmId}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isNoContent());
+    }
+
     @Test
     public void addLikeToNotExistingFilm() throws Exception {
         this.mockMvc.perform(put("/films/{filmId}/like/{userId}", 999, user.getId()))
@@ -314,6 +357,35 @@ public class FilmControllerTest {
                 .andExpect(content().string(containsString("Wrong film or userId is provided")));
     }
 
+    @Test
+    public void addLikeByNotExistingUser() throws Exception {
+        Film film = Film.builder()
+                .name("James Bond")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        String createdFilm = this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        film = objectMapper.readValue(createdFilm, Film.class);
+
+        this.mockMvc.perform(put("/films/{filmId}/like/{userId}", film.getId(), 999))
+                .andDo(print())
+                .andExpect(status().isNotFound())
+                .andExpect(content().string(containsString("Wrong film or userId is provided")));
+
+        this.mockMvc.perform(get("/films/{filmId}", film.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likes", is(0)));
+    }
+
     @Test
     public void deleteLikeFromFilmPositive() throws Exception {
         Film film = Film.builder()
@@ -445,4 +517,297 @@ public class FilmControllerTest {
         assertEquals(films.getFirst(), sortedFilms.get(0), "first film is correct");
         assertEquals(films.getLast(), sortedFilms.get(sortedFilms.size() - 1), "last film is correct");
     }
+
+    @Test
+    public void getTrendingFilms() throws Exception {
+        Film film = Film.builder()
+                .name("Trending film")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        String json = objectMapper.writeValueAsString(film);
+
+        String createdFilm = this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        film = objectMapper.readValue(createdFilm, Film.class);
+
+        this.mockMvc.perform(put("/films/{filmId}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/films/trending").param("window", "24h"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("Trending film")));
+
+        this.mockMvc.perform(delete("/films/{filmId}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isNoContent());
+
+        this.mockMvc.perform(get("/films/trending").param("window", "7d"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().string(not(containsString("Trending film"))));
+    }
+
+    @Test
+    public void getApproximatePopularFilms() throws Exception {
+        Film film = Film.builder()
+                .name("Heavy hitter")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        String json = objectMapper.writeValueAsString(film);
+
+        String createdFilm = this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        film = objectMapper.readValue(createdFilm, Film.class);
+
+        this.mockMvc.perform(put("/films/{filmId}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/films/popular").param("approximate", "true"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HeavyHitters.ERROR_HEADER))
+                .andExpect(header().exists(HeavyHitters.CONFIDENCE_HEADER))
+                .andExpect(content().string(containsString("Heavy hitter")));
+
+        this.mockMvc.perform(delete("/films/{filmId}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    public void sketchIsExportedAndMergedOnlyWithSameDimensions() throws Exception {
+        String content = this.mockMvc.perform(get("/admin/sketch"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.width", is(2048)))
+                .andExpect(jsonPath("$.depth", is(5)))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        SketchSnapshot snapshot = objectMapper.readValue(content, SketchSnapshot.class);
+        assertEquals(2048 * 5, snapshot.getCounters().length);
+
+        // an empty sketch of another instance leaves the counters of this one as they are
+        SketchSnapshot empty = new SketchSnapshot(snapshot.getWidth(), snapshot.getDepth(), snapshot.getSeed(), 0,
+                new long[snapshot.getCounters().length], List.of());
+        this.mockMvc.perform(post("/admin/sketch/merge")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(empty)))
+                .andExpect(status().isNoContent());
+
+        empty.setSeed(snapshot.getSeed() + 1);
+        this.mockMvc.perform(post("/admin/sketch/merge")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(empty)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("same width, depth and seed")));
+
+        empty.setSeed(snapshot.getSeed());
+        empty.setCounters(new long[10]);
+        this.mockMvc.perform(post("/admin/sketch/merge")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(empty)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getPopularFilmsWithUnknownGenre() throws Exception {
+        this.mockMvc.perform(get("/films/popular").param("genreId", "9999"))
+                .andDo(print())
+                .andExpect(status().isNotFound())
+                .andExpect(content().string(containsString("Genre is not found")));
+    }
+
+    @Test
+    public void getApproximatePopularFilmsWithFilter() throws Exception {
+        this.mockMvc.perform(get("/films/popular").param("approximate", "true").param("year", "2000"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("can not be filtered")));
+    }
+
+    @Test
+    public void getTrendingFilmsWithWrongWindow() throws Exception {
+        this.mockMvc.perform(get("/films/trending").param("window", "1y"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("window should look like 24h or 7d")));
+    }
+
+    @Test
+    public void searchFilms() throws Exception {
+        Film film = Film.builder()
+                .name("Сталкер")
+                .description("Проводник ведёт двоих в Зону")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/films/search").param("q", "сталкер зона"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name", is("Сталкер")));
+        this.mockMvc.perform(get("/films/search").param("q", "ВЕДЕТ").param("boostPopular", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name", is("Сталкер")));
+    }
+
+    @Test
+    public void autocompleteFilms() throws Exception {
+        Film film = Film.builder()
+                .name("Зеркало")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/films/autocomplete").param("prefix", "ЗЕРК"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name", is("Зеркало")))
+                .andExpect(jsonPath("$[0].likes", is(0)));
+        this.mockMvc.perform(get("/films/autocomplete").param("prefix", "зеркала"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+        this.mockMvc.perform(get("/films/autocomplete").param("prefix", ""))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void searchFilmsWithBlankQuery() throws Exception {
+        this.mockMvc.perform(get("/films/search").param("q", " "))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void streamAllFilms() throws Exception {
+        Film film = Film.builder()
+                .name("Streamed film")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isOk());
+
+        MvcResult result = this.mockMvc.perform(get("/films/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String content = this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<Film> films = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            films.add(objectMapper.readValue(line, Film.class));
+        }
+        assertTrue(films.stream().anyMatch(f -> f.getName().equals("Streamed film")), "film is streamed");
+    }
+
+    @Test
+    public void streamPopularFilms() throws Exception {
+        MvcResult result = this.mockMvc.perform(get("/films/popular/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!result.getResponse().getContentAsString().endsWith("\n\n") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(MediaType.TEXT_EVENT_STREAM.isCompatibleWith(MediaType.parseMediaType(result.getResponse().getContentType())));
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals("event:popular", lines[0]);
+        List<PopularFilm> leaderboard = objectMapper.readValue(lines[1].substring("data:".length()), new TypeReference<>() {
+        });
+
+        String popular = this.mockMvc.perform(get("/films/popular"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<Film> films = objectMapper.readValue(popular, new TypeReference<>() {
+        });
+        assertEquals(films.stream().map(Film::getId).collect(Collectors.toList()),
+                leaderboard.stream().map(PopularFilm::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void addLikesInBatch() throws Exception {
+        Film film = Film.builder()
+                .name("Batch film")
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"))))
+                .build();
+        String createdFilm = this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        film = objectMapper.readValue(createdFilm, Film.class);
+
+        List<Like> likes = List.of(
+                new Like(film.getId(), user.getId()),
+                new Like(film.getId(), user.getId()),
+                new Like(9999, user.getId()),
+                new Like(film.getId(), 9999));
+        this.mockMvc.perform(post("/films/likes:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(likes)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[1].status", is("ALREADY_EXISTS")))
+                .andExpect(jsonPath("$[2].status", is("FILM_NOT_FOUND")))
+                .andExpect(jsonPath("$[3].status", is("USER_NOT_FOUND")));
+
+        this.mockMvc.perform(delete("/films/{filmId}/like/{userId}", film.getId(), user.getId()))
+                .andExpect(status().isNoContent());
+
+        this.mockMvc.perform(post("/films/likes:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
 }
@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.e2e;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Writes that fail on the foreign keys of H2, so it runs on the real DAOs with its own in-memory database.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:rollback;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+class FilmRollbackTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static Film film(String name, int genreId) {
+        return Film.builder()
+                .name(name)
+                .description("Good film")
+                .duration(2)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Rating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(genreId, null))))
+                .build();
+    }
+
+    @Test
+    public void filmWithUnknownGenreIsNotSuggested() throws Exception {
+        this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film("Привидение", 999))))
+                .andExpect(status().is5xxServerError());
+
+        this.mockMvc.perform(get("/films/autocomplete").param("prefix", "привид"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    public void failedUpdateKeepsPreviousName() throws Exception {
+        String response = this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film("Солярис", 1))))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Film film = objectMapper.readValue(response, Film.class);
+
+        this.mockMvc.perform(put("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film("Сатурн", 999).toBuilder().id(film.getId()).build())))
+                .andExpect(status().is5xxServerError());
+
+        this.mockMvc.perform(get("/films/autocomplete").param("prefix", "сатурн"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+        this.mockMvc.perform(get("/films/autocomplete").param("prefix", "солярис"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is(film.getId())));
+    }
+
+    @Test
+    public void rolledBackFilmTakesNoSearchSlot() throws Exception {
+        this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film("Замок", 1))))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(film("Замок замок замок", 999))))
+                .andExpect(status().is5xxServerError());
+
+        this.mockMvc.perform(get("/films/search").param("q", "замок").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name", is("Замок")));
+    }
+}
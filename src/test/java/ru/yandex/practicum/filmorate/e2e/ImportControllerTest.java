@@ -0,0 +1,129 @@
+package ru.yandex.practicum.filmorate.e2e;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import ru.yandex.practicum.filmorate.config.TestConfig;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// imported films and users can not be deleted, so they must not leak into other tests
+@SpringBootTest(classes = {TestConfig.class})
+@AutoConfigureMockMvc
+@DirtiesContext
+public class ImportControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @BeforeEach
+    public void beforeEach() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+    }
+
+    @Test
+    public void importFilmsFromNdjson() throws Exception {
+        String body = String.join("\n",
+                "{\"name\":\"Imported\",\"description\":\"Good film\",\"releaseDate\":\"2000-01-01\",\"duration\":2,\"mpa\":{\"id\":1},\"genres\":[{\"id\":1}]}",
+                "",
+                "{\"name\":\"\",\"description\":\"Good film\",\"releaseDate\":\"2000-01-01\",\"duration\":2,\"mpa\":{\"id\":1}}",
+                "{\"name\":\"Too old\",\"description\":\"Good film\",\"releaseDate\":\"1800-01-01\",\"duration\":2,\"mpa\":{\"id\":1}}",
+                "{broken");
+
+        this.mockMvc.perform(post("/films/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(body))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.failed", is(3)))
+                .andExpect(jsonPath("$.errors[0].line", is(3)))
+                .andExpect(jsonPath("$.errors[0].message", containsString("name can not be empty or null")))
+                .andExpect(jsonPath("$.errors[1].line", is(4)))
+                .andExpect(jsonPath("$.errors[2].line", is(5)));
+    }
+
+    @Test
+    public void importFilmsFromCsv() throws Exception {
+        String body = String.join("\n",
+                "name,description,releaseDate,duration,mpa,genres",
+                "Imported from csv,\"Good, \"\"quoted\"\" film\",2000-01-01,2,1,1|2",
+                "Unknown rating,Good film,2000-01-01,2,99,",
+                "Negative duration,Good film,2000-01-01,-2,1,");
+
+        this.mockMvc.perform(post("/films/import")
+                .contentType("text/csv")
+                .content(body))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.failed", is(2)))
+                .andExpect(jsonPath("$.errors[0].line", is(3)))
+                .andExpect(jsonPath("$.errors[0].message", is("Rating is not found")))
+                .andExpect(jsonPath("$.errors[1].line", is(4)));
+
+        this.mockMvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("Good, \\\"quoted\\\" film")));
+
+        this.mockMvc.perform(post("/films/import")
+                .contentType("text/csv")
+                .content("name,duration\nImported,2"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void importUsersFromCsv() throws Exception {
+        String body = String.join("\n",
+                "email,login,name,birthday",
+                "first@mail.ru,first,,1991-11-11",
+                "second@mail.ru,second,Second,1991-11-11",
+                "first@mail.ru,third,,1991-11-11",
+                "fourth@mail.ru,first,,1991-11-11",
+                "fifth@mail.ru,fifth,,3000-01-01");
+
+        this.mockMvc.perform(post("/users/import")
+                .contentType("text/csv")
+                .content(body))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.failed", is(3)))
+                .andExpect(jsonPath("$.errors[0].line", is(6)))
+                .andExpect(jsonPath("$.errors[0].message", is("birthday: birthday can not be in the future")))
+                .andExpect(jsonPath("$.errors[1].line", is(4)))
+                .andExpect(jsonPath("$.errors[1].message", is("email first@mail.ru is already used")))
+                .andExpect(jsonPath("$.errors[2].line", is(5)))
+                .andExpect(jsonPath("$.errors[2].message", is("login first is already used")));
+
+        this.mockMvc.perform(post("/users/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content("{\"email\":\"other@mail.ru\",\"login\":\"second\",\"birthday\":\"1991-11-11\"}\n"
+                        + "{\"email\":\"sixth@mail.ru\",\"login\":\"sixth\",\"birthday\":\"1991-11-11\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(1)))
+                .andExpect(jsonPath("$.errors[0].message", is("login second is already used")));
+
+        this.mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"name\":\"first\"")))
+                .andExpect(content().string(containsString("\"login\":\"sixth\"")));
+    }
+}
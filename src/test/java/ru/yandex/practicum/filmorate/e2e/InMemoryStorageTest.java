@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.e2e;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryFilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryUserDaoImpl;
+import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
+import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "filmorate.storage.in-memory.enabled=true")
+class InMemoryStorageTest {
+    private static Path directory;
+
+    @Autowired
+    @Qualifier("FilmDaoImpl")
+    private FilmDao filmDao;
+
+    @Autowired
+    @Qualifier("UserDaoImpl")
+    private UserDao userDao;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) throws IOException {
+        directory = Files.createTempDirectory(Files.createDirectories(Path.of("target")), "memory-e2e");
+        registry.add("filmorate.storage.in-memory.dir", () -> directory.resolve("memory").toString());
+        registry.add("filmorate.activity-log.dir", () -> directory.resolve("activity").toString());
+    }
+
+    @Test
+    void servicesWriteToJournal() throws IOException {
+        assertThat(filmDao).isInstanceOf(InMemoryFilmDaoImpl.class);
+        assertThat(userDao).isInstanceOf(InMemoryUserDaoImpl.class);
+
+        User user = userService.add(User.builder()
+                .email("memory@mail.ru")
+                .login("memory")
+                .name("memory")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        Film film = filmService.add(Film.builder()
+                .name("Memory")
+                .description("Stored in memory")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(new Rating(1, null))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, null))))
+                .build());
+        filmService.like(film.getId(), user.getId());
+
+        assertThat(filmService.getFilm(film.getId()).getLikes()).isEqualTo(1);
+        try (Stream<Path> files = Files.list(directory.resolve("memory").resolve("films"))) {
+            assertThat(files.filter(file -> file.getFileName().toString().startsWith("wal-"))
+                    .mapToLong(file -> file.toFile().length())
+                    .sum()).isPositive();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.e2e;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "filmorate.web.threads=platform")
+class PlatformThreadsLoadTest extends RequestLoadTest {
+}
@@ -0,0 +1,161 @@
+package ru.yandex.practicum.filmorate.e2e;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Closed loop load over real HTTP: {@link #CONCURRENCY} clients send requests back to back and the throughput and
+ * latency percentiles are logged, so running both subclasses compares platform and virtual request threads.
+ * Uses its own in-memory database to keep the seeded rows away from the other tests, and info logging, since
+ * debug logs of every request would outweigh serving it.
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+                "logging.level.root=info",
+                "logging.level.org.zalando.logbook=info"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+abstract class RequestLoadTest {
+    private static final int CONCURRENCY = 64;
+
+    private static final int WARMUP_REQUESTS = 500;
+
+    private static final int REQUESTS = 2000;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${filmorate.web.threads}")
+    private String threads;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FilmService filmService;
+
+    private User user;
+
+    private User other;
+
+    @BeforeAll
+    public void seed() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            users.add(userService.add(User.builder()
+                    .email("load" + i + "@mail.ru")
+                    .login("load" + i)
+                    .name("Load " + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()));
+        }
+        user = users.get(0);
+        other = users.get(1);
+        for (User friend : users.subList(2, 202)) {
+            userService.addFriend(user.getId(), friend.getId());
+            userService.addFriend(other.getId(), friend.getId());
+        }
+
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            films.add(Film.builder()
+                    .name("Load film " + i)
+                    .description("Film for the load test")
+                    .duration(90)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .mpa(new Rating(1, "G"))
+                    .build());
+        }
+        filmService.addAll(films);
+        Random random = new Random(1);
+        List<Like> likes = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            likes.add(new Like(films.get(random.nextInt(films.size())).getId(),
+                    users.get(random.nextInt(users.size())).getId()));
+        }
+        filmService.addLikes(likes);
+    }
+
+    @Test
+    public void popularFilmsUnderLoad() throws Exception {
+        runLoad("/films/popular?count=10");
+    }
+
+    @Test
+    public void commonFriendsUnderLoad() throws Exception {
+        runLoad("/users/" + user.getId() + "/friends/common/" + other.getId());
+    }
+
+    private void runLoad(String path) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build();
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            send(client, request, clients, new long[WARMUP_REQUESTS]);
+            long[] latencies = new long[REQUESTS];
+            long start = System.nanoTime();
+            int failures = send(client, request, clients, latencies);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            log.info("{} threads, {}: {} req/s, p50 {} ms, p99 {} ms", threads, path,
+                    Math.round(REQUESTS / seconds),
+                    latencies[REQUESTS / 2] / 1_000_000.0,
+                    latencies[REQUESTS * 99 / 100] / 1_000_000.0);
+            assertEquals(0, failures, "failed requests");
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    private int send(HttpClient client, HttpRequest request, ExecutorService clients, long[] latencies)
+            throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            workers.add(clients.submit(() -> {
+                for (int n = next.getAndIncrement(); n < latencies.length; n = next.getAndIncrement()) {
+                    long start = System.nanoTime();
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    latencies[n] = System.nanoTime() - start;
+                    if (response.statusCode() != 200) {
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        return failures.get();
+    }
+}
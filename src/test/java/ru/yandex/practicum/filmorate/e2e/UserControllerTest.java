@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.e2e;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,20 +13,26 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 import ru.yandex.practicum.filmorate.config.TestConfig;
+import ru.yandex.practicum.filmorate.model.ActivityType;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(classes = {TestConfig.class})
@@ -280,6 +287,114 @@ public class UserControllerTest {
         assertEquals(users.getLast().getId(), friends.get(0).getId(), "user2 is friend of user1");
     }
 
+    @Test
+    public void friendChangesAreLoggedAsActivity() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            User user = User.builder()
+                    .name("active")
+                    .email("active" + uniqueId.incrementAndGet() + "@mail.ru")
+                    .birthday(LocalDate.of(1991, 11, 11))
+                    .login("active" + uniqueId.get())
+                    .build();
+            String createdUser = this.mockMvc.perform(post("/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(user)))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            users.add(objectMapper.readValue(createdUser, User.class));
+        }
+        String cursor = this.mockMvc.perform(get("/admin/activity").param("from", String.valueOf(Long.MAX_VALUE)))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"))
+                .andReturn()
+                .getResponse()
+                .getHeader(Page.NEXT_CURSOR_HEADER);
+
+        this.mockMvc.perform(put("/users/{userId}/friends/{friendId}", users.get(0).getId(), users.get(1).getId()))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(delete("/users/{userId}/friends/{friendId}", users.get(0).getId(), users.get(1).getId()))
+                .andExpect(status().isNoContent());
+
+        // records are written in the background
+        JsonNode events = objectMapper.createArrayNode();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (events.size() < 2 && System.currentTimeMillis() < deadline) {
+            String content = this.mockMvc.perform(get("/admin/activity").param("from", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            events = objectMapper.readTree(content);
+        }
+        assertEquals(2, events.size());
+        assertEquals(ActivityType.FRIEND_ADD.name(), events.get(0).get("type").asText());
+        assertEquals(ActivityType.FRIEND_REMOVE.name(), events.get(1).get("type").asText());
+        assertEquals(users.get(0).getId(), events.get(0).get("userId").asInt());
+        assertEquals(users.get(1).getId(), events.get(0).get("targetId").asInt());
+        assertEquals(Long.parseLong(cursor), events.get(0).get("offset").asLong());
+
+        this.mockMvc.perform(get("/admin/activity").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void unchangedFriendshipsAreNotLogged() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = User.builder()
+                    .name("idle")
+                    .email("idle" + uniqueId.incrementAndGet() + "@mail.ru")
+                    .birthday(LocalDate.of(1991, 11, 11))
+                    .login("idle" + uniqueId.get())
+                    .build();
+            String createdUser = this.mockMvc.perform(post("/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(user)))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            users.add(objectMapper.readValue(createdUser, User.class));
+        }
+        String cursor = this.mockMvc.perform(get("/admin/activity").param("from", String.valueOf(Long.MAX_VALUE)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(Page.NEXT_CURSOR_HEADER);
+
+        this.mockMvc.perform(put("/users/{userId}/friends/{friendId}", users.get(0).getId(), users.get(1).getId()))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(put("/users/{userId}/friends/{friendId}", users.get(0).getId(), users.get(1).getId()))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(delete("/users/{userId}/friends/{friendId}", users.get(0).getId(), users.get(2).getId()))
+                .andExpect(status().isNoContent());
+        this.mockMvc.perform(delete("/users/{userId}/friends/{friendId}", users.get(0).getId(), 9999))
+                .andExpect(status().isNoContent());
+        // the last change is logged after the ones that were not, so waiting for it is enough
+        this.mockMvc.perform(put("/users/{userId}/friends/{friendId}", users.get(2).getId(), users.get(1).getId()))
+                .andExpect(status().isOk());
+
+        JsonNode events = objectMapper.createArrayNode();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (events.size() < 2 && System.currentTimeMillis() < deadline) {
+            String content = this.mockMvc.perform(get("/admin/activity").param("from", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            events = objectMapper.readTree(content);
+        }
+        assertEquals(2, events.size());
+        assertEquals(users.get(0).getId(), events.get(0).get("userId").asInt());
+        assertEquals(users.get(2).getId(), events.get(1).get("userId").asInt());
+        for (JsonNode event : events) {
+            assertEquals(ActivityType.FRIEND_ADD.name(), event.get("type").asText());
+        }
+    }
+
     @Test
     public void deleteFriends() throws Exception {
         LinkedList<User> users = new LinkedList<>();
@@ -428,5 +543,86 @@ public class UserControllerTest {
 
         assertEquals(users.get(1).getId(), commonFriends.get(0).getId(), "user1 and user3 have common friend user2");
     }
-}
 
+    @Test
+    public void getFriendSuggestions() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = User.builder()
+                    .name("tommy")
+                    .email("suggested" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1991, 11, 11))
+                    .login("suggested" + i)
+                    .build();
+            String createdUser = this.mockMvc.perform(post("/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(user)))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            users.add(objectMapper.readValue(createdUser, User.class));
+        }
+        int[][] friendships = {{0, 1}, {0, 2}, {1, 3}, {2, 3}, {1, 4}};
+        for (int[] friendship : friendships) {
+            this.mockMvc.perform(put("/users/{userId}/friends/{friendId}",
+                    users.get(friendship[0]).getId(), users.get(friendship[1]).getId()))
+                    .andExpect(status().isOk());
+        }
+
+        String contentAsString = this.mockMvc.perform(get("/users/{userId}/friends/suggestions", users.get(0).getId()))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<User> suggestions = objectMapper.readValue(contentAsString, new TypeReference<>() {
+        });
+
+        assertEquals(List.of(users.get(3).getId(), users.get(4).getId()),
+                suggestions.stream().map(User::getId).collect(Collectors.toList()),
+                "user4 has two mutual friends with user1, user5 has one");
+
+        this.mockMvc.perform(get("/users/{userId}/friends/suggestions", 9999))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getUsersPage() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            User user = User.builder()
+                    .name("Paged user")
+                    .email("paged" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1991, 11, 11))
+                    .login("paged" + i)
+                    .build();
+            this.mockMvc.perform(post("/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(user)))
+                    .andExpect(status().isOk());
+        }
+
+        String nextCursor = this.mockMvc.perform(get("/users").param("limit", "1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().exists(Page.NEXT_CURSOR_HEADER))
+                .andReturn()
+                .getResponse()
+                .getHeader(Page.NEXT_CURSOR_HEADER);
+
+        String content = this.mockMvc.perform(get("/users")
+                        .param("after", nextCursor)
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<User> users = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        assertEquals(1, users.size());
+        assertTrue(users.get(0).getId() > Integer.parseInt(nextCursor), "page starts after cursor");
+
+        this.mockMvc.perform(get("/users").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+}
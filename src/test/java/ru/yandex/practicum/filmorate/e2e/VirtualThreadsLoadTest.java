@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.e2e;
+
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.test.context.TestPropertySource;
+
+@EnabledIf(value = "ru.yandex.practicum.filmorate.config.VirtualThreadsConfig#isSupported",
+        disabledReason = "virtual threads need Java 21 or newer")
+@TestPropertySource(properties = "filmorate.web.threads=virtual")
+class VirtualThreadsLoadTest extends RequestLoadTest {
+}
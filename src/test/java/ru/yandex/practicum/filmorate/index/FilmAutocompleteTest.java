@@ -0,0 +1,151 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilmAutocompleteTest {
+    private FilmAutocomplete autocomplete;
+
+    private static Film film(int id, String name) {
+        return Film.builder()
+                .id(id)
+                .name(name)
+                .build();
+    }
+
+    private static List<Integer> ids(List<FilmSuggestion> suggestions) {
+        return suggestions.stream()
+                .map(FilmSuggestion::getId)
+                .collect(Collectors.toList());
+    }
+
+    @BeforeEach
+    public void beforeEach() {
+        autocomplete = new FilmAutocomplete();
+        List<Film> films = List.of(
+                film(1, "Titanic"),
+                film(2, "Titan A.E."),
+                film(3, "Tito"),
+                film(4, "Ёлки"),
+                film(5, "ёжик в тумане"),
+                film(6, "Елена"),
+                film(7, "Avatar"));
+        Map<Integer, Integer> likes = Map.of(1, 5, 2, 5, 4, 3, 5, 1);
+        autocomplete.rebuild(films::forEach, filmId -> likes.getOrDefault(filmId, 0));
+    }
+
+    @Test
+    public void completeRanksByLikesThenName() {
+        assertEquals(List.of(2, 1, 3), ids(autocomplete.complete("tit", 10)));
+        assertEquals(List.of(2, 1), ids(autocomplete.complete("TITAN", 10)));
+        assertEquals(List.of(2), ids(autocomplete.complete("titan ", 10)));
+        assertEquals(List.of(4, 5, 6), ids(autocomplete.complete("е", 10)));
+        assertEquals(List.of(4, 6), ids(autocomplete.complete("ЁЛ", 10)));
+        assertEquals(List.of(4), ids(autocomplete.complete("ЁЛК", 10)));
+        assertEquals(List.of(2, 1), ids(autocomplete.complete("t", 2)));
+        assertEquals(List.of(), ids(autocomplete.complete("titanics", 10)));
+        assertEquals(List.of(), ids(autocomplete.complete("x", 10)));
+
+        FilmSuggestion suggestion = autocomplete.complete("ёж", 1).get(0);
+        assertEquals(new FilmSuggestion(5, "ёжик в тумане", 1), suggestion);
+    }
+
+    @Test
+    public void indexAndLikesUpdateSuggestions() {
+        autocomplete.index(film(3, "Avatar 2"));
+        autocomplete.index(film(8, "Titanic 2"));
+        autocomplete.updateLikes(8, 10);
+        autocomplete.updateLikes(7, 2);
+        autocomplete.updateLikes(1, -1);
+
+        assertEquals(List.of(8, 2, 1), ids(autocomplete.complete("tit", 10)));
+        assertEquals(List.of(7, 3), ids(autocomplete.complete("ava", 10)));
+        assertEquals(8, autocomplete.size());
+    }
+
+    /**
+     * Random renames and likes, enough of them to compact the overlay many times, checked against a full scan.
+     */
+    @Test
+    public void completeMatchesFullScan() {
+        Random random = new Random(17);
+        String[] words = {"star", "stars", "Star wars", "Старт", "сталкер", "Ёж", "еж", "war", "W"};
+        Map<Integer, String> names = new HashMap<>();
+        Map<Integer, Integer> likes = new HashMap<>();
+        for (int filmId = 1; filmId <= 5000; filmId++) {
+            names.put(filmId, words[random.nextInt(words.length)] + " " + random.nextInt(100));
+        }
+        autocomplete.rebuild(consumer -> names.forEach((id, name) -> consumer.accept(film(id, name))), filmId -> 0);
+
+        for (int i = 0; i < 30_000; i++) {
+            int filmId = random.nextInt(6000) + 1;
+            if (random.nextInt(3) == 0 || !names.containsKey(filmId)) {
+                String name = words[random.nextInt(words.length)] + " " + random.nextInt(100);
+                names.put(filmId, name);
+                autocomplete.index(film(filmId, name));
+            } else {
+                likes.merge(filmId, 1, Integer::sum);
+                autocomplete.updateLikes(filmId, 1);
+            }
+            if (i % 1000 == 0) {
+                for (String prefix : new String[]{"st", "STAR", "star w", "ст", "ё", "w", "war 1"}) {
+                    assertEquals(fullScan(names, likes, prefix, 20), autocomplete.complete(prefix, 20), prefix);
+                }
+            }
+        }
+        assertEquals(names.size(), autocomplete.size());
+    }
+
+    @Test
+    public void completeOnMillionTitles() {
+        Random random = new Random(1);
+        int films = 1_000_000;
+        String[] syllables = {"ка", "ра", "ми", "ло", "ta", "ro", "ne", "ss", "ё", "в "};
+        autocomplete.rebuild(consumer -> {
+            for (int filmId = 1; filmId <= films; filmId++) {
+                StringBuilder name = new StringBuilder();
+                for (int i = 0; i < 8; i++) {
+                    name.append(syllables[random.nextInt(syllables.length)]);
+                }
+                consumer.accept(film(filmId, name.toString()));
+            }
+        }, filmId -> filmId % 1000);
+        String[] prefixes = {"к", "ка", "кар", "t", "ta", "tar", "ё", "ёв", "в к"};
+        for (int i = 0; i < 10_000; i++) {
+            autocomplete.complete(prefixes[i % prefixes.length], 10);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(10, autocomplete.complete(prefixes[i % prefixes.length], 10).size());
+        }
+        long averageMicros = (System.nanoTime() - start) / 10_000 / 1000;
+        assertTrue(averageMicros < 500, "autocomplete took " + averageMicros + " us on average");
+    }
+
+    private static List<FilmSuggestion> fullScan(Map<Integer, String> names, Map<Integer, Integer> likes,
+                                                 String prefix, int limit) {
+        String folded = fold(prefix);
+        return names.entrySet()
+                .stream()
+                .filter(entry -> fold(entry.getValue()).startsWith(folded))
+                .map(entry -> new FilmSuggestion(entry.getKey(), entry.getValue(), likes.getOrDefault(entry.getKey(), 0)))
+                .sorted(Comparator.comparingInt(FilmSuggestion::getLikes).reversed()
+                        .thenComparing(suggestion -> fold(suggestion.getName()))
+                        .thenComparingInt(FilmSuggestion::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+}
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilmRecommenderTest {
+    private FilmRecommender recommender;
+
+    @BeforeEach
+    public void beforeEach() {
+        recommender = new FilmRecommender(50, 2);
+        List<Like> likes = List.of(
+                new Like(10, 1), new Like(20, 1),
+                new Like(10, 2), new Like(20, 2),
+                new Like(10, 3), new Like(30, 3));
+        recommender.rebuild(likes::forEach);
+    }
+
+    @Test
+    public void rebuildRanksNeighborsBySimilarity() {
+        assertArrayEquals(new int[]{20, 30}, recommender.getSimilarFilms(10));
+        assertArrayEquals(new int[]{10}, recommender.getSimilarFilms(20));
+        assertArrayEquals(new int[0], recommender.getSimilarFilms(40));
+        assertEquals(3, recommender.size());
+    }
+
+    @Test
+    public void recommendSkipsLikedFilms() {
+        assertEquals(List.of(), recommender.recommend(4, 10));
+
+        recommender.like(4, 30);
+        assertEquals(List.of(10), recommender.recommend(4, 10));
+        assertEquals(List.of(30), recommender.recommend(1, 10));
+        assertEquals(List.of(20), recommender.recommend(3, 10));
+    }
+
+    @Test
+    public void likesUpdateNeighborsLikeRebuild() {
+        recommender.like(4, 20);
+        recommender.like(4, 30);
+        recommender.like(5, 30);
+        recommender.like(5, 20);
+        recommender.unlike(3, 10);
+
+        FilmRecommender rebuilt = new FilmRecommender(50, 2);
+        List<Like> likes = List.of(
+                new Like(10, 1), new Like(20, 1),
+                new Like(10, 2), new Like(20, 2),
+                new Like(30, 3),
+                new Like(20, 4), new Like(30, 4),
+                new Like(20, 5), new Like(30, 5));
+        rebuilt.rebuild(likes::forEach);
+
+        for (int filmId : new int[]{10, 20, 30}) {
+            assertArrayEquals(rebuilt.getSimilarFilms(filmId), recommender.getSimilarFilms(filmId), "film " + filmId);
+        }
+        assertEquals(rebuilt.recommend(3, 10), recommender.recommend(3, 10));
+    }
+
+    /**
+     * Users like films of their own taste cluster and a few random ones, one liked film of every user is held out
+     * and has to come back among the top 10 recommendations far more often than by chance.
+     */
+    @Test
+    public void recommendationsFindHeldOutLikes() {
+        int clusters = 10;
+        int filmsPerCluster = 50;
+        int users = 2000;
+        Random random = new Random(11);
+        List<Like> training = new ArrayList<>();
+        Map<Integer, Integer> heldOut = new HashMap<>();
+        for (int user = 1; user <= users; user++) {
+            int userId = user;
+            int cluster = userId % clusters;
+            Set<Integer> liked = new LinkedHashSet<>();
+            while (liked.size() < 10) {
+                liked.add(cluster * filmsPerCluster + random.nextInt(filmsPerCluster) + 1);
+            }
+            for (int i = 0; i < 2; i++) {
+                liked.add(random.nextInt(clusters * filmsPerCluster) + 1);
+            }
+            Iterator<Integer> films = liked.iterator();
+            heldOut.put(userId, films.next());
+            films.forEachRemaining(filmId -> training.add(new Like(filmId, userId)));
+        }
+        recommender.rebuild(training::forEach);
+
+        long hits = heldOut.entrySet()
+                .stream()
+                .filter(entry -> recommender.recommend(entry.getKey(), 10).contains(entry.getValue()))
+                .count();
+        double hitRate = (double) hits / users;
+        double randomHitRate = 10.0 / (clusters * filmsPerCluster);
+        assertTrue(hitRate > 10 * randomHitRate, "hit rate at 10 is " + hitRate + ", random is " + randomHitRate);
+    }
+
+    @Test
+    public void rebuildAndRecommendOnLargeLikeSet() {
+        int users = 20_000;
+        int films = 5_000;
+        Random random = new Random(3);
+        List<Like> likes = new ArrayList<>();
+        for (int userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < 20; i++) {
+                // squaring skews likes towards films with small ids like a popularity curve
+                double position = random.nextDouble();
+                likes.add(new Like((int) (position * position * films) + 1, userId));
+            }
+        }
+
+        long start = System.nanoTime();
+        recommender.rebuild(likes::forEach);
+        long rebuildMs = (System.nanoTime() - start) / 1_000_000;
+
+        for (int userId = 1; userId <= 1000; userId++) {
+            recommender.recommend(userId, 10);
+        }
+        start = System.nanoTime();
+        for (int userId = 1001; userId <= 2000; userId++) {
+            assertEquals(10, recommender.recommend(userId, 10).size());
+        }
+        long recommendMicros = (System.nanoTime() - start) / 1000 / 1000;
+
+        start = System.nanoTime();
+        for (int userId = 1; userId <= 1000; userId++) {
+            recommender.like(userId, random.nextInt(films) + 1);
+        }
+        long likeMicros = (System.nanoTime() - start) / 1000 / 1000;
+
+        assertTrue(rebuildMs < 20_000, "rebuild took " + rebuildMs + " ms");
+        assertTrue(recommendMicros < 10_000, "recommendation took " + recommendMicros + " us on average");
+        assertTrue(likeMicros < 10_000, "like took " + likeMicros + " us on average");
+    }
+}
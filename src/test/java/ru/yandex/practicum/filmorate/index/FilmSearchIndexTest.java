@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilmSearchIndexTest {
+    private FilmSearchIndex searchIndex;
+
+    private static Film film(int id, String name, String description) {
+        return Film.builder()
+                .id(id)
+                .name(name)
+                .description(description)
+                .build();
+    }
+
+    @BeforeEach
+    public void beforeEach() {
+        searchIndex = new FilmSearchIndex(2);
+        List<Film> films = List.of(
+                film(1, "Titanic", "A ship hits an iceberg"),
+                film(2, "Ёлки", "Новогодняя комедия, ёлка и снег"),
+                film(3, "Iceberg", "Documentary about ice"),
+                film(4, "The ship", "Ship, ship and one more ship"));
+        searchIndex.rebuild(films::forEach);
+    }
+
+    @Test
+    public void tokenizeLatinAndCyrillic() {
+        assertEquals(List.of("елки", "new", "year", "2024", "the", "end"),
+                FilmSearchIndex.tokenize("ЁЛКИ: New-Year 2024 (the end)..."));
+        assertEquals(List.of(), FilmSearchIndex.tokenize(" ,.!? "));
+    }
+
+    @Test
+    public void searchRanksByBm25() {
+        assertEquals(List.of(4, 1), searchIndex.search("ship", 10));
+        assertEquals(List.of(3, 1), searchIndex.search("ICEBERG", 10));
+        assertEquals(List.of(2), searchIndex.search("ёлка", 10));
+        assertEquals(List.of(2), searchIndex.search("елки", 10));
+        assertEquals(List.of(1, 4, 3), searchIndex.search("titanic ship iceberg", 10));
+        assertEquals(List.of(1), searchIndex.search("titanic ship iceberg", 1));
+        assertEquals(List.of(), searchIndex.search("avatar", 10));
+    }
+
+    @Test
+    public void indexReplacesPreviousVersion() {
+        searchIndex.index(film(3, "Avatar", "Blue people"));
+        searchIndex.index(film(5, "Titanic 2", "Iceberg after iceberg"));
+
+        assertEquals(List.of(3), searchIndex.search("avatar", 10));
+        assertEquals(List.of(5, 1), searchIndex.search("iceberg", 10));
+        assertEquals(List.of(), searchIndex.search("documentary", 10));
+        assertEquals(5, searchIndex.size());
+    }
+
+    @Test
+    public void popularityBoostBreaksCloseScores() {
+        searchIndex.index(film(5, "Ship", "Ship"));
+        searchIndex.index(film(6, "Ship", "Ship"));
+
+        assertEquals(List.of(5, 6), searchIndex.search("ship", 2));
+        assertEquals(List.of(6, 5), searchIndex.search("ship", 2, filmId -> filmId == 6 ? 100 : 0));
+    }
+
+    @Test
+    public void incrementalIndexMatchesRebuild() {
+        Random random = new Random(5);
+        String[] words = {"ship", "ice", "love", "war", "space", "кино", "любовь", "война", "космос", "ёж"};
+        List<Film> films = new ArrayList<>();
+        FilmSearchIndex incremental = new FilmSearchIndex(1);
+        for (int i = 0; i < 3000; i++) {
+            int filmId = random.nextInt(1000) + 1;
+            StringBuilder description = new StringBuilder();
+            for (int j = random.nextInt(20); j >= 0; j--) {
+                description.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            Film film = film(filmId, words[random.nextInt(words.length)], description.toString());
+            incremental.index(film);
+            films.removeIf(existing -> existing.getId() == filmId);
+            films.add(film);
+        }
+        FilmSearchIndex rebuilt = new FilmSearchIndex(2);
+        rebuilt.rebuild(films::forEach);
+
+        assertEquals(rebuilt.size(), incremental.size());
+        for (String word : words) {
+            assertEquals(rebuilt.search(word, 50), incremental.search(word, 50), word);
+        }
+        assertEquals(rebuilt.search("space war", 50), incremental.search("space war", 50));
+    }
+
+    @Test
+    public void batchIndexMatchesRebuild() {
+        Random random = new Random(7);
+        String[] words = {"ship", "ice", "love", "war", "space", "кино", "любовь", "война", "космос", "ёж"};
+        Map<Integer, Film> films = new HashMap<>();
+        FilmSearchIndex batched = new FilmSearchIndex(1);
+        for (int i = 0; i < 30; i++) {
+            List<Film> batch = new ArrayList<>();
+            for (int j = random.nextInt(200); j >= 0; j--) {
+                // ids repeat within a batch and across batches, the last version of a film wins
+                int filmId = random.nextInt(1000) + 1;
+                StringBuilder description = new StringBuilder();
+                for (int k = random.nextInt(20); k >= 0; k--) {
+                    description.append(words[random.nextInt(words.length)]).append(' ');
+                }
+                Film film = film(filmId, words[random.nextInt(words.length)], description.toString());
+                batch.add(film);
+                films.put(filmId, film);
+            }
+            batched.index(batch);
+        }
+        FilmSearchIndex rebuilt = new FilmSearchIndex(2);
+        rebuilt.rebuild(films.values()::forEach);
+
+        assertEquals(rebuilt.size(), batched.size());
+        for (String word : words) {
+            assertEquals(rebuilt.search(word, 50), batched.search(word, 50), word);
+        }
+        assertEquals(rebuilt.search("space war", 50), batched.search("space war", 50));
+    }
+
+    @Test
+    public void searchOnLargeIndex() {
+        Random random = new Random(9);
+        List<Film> films = new ArrayList<>();
+        for (int filmId = 1; filmId <= 100_000; filmId++) {
+            StringBuilder description = new StringBuilder();
+            for (int j = 0; j < 30; j++) {
+                // squaring skews word frequencies like in natural text
+                double position = random.nextDouble();
+                description.append("w").append((int) (position * position * 20_000)).append(' ');
+            }
+            films.add(film(filmId, "Film " + filmId, description.toString()));
+        }
+        searchIndex.rebuild(films::forEach);
+
+        for (int i = 0; i < 100; i++) {
+            searchIndex.search("w" + i + " w" + (i * 37), 10);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(10, searchIndex.search("w" + i + " w" + (i * 37 + 1), 10).size());
+        }
+        long averageMicros = (System.nanoTime() - start) / 100 / 1000;
+        assertTrue(averageMicros < 50_000, "search took " + averageMicros + " us on average");
+    }
+}
@@ -0,0 +1,169 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FriendGraphTest {
+    private FriendGraph friendGraph;
+
+    @BeforeEach
+    public void beforeEach() {
+        FriendGraph.Edges edges = new FriendGraph.Edges();
+        edges.add(1, 3);
+        edges.add(2, 3);
+        edges.add(1, 2);
+        edges.add(2, 4);
+        edges.add(1, 4);
+        friendGraph = new FriendGraph();
+        friendGraph.rebuild(edges);
+    }
+
+    @Test
+    public void rebuildSortsFriends() {
+        assertArrayEquals(new int[]{2, 3, 4}, friendGraph.getFriends(1));
+        assertArrayEquals(new int[]{3, 4}, friendGraph.getFriends(2));
+        assertArrayEquals(new int[0], friendGraph.getFriends(3));
+        assertArrayEquals(new int[0], friendGraph.getFriends(100));
+        assertEquals(5, friendGraph.getEdgeCount());
+    }
+
+    @Test
+    public void addAndRemoveFriends() {
+        assertTrue(friendGraph.add(3, 1));
+        assertFalse(friendGraph.add(3, 1));
+        assertTrue(friendGraph.add(100, 1));
+        assertTrue(friendGraph.remove(1, 3));
+        assertFalse(friendGraph.remove(1, 3));
+
+        assertArrayEquals(new int[]{1}, friendGraph.getFriends(3));
+        assertArrayEquals(new int[]{1}, friendGraph.getFriends(100));
+        assertArrayEquals(new int[]{2, 4}, friendGraph.getFriends(1));
+        assertTrue(friendGraph.contains(100, 1));
+        assertFalse(friendGraph.contains(1, 3));
+        assertEquals(6, friendGraph.getEdgeCount());
+    }
+
+    @Test
+    public void getCommonFriends() {
+        assertArrayEquals(new int[]{3, 4}, friendGraph.getCommonFriends(1, 2));
+        friendGraph.add(2, 5);
+        friendGraph.add(1, 5);
+        friendGraph.remove(2, 3);
+        assertArrayEquals(new int[]{4, 5}, friendGraph.getCommonFriends(1, 2));
+        assertArrayEquals(new int[0], friendGraph.getCommonFriends(1, 3));
+    }
+
+    @Test
+    public void getSuggestionsRanksByMutualFriends() {
+        friendGraph.add(3, 5);
+        friendGraph.add(4, 5);
+        friendGraph.add(4, 6);
+        friendGraph.add(4, 1);
+
+        assertArrayEquals(new int[]{5, 6}, friendGraph.getSuggestions(1, 10, FriendGraph.MAX_FAN_OUT));
+        assertArrayEquals(new int[]{5}, friendGraph.getSuggestions(1, 1, FriendGraph.MAX_FAN_OUT));
+        assertArrayEquals(new int[]{5, 1, 6}, friendGraph.getSuggestions(2, 10, FriendGraph.MAX_FAN_OUT));
+        assertArrayEquals(new int[0], friendGraph.getSuggestions(100, 10, FriendGraph.MAX_FAN_OUT));
+    }
+
+    @Test
+    public void getSuggestionsCapsFanOut() {
+        FriendGraph.Edges edges = new FriendGraph.Edges();
+        edges.add(1, 2);
+        for (int friendId = 3; friendId < 2003; friendId++) {
+            edges.add(2, friendId);
+        }
+        friendGraph.rebuild(edges);
+
+        int[] suggestions = friendGraph.getSuggestions(1, 5000, 100);
+        assertEquals(100, suggestions.length);
+        assertEquals(2000, friendGraph.getSuggestions(1, 5000, 5000).length);
+    }
+
+    /**
+     * Preferential attachment graph, so degrees follow a power law and the hubs have thousands of friends.
+     */
+    @Test
+    public void getSuggestionsForHubsOfPowerLawGraph() {
+        int users = 50_000;
+        int edgesPerUser = 8;
+        Random random = new Random(7);
+        int[] endpoints = new int[users * edgesPerUser * 2];
+        int endpointCount = 0;
+        FriendGraph.Edges edges = new FriendGraph.Edges();
+        int[] degrees = new int[users + 1];
+        for (int userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < edgesPerUser && userId > edgesPerUser; i++) {
+                int friendId = endpoints[random.nextInt(endpointCount)];
+                edges.add(userId, friendId);
+                edges.add(friendId, userId);
+                degrees[userId]++;
+                degrees[friendId]++;
+                endpoints[endpointCount++] = userId;
+                endpoints[endpointCount++] = friendId;
+            }
+            if (userId <= edgesPerUser) {
+                endpoints[endpointCount++] = userId;
+            }
+        }
+        FriendGraph graph = new FriendGraph();
+        graph.rebuild(edges);
+
+        int[] hubs = IntStream.rangeClosed(1, users).boxed()
+                .sorted(Comparator.comparingInt((Integer userId) -> degrees[userId]).reversed())
+                .limit(20)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        assertTrue(degrees[hubs[0]] > 1000, "graph has hubs with thousands of friends");
+
+        for (int warmup = 0; warmup < 5; warmup++) {
+            for (int hub : hubs) {
+                graph.getSuggestions(hub, 10, FriendGraph.MAX_FAN_OUT);
+            }
+        }
+        long start = System.nanoTime();
+        for (int hub : hubs) {
+            assertEquals(10, graph.getSuggestions(hub, 10, FriendGraph.MAX_FAN_OUT).length);
+        }
+        long averageMs = (System.nanoTime() - start) / hubs.length / 1_000_000;
+        assertTrue(averageMs < 100, "suggestions for a hub took " + averageMs + " ms on average");
+    }
+
+    @Test
+    public void compactionKeepsAllWrites() {
+        Random random = new Random(42);
+        Map<Integer, TreeSet<Integer>> expected = new HashMap<>();
+        expected.computeIfAbsent(1, id -> new TreeSet<>()).addAll(List.of(2, 3, 4));
+        expected.computeIfAbsent(2, id -> new TreeSet<>()).addAll(List.of(3, 4));
+        for (int i = 0; i < 20_000; i++) {
+            int userId = random.nextInt(300);
+            int friendId = random.nextInt(300);
+            TreeSet<Integer> friends = expected.computeIfAbsent(userId, id -> new TreeSet<>());
+            if (random.nextInt(4) == 0) {
+                assertEquals(friends.remove(friendId), friendGraph.remove(userId, friendId));
+            } else {
+                assertEquals(friends.add(friendId), friendGraph.add(userId, friendId));
+            }
+        }
+
+        int edges = 0;
+        for (Map.Entry<Integer, TreeSet<Integer>> entry : expected.entrySet()) {
+            int[] friends = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(friends, friendGraph.getFriends(entry.getKey()));
+            edges += friends.length;
+        }
+        assertEquals(edges, friendGraph.getEdgeCount());
+
+        TreeSet<Integer> common = new TreeSet<>(expected.get(7));
+        common.retainAll(expected.get(8));
+        assertArrayEquals(common.stream().mapToInt(Integer::intValue).toArray(), friendGraph.getCommonFriends(7, 8));
+    }
+}
@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.index;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.SketchSnapshot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyHittersTest {
+
+    @Test
+    public void testEstimatesStayWithinErrorBound() {
+        CountMinSketch sketch = new CountMinSketch(256, 5, 0);
+        Map<Integer, Integer> counts = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            int filmId = (int) Math.floor(Math.pow(random.nextDouble(), 3) * 5_000);
+            sketch.add(filmId, 1);
+            counts.merge(filmId, 1, Integer::sum);
+        }
+
+        long errorBound = sketch.getErrorBound();
+        counts.forEach((filmId, count) -> {
+            long estimate = sketch.estimate(filmId);
+            assertTrue(estimate >= count, "estimate is never below the true count");
+            assertTrue(estimate - count <= errorBound, "estimate is within the error bound");
+        });
+    }
+
+    @Test
+    public void testTopFilmsAreFound() {
+        HeavyHitters heavyHitters = new HeavyHitters(512, 5, 10);
+        like(heavyHitters, 1, 500);
+        like(heavyHitters, 2, 300);
+        like(heavyHitters, 3, 100);
+        for (int filmId = 100; filmId < 2_000; filmId++) {
+            like(heavyHitters, filmId, 1);
+        }
+        like(heavyHitters, 3, -60);
+
+        assertEquals(List.of(1, 2, 3), heavyHitters.getTop(3));
+        assertEquals(10, heavyHitters.getTop(100).size());
+    }
+
+    @Test
+    public void testMergedSketchMatchesCombinedStream() {
+        HeavyHitters first = new HeavyHitters(512, 5, 10);
+        HeavyHitters second = new HeavyHitters(512, 5, 10);
+        HeavyHitters combined = new HeavyHitters(512, 5, 10);
+        like(first, 1, 50);
+        like(first, 2, 40);
+        like(second, 2, 40);
+        like(second, 3, 60);
+        like(combined, 1, 50);
+        like(combined, 2, 80);
+        like(combined, 3, 60);
+
+        first.merge(second);
+
+        assertEquals(combined.getTop(3), first.getTop(3));
+        assertEquals(List.of(2, 3, 1), first.getTop(3));
+        assertEquals(combined.getErrorBound(), first.getErrorBound());
+    }
+
+    @Test
+    public void testSketchesWithDifferentSizeAreNotMerged() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new HeavyHitters(512, 5, 10).merge(new HeavyHitters(256, 5, 10)));
+    }
+
+    @Test
+    public void testSnapshotOfAnotherInstanceIsMerged() throws Exception {
+        HeavyHitters first = new HeavyHitters(512, 5, 10);
+        HeavyHitters second = new HeavyHitters(512, 5, 10);
+        like(first, 1, 50);
+        like(second, 2, 40);
+        like(second, 3, 60);
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // the snapshot travels as json, as between instances
+        String json = objectMapper.writeValueAsString(second.snapshot());
+        first.merge(objectMapper.readValue(json, SketchSnapshot.class));
+
+        assertEquals(List.of(3, 1, 2), first.getTop(3));
+        assertEquals(60, first.estimate(3));
+    }
+
+    @Test
+    public void testSnapshotWithOtherSeedIsNotMerged() {
+        HeavyHitters heavyHitters = new HeavyHitters(512, 5, 10);
+        like(heavyHitters, 1, 5);
+        SketchSnapshot snapshot = heavyHitters.snapshot();
+        snapshot.setSeed(1);
+
+        assertThrows(IllegalArgumentException.class, () -> heavyHitters.merge(snapshot));
+        snapshot.setSeed(0);
+        snapshot.setCounters(new long[512]);
+        assertThrows(IllegalArgumentException.class, () -> heavyHitters.merge(snapshot));
+        assertEquals(5, heavyHitters.estimate(1));
+    }
+
+    private void like(HeavyHitters heavyHitters, int filmId, int times) {
+        for (int i = 0; i < Math.abs(times); i++) {
+            heavyHitters.update(filmId, Integer.signum(times));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class IntCounterTest {
+    @Test
+    public void countsDuplicateKeys() {
+        IntCounter counter = new IntCounter(4);
+        counter.increment(7, 1);
+        counter.increment(3, 2);
+        counter.increment(7, 5);
+
+        assertEquals(Map.of(7, 6, 3, 2), toMap(counter));
+    }
+
+    @Test
+    public void manyKeysAreSpreadOverTheWholeTable() {
+        int keys = 300_000;
+        // with only 16 bits of the hash used every key above 65536 slots collides, and this takes minutes
+        IntCounter counter = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            IntCounter result = new IntCounter(16);
+            for (int key = 0; key < keys; key++) {
+                result.increment(key, 1);
+                result.increment(key, key);
+            }
+            return result;
+        });
+
+        Map<Integer, Integer> counts = toMap(counter);
+        assertEquals(keys, counts.size());
+        for (int key = 0; key < keys; key++) {
+            assertEquals(key + 1, counts.get(key));
+        }
+    }
+
+    private static Map<Integer, Integer> toMap(IntCounter counter) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int slot = 0; slot < counter.capacity(); slot++) {
+            if (counter.keyAt(slot) >= 0) {
+                counts.put(counter.keyAt(slot), counter.countAt(slot));
+            }
+        }
+        return counts;
+    }
+}
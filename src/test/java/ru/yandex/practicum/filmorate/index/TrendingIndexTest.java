@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.HourlyLikes;
+
+import java.time.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrendingIndexTest {
+    private static final ZoneId ZONE = ZoneId.of("UTC");
+
+    private Instant now;
+
+    private TrendingIndex trendingIndex;
+
+    @BeforeEach
+    public void beforeEach() {
+        now = Instant.parse("2024-01-10T12:30:00Z");
+        trendingIndex = new TrendingIndex(new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZONE;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void testRankingBySlidingWindow() {
+        like(1, 5);
+        now = now.plus(Duration.ofHours(30));
+        like(2, 2);
+
+        assertEquals(List.of(2), trendingIndex.getTop(24, 10));
+        assertEquals(List.of(1, 2), trendingIndex.getTop(48, 10));
+        assertEquals(List.of(1), trendingIndex.getTop(48, 1));
+    }
+
+    @Test
+    public void testUnlikeRemovesLike() {
+        like(1, 2);
+        like(2, 1);
+        trendingIndex.unlike(1, likedAt());
+        trendingIndex.unlike(1, likedAt());
+
+        assertEquals(List.of(2), trendingIndex.getTop(24, 10));
+    }
+
+    @Test
+    public void testUnlikeOfOldLikeKeepsCurrentHour() {
+        LocalDateTime oldLike = likedAt();
+        like(1, 3);
+        now = now.plus(Duration.ofHours(2));
+        like(1, 1);
+        like(2, 2);
+        for (int i = 0; i < 3; i++) {
+            trendingIndex.unlike(1, oldLike);
+        }
+
+        assertEquals(List.of(2, 1), trendingIndex.getTop(1, 10));
+        assertEquals(List.of(2, 1), trendingIndex.getTop(24, 10));
+    }
+
+    @Test
+    public void testUnlikeOutsideWindowIsIgnored() {
+        LocalDateTime oldLike = likedAt();
+        like(1, 1);
+        now = now.plus(Duration.ofHours(TrendingIndex.MAX_WINDOW_HOURS + 1));
+        like(1, 1);
+        trendingIndex.unlike(1, oldLike);
+
+        assertEquals(List.of(1), trendingIndex.getTop(1, 10));
+    }
+
+    @Test
+    public void testExpiredFilmsAreRemoved() {
+        like(1, 3);
+        now = now.plus(Duration.ofHours(TrendingIndex.MAX_WINDOW_HOURS));
+        like(2, 1);
+        trendingIndex.expire();
+
+        assertEquals(1, trendingIndex.size());
+        assertEquals(List.of(2), trendingIndex.getTop(TrendingIndex.MAX_WINDOW_HOURS, 10));
+    }
+
+    @Test
+    public void testRebuildFromHourlyLikes() {
+        LocalDateTime hour = LocalDateTime.ofInstant(now, ZONE).withMinute(0);
+        trendingIndex.rebuild(List.of(
+                new HourlyLikes(1, hour.minusHours(2), 3),
+                new HourlyLikes(2, hour, 2),
+                new HourlyLikes(3, hour.minusHours(TrendingIndex.MAX_WINDOW_HOURS), 10)));
+
+        assertEquals(List.of(1, 2), trendingIndex.getTop(24, 10));
+        assertEquals(List.of(2), trendingIndex.getTop(1, 10));
+    }
+
+    private LocalDateTime likedAt() {
+        return LocalDateTime.ofInstant(now, ZONE);
+    }
+
+    private void like(int filmId, int times) {
+        for (int i = 0; i < times; i++) {
+            trendingIndex.like(filmId);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryFilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryGenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryUserDaoImpl;
+import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.index.FilmAutocomplete;
+import ru.yandex.practicum.filmorate.index.FilmRecommender;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.HeavyHitters;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * How integrity violations of the like insert reach the caller.
+ */
+class FilmServiceLikeTest {
+    private final List<Object> events = new ArrayList<>();
+
+    private RuntimeException saveLikeFailure;
+
+    private FilmService filmService;
+
+    @BeforeEach
+    public void beforeEach() {
+        InMemoryUserDaoImpl userDao = new InMemoryUserDaoImpl();
+        InMemoryFilmDaoImpl filmDao = new InMemoryFilmDaoImpl(userDao) {
+            @Override
+            public boolean saveLike(int filmId, int userId) {
+                throw saveLikeFailure;
+            }
+        };
+        filmService = new FilmService(filmDao, userDao, new InMemoryGenreDaoImpl(),
+                new PopularityIndex(), new TrendingIndex(), new HeavyHitters(64, 2, 10), new FilmRecommender(50, 1),
+                new FilmSearchIndex(1), new FilmAutocomplete(), events::add);
+    }
+
+    @Test
+    public void concurrentDuplicateLikeIsNotCreated() {
+        saveLikeFailure = new DuplicateKeyException("primary key violation");
+
+        filmService.like(1, 1);
+
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    public void foreignKeyViolationIsNotFound() {
+        saveLikeFailure = new DataIntegrityViolationException("fk",
+                new SQLException("Referential integrity constraint violation", "23506"));
+
+        assertThrows(ObjectNotFoundException.class, () -> filmService.like(1, 1));
+    }
+
+    @Test
+    public void otherViolationIsNotHidden() {
+        DataIntegrityViolationException notNull = new DataIntegrityViolationException("not null",
+                new SQLException("NULL not allowed for column", "23502"));
+        saveLikeFailure = notNull;
+
+        assertSame(notNull, assertThrows(DataIntegrityViolationException.class, () -> filmService.like(1, 1)));
+    }
+}
@@ -0,0 +1,201 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryFilmDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryGenreDaoImpl;
+import ru.yandex.practicum.filmorate.dao.inMemory.InMemoryUserDaoImpl;
+import ru.yandex.practicum.filmorate.dao.interfaces.FilmDao;
+import ru.yandex.practicum.filmorate.dao.interfaces.UserDao;
+import ru.yandex.practicum.filmorate.index.FilmAutocomplete;
+import ru.yandex.practicum.filmorate.index.FilmRecommender;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.HeavyHitters;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.PopularFilm;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PopularFilmsStreamTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FilmService filmService;
+
+    private PopularFilmsStream stream;
+
+    private int nextUserId = 1;
+
+    @BeforeEach
+    public void beforeEach() {
+        UserDao userDao = new InMemoryUserDaoImpl();
+        FilmDao filmDao = new InMemoryFilmDaoImpl(userDao);
+        filmService = new FilmService(filmDao, userDao, new InMemoryGenreDaoImpl(), new PopularityIndex(),
+                new TrendingIndex(), new HeavyHitters(64, 2, 10), new FilmRecommender(50, 1), new FilmSearchIndex(1),
+                new FilmAutocomplete(), event -> {
+                    filmService.onLikesChanged((LikesChangedEvent) event);
+                    stream.onLikesChanged((LikesChangedEvent) event);
+                });
+        for (int i = 1; i <= 3; i++) {
+            filmService.add(Film.builder()
+                    .name("Film " + i)
+                    .description("Good film")
+                    .duration(2)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .build());
+        }
+        for (int i = 1; i <= 50; i++) {
+            userDao.add(User.builder()
+                    .login("user" + i)
+                    .email("user" + i + "@yandex.ru")
+                    .birthday(LocalDate.of(2000, 1, 1))
+                    .build());
+        }
+        stream = new PopularFilmsStream(filmService, objectMapper, 2, 2, 10, 60_000);
+        stream.start();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        stream.stop();
+    }
+
+    @Test
+    public void sendsLeaderboardOnSubscribeAndWhenRankingChanges() throws Exception {
+        like(2, 1);
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter);
+        assertEquals(List.of(new PopularFilm(2, "Film 2", 1), new PopularFilm(1, "Film 1", 0)), emitter.next());
+
+        like(3, 2);
+        assertEquals(List.of(3, 2), ids(emitter.next()));
+
+        // film 3 stays ahead of film 2, nothing is pushed for it
+        like(3, 1);
+        like(1, 3);
+        assertEquals(List.of(new PopularFilm(1, "Film 1", 3), new PopularFilm(3, "Film 3", 3)), emitter.next());
+        assertEquals(0, emitter.events.size());
+    }
+
+    @Test
+    public void dropsSlowSubscriberAndKeepsOthers() throws Exception {
+        RecordingEmitter fast = new RecordingEmitter();
+        RecordingEmitter slow = new RecordingEmitter();
+        slow.release = new CountDownLatch(1);
+        stream.subscribe(fast);
+        stream.subscribe(slow);
+        fast.next();
+        try {
+            assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+
+            // the first event is stuck in the socket, two more fill the buffer and the third one drops the client
+            for (int i = 1; i <= 3; i++) {
+                like(i % 2 == 1 ? 2 : 1, i * 2);
+                fast.next();
+            }
+            assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(1, stream.getSubscriberCount());
+
+            like(3, 10);
+            assertEquals(3, ids(fast.next()).get(0));
+        } finally {
+            slow.release.countDown();
+        }
+    }
+
+    @Test
+    public void blockedSendsDoNotHoldOtherSubscribers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<RecordingEmitter> blocked = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitter.release = release;
+                stream.subscribe(emitter);
+                blocked.add(emitter);
+            }
+            for (RecordingEmitter emitter : blocked) {
+                assertTrue(emitter.sending.await(5, TimeUnit.SECONDS));
+            }
+
+            RecordingEmitter fast = new RecordingEmitter();
+            stream.subscribe(fast);
+            fast.next();
+            like(2, 1);
+            assertEquals(2, ids(fast.next()).get(0));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private void like(int filmId, int count) {
+        List<Like> likes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            likes.add(new Like(filmId, nextUserId++));
+        }
+        filmService.addLikes(likes);
+    }
+
+    private static List<Integer> ids(List<PopularFilm> films) {
+        return films.stream()
+                .map(PopularFilm::getId)
+                .collect(Collectors.toList());
+    }
+
+    private class RecordingEmitter extends SseEmitter {
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        private final CountDownLatch sending = new CountDownLatch(1);
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private volatile CountDownLatch release;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sending.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            builder.build()
+                    .stream()
+                    .filter(data -> MediaType.APPLICATION_JSON.equals(data.getMediaType()))
+                    .forEach(data -> events.add((String) data.getData()));
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        private List<PopularFilm> next() throws Exception {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertTrue(event != null, "no event is sent");
+            return objectMapper.readValue(event, new TypeReference<>() {
+            });
+        }
+    }
+}
@@ -0,0 +1,44 @@
+CREATE TABLE IF NOT EXISTS genres (
+   id INTEGER PRIMARY KEY,
+   name varchar(30) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS  ratings  (
+ id INTEGER PRIMARY KEY,
+ name varchar(10) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS film_genres (
+  film_id INTEGER,
+  genre_id INTEGER,
+  PRIMARY KEY ( film_id ,  genre_id )
+);
+
+CREATE TABLE IF NOT EXISTS  films  (
+  id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name varchar(300),
+  description varchar(2000),
+  release_date timestamp,
+  duration integer,
+  rating_id integer
+);
+
+CREATE TABLE IF NOT EXISTS  users  (
+   id  INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+   email  varchar(50) UNIQUE,
+   login  varchar(50) UNIQUE NOT NULL,
+   name  varchar(50),
+   birthday  varchar(11) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS friends  (
+   user_id  integer,
+   friend_id  integer,
+   PRIMARY KEY ( user_id ,  friend_id )
+);
+
+CREATE TABLE IF NOT EXISTS likes  (
+    user_id  integer,
+    film_id  integer,
+    PRIMARY KEY ( user_id ,  film_id )
+);